@@ -0,0 +1,55 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import storage.Table;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// inserts into a table that starts empty every iteration, leaf and internal splits included
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+    @Param({"4096", "16384"})
+    public int pageSize;
+
+    @Param({"narrow", "users", "wide"})
+    public String schema;
+
+    @Param({"sequential", "random"})
+    public String order;
+
+    @Param({"FILE", "MMAP"})
+    public String storageMode;
+
+    private Path dir;
+    private Table table;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        Schemas.quiet();
+        this.dir = Files.createTempDirectory("insert-bench");
+        this.table = Schemas.open(this.dir, this.schema, this.pageSize, Schemas.config(this.storageMode));
+        this.next = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        this.table.close();
+        Schemas.delete(this.dir);
+    }
+
+    @Benchmark
+    public void insert() throws Exception {
+        int n = this.next++;
+        // multiplying by an odd constant visits every int once, in an order that looks random
+        int id = this.order.equals("sequential") ? n : n * 0x9E3779B1;
+        this.table.insert(Schemas.row(this.schema, id));
+    }
+}
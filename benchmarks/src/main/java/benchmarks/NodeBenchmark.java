@@ -0,0 +1,108 @@
+package benchmarks;
+
+import models.KeyCodec;
+import models.RowCodec;
+import models.RowView;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import tree.InternalNode;
+import tree.LeafNode;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Node level costs without the buffer pool or the file: packing a full leaf into its page
+    and reading it back, and splitting full leaf and internal nodes. Splits need a full node
+    every time, it is rebuilt before each invocation and not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeBenchmark {
+    // fan out of the internal nodes of a table, whatever the page size
+    private static final int INTERNAL_KEYS = 5;
+
+    @Param({"4096", "16384"})
+    public int pageSize;
+
+    @Param({"narrow", "users", "wide"})
+    public String schema;
+
+    private KeyCodec keyCodec;
+    private RowView view;
+    private LeafNode leaf;
+    private byte[] page;
+    private LeafNode splitLeaf;
+    private InternalNode splitInternal;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.keyCodec = KeyCodec.of(Schemas.columns(this.schema), "id");
+        this.view = new RowView(Schemas.columns(this.schema));
+        this.leaf = this.fullLeaf();
+        this.page = this.leaf.pack(null);
+    }
+
+    @Setup(Level.Invocation)
+    public void refill() throws Exception {
+        this.splitLeaf = this.fullLeaf();
+        this.splitInternal = new InternalNode(1, this.pageSize, INTERNAL_KEYS, this.keyCodec.getSize());
+        this.splitInternal.init(0, this.keyCodec.key(0).getBytes(), 1);
+        // one past the maximum, as when a child split pushes the key that overflows it
+        for (int i = 1; i <= INTERNAL_KEYS; i++) {
+            this.splitInternal.insert(i, this.keyCodec.key(i).getBytes(), i + 1);
+        }
+    }
+
+    private LeafNode fullLeaf() throws Exception {
+        RowCodec codec = new RowCodec(Schemas.columns(this.schema));
+        int keySize = this.keyCodec.getSize();
+        LeafNode leaf = new LeafNode(1, this.pageSize, this.pageSize / (keySize + LeafNode.SLOT_SIZE), keySize);
+        for (int i = 0; ; i++) {
+            byte[] record = codec.encode(Schemas.row(this.schema, i));
+            if (!leaf.fits(record.length)) {
+                return leaf;
+            }
+            leaf.insert(i, this.keyCodec.key(i).getBytes(), record);
+        }
+    }
+
+    @Benchmark
+    public byte[] pack() throws Exception {
+        return this.leaf.pack(null);
+    }
+
+    @Benchmark
+    public LeafNode unpack() {
+        LeafNode node = new LeafNode(1, this.pageSize, this.leaf.getKeyCount(), this.keyCodec.getSize());
+        node.unpack(null, ByteBuffer.wrap(this.page));
+        return node;
+    }
+
+    // unpack and read a column of every row, records are read in place so this is the full cost
+    @Benchmark
+    public void unpackAndRead(Blackhole blackhole) {
+        LeafNode node = this.unpack();
+        for (int i = 0; i < node.getKeyCount(); i++) {
+            blackhole.consume(node.wrap(i, this.view).get("name"));
+        }
+    }
+
+    @Benchmark
+    public LeafNode splitLeaf() {
+        LeafNode right = new LeafNode(2, this.pageSize, this.splitLeaf.getKeyCount(), this.keyCodec.getSize());
+        this.splitLeaf.moveTo(right, this.splitLeaf.splitIndex());
+        return right;
+    }
+
+    @Benchmark
+    public InternalNode splitInternal() {
+        InternalNode right = new InternalNode(2, this.pageSize, INTERNAL_KEYS, this.keyCodec.getSize());
+        this.splitInternal.moveTo(right, this.splitInternal.getKeyCount() / 2);
+        return right;
+    }
+}
@@ -0,0 +1,88 @@
+package benchmarks;
+
+import models.Row;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import storage.RangeScan;
+import storage.Table;
+import storage.TableConfig;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// point reads, updates and short scans of a bulk loaded table holding the even ids
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+    @Param({"4096", "16384"})
+    public int pageSize;
+
+    @Param({"narrow", "users", "wide"})
+    public String schema;
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"FILE", "MMAP"})
+    public String storageMode;
+
+    // 0 leaves the Bloom filter out
+    @Param({"0", "10"})
+    public int bloomBitsPerKey;
+
+    private Path dir;
+    private Table table;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Schemas.quiet();
+        this.dir = Files.createTempDirectory("read-bench");
+        TableConfig config = Schemas.config(this.storageMode);
+        config.setBloomFilterBitsPerKey(this.bloomBitsPerKey);
+        this.table = Schemas.open(this.dir, this.schema, this.pageSize, config);
+        this.table.bulkLoad(IntStream.range(0, this.rows).mapToObj(i -> Schemas.row(this.schema, 2 * i)).iterator());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.table.close();
+        Schemas.delete(this.dir);
+    }
+
+    @Benchmark
+    public Row searchHit() throws Exception {
+        return this.table.search(2 * ThreadLocalRandom.current().nextInt(this.rows));
+    }
+
+    @Benchmark
+    public Row searchMiss() throws Exception {
+        return this.table.search(2 * ThreadLocalRandom.current().nextInt(this.rows) + 1);
+    }
+
+    @Benchmark
+    public boolean update() throws Exception {
+        int id = 2 * ThreadLocalRandom.current().nextInt(this.rows);
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("name", "renamed " + id);
+        return this.table.update(id, updates);
+    }
+
+    @Benchmark
+    public void scan100(Blackhole blackhole) throws Exception {
+        int from = 2 * ThreadLocalRandom.current().nextInt(this.rows);
+        try (RangeScan scan = this.table.scan(from, from + 200)) {
+            while (scan.hasNext()) {
+                blackhole.consume(scan.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package benchmarks;
+
+import models.Column;
+import models.Row;
+import storage.StorageMode;
+import storage.Table;
+import storage.TableConfig;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+    Schemas and rows shared by the benchmarks. "users" is the schema of Main, "narrow" keeps
+    only the id and a short name, "wide" adds a long text and a few more columns to it.
+ */
+public class Schemas {
+    private static final ZonedDateTime CREATED_AT = ZonedDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneId.of("UTC"));
+
+    public static List<Column<?>> columns(String schema) {
+        List<Column<?>> columns = new ArrayList<>();
+        columns.add(new Column<Integer>("id", Integer.class));
+        switch (schema) {
+            case "narrow" -> columns.add(new Column<String>("name", String.class, 32));
+            case "users", "wide" -> {
+                columns.add(new Column<String>("name", String.class, 256));
+                columns.add(new Column<String>("email", String.class, 512));
+                columns.add(new Column<Boolean>("active", Boolean.class));
+                columns.add(new Column<ZonedDateTime>("created_at", ZonedDateTime.class));
+            }
+            default -> throw new IllegalArgumentException("unknown schema: " + schema);
+        }
+        if (schema.equals("wide")) {
+            columns.add(new Column<String>("bio", String.class, 2048));
+            columns.add(new Column<Long>("visits", Long.class));
+            columns.add(new Column<Double>("balance", Double.class));
+            columns.add(new Column<String>("city", String.class, 128));
+        }
+        return columns;
+    }
+
+    public static Row row(String schema, int id) {
+        Row row = new Row(id);
+        row.put("id", id);
+        row.put("name", "user " + id);
+        if (!schema.equals("narrow")) {
+            row.put("email", "user" + id + "@example.com");
+            row.put("active", id % 2 == 0);
+            row.put("created_at", CREATED_AT);
+        }
+        if (schema.equals("wide")) {
+            row.put("bio", "bio of user " + id + " ".repeat(200));
+            row.put("visits", (long) id * 3);
+            row.put("balance", id * 1.5);
+            row.put("city", "city " + id % 100);
+        }
+        return row;
+    }
+
+    public static TableConfig config(String storageMode) {
+        TableConfig config = new TableConfig();
+        config.setStorageMode(StorageMode.valueOf(storageMode));
+        config.setCacheSize(64L * 1024 * 1024);
+        return config;
+    }
+
+    public static Table open(Path dir, String schema, int pageSize, TableConfig config) throws Exception {
+        return new Table(dir.resolve("bench").toString(), columns(schema), pageSize, config);
+    }
+
+    // the table prints every insert, the output would be measured with it
+    public static void quiet() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    public static void delete(Path dir) throws Exception {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package benchmarks;
+
+import models.Row;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+    every benchmark run once per schema and storage mode, the way JMH calls it but without
+    forking or timing, so a benchmark broken by a change in the engine fails the build
+ */
+class BenchmarkSmokeTest {
+    private static final String[] SCHEMAS = {"narrow", "users", "wide"};
+    private static final String[] STORAGE_MODES = {"FILE", "MMAP"};
+
+    // Schemas.quiet swaps it for one printing nothing
+    private PrintStream out;
+    private Blackhole blackhole;
+
+    @BeforeEach
+    void setUp() {
+        this.out = System.out;
+        this.blackhole = new Blackhole("Today's password is swordfish. I understand instantiating Blackholes directly is dangerous.");
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.blackhole.evaporate("Yes, I am Stephen Hawking, and know a thing or two about black holes.");
+        System.setOut(this.out);
+    }
+
+    @Test
+    void insertBenchmarkRuns() throws Exception {
+        for (String schema : SCHEMAS) {
+            for (String storageMode : STORAGE_MODES) {
+                for (String order : new String[]{"sequential", "random"}) {
+                    InsertBenchmark benchmark = new InsertBenchmark();
+                    benchmark.pageSize = 4096;
+                    benchmark.schema = schema;
+                    benchmark.order = order;
+                    benchmark.storageMode = storageMode;
+                    benchmark.setup();
+                    try {
+                        for (int i = 0; i < 100; i++) {
+                            benchmark.insert();
+                        }
+                    } finally {
+                        benchmark.tearDown();
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void readBenchmarkRuns() throws Exception {
+        for (String schema : SCHEMAS) {
+            for (String storageMode : STORAGE_MODES) {
+                ReadBenchmark benchmark = new ReadBenchmark();
+                benchmark.pageSize = 4096;
+                benchmark.schema = schema;
+                benchmark.rows = 1000;
+                benchmark.storageMode = storageMode;
+                benchmark.bloomBitsPerKey = 10;
+                benchmark.setup();
+                try {
+                    Row hit = benchmark.searchHit();
+                    assertNotNull(hit);
+                    assertEquals(0, hit.getId() % 2);
+                    assertNull(benchmark.searchMiss());
+                    assertTrue(benchmark.update());
+                    benchmark.scan100(this.blackhole);
+                } finally {
+                    benchmark.tearDown();
+                }
+            }
+        }
+    }
+
+    @Test
+    void nodeBenchmarkRuns() throws Exception {
+        for (String schema : SCHEMAS) {
+            NodeBenchmark benchmark = new NodeBenchmark();
+            benchmark.pageSize = 4096;
+            benchmark.schema = schema;
+            benchmark.setup();
+            benchmark.refill();
+            assertEquals(4096, benchmark.pack().length);
+            assertTrue(benchmark.unpack().getKeyCount() > 0);
+            benchmark.unpackAndRead(this.blackhole);
+            assertTrue(benchmark.splitLeaf().getKeyCount() > 0);
+            assertTrue(benchmark.splitInternal().getKeyCount() > 0);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package storage;
+
+import models.Column;
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AggregateTest {
+    private static final int ROWS = 1000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sumWidensEveryNumericColumn() throws Exception {
+        List<Column<?>> columns = new ArrayList<>();
+        columns.add(new Column<Integer>("id", Integer.class));
+        columns.add(new Column<Short>("small", Short.class));
+        columns.add(new Column<Byte>("tiny", Byte.class));
+        columns.add(new Column<Float>("ratio", Float.class));
+        columns.add(new Column<Double>("amount", Double.class));
+        columns.add(new Column<String>("name", String.class, 16));
+        Table table = new Table(this.dir.resolve("t").toString(), columns, 4096, Fixtures.config());
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                Row row = new Row(id);
+                row.put("id", id);
+                row.put("small", (short) id);
+                row.put("tiny", (byte) (id % 100));
+                row.put("ratio", 0.5f);
+                row.put("amount", 2.0);
+                row.put("name", "user" + id);
+                table.insertRow(row);
+            }
+            assertEquals((long) ROWS * (ROWS - 1) / 2, table.sum("id"));
+            assertEquals((long) ROWS * (ROWS - 1) / 2, table.sum("small"));
+            assertEquals(10L * 99 * 100 / 2, table.sum("tiny"));
+            assertEquals(ROWS * 0.5, table.sum("ratio"));
+            assertEquals(ROWS * 2.0, table.sum("amount"));
+            assertThrows(IllegalArgumentException.class, () -> table.sum("name"));
+        } finally {
+            table.close();
+        }
+    }
+}
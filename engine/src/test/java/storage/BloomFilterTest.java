@@ -0,0 +1,106 @@
+package storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.row;
+
+class BloomFilterTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int KEYS = 20000;
+
+    @TempDir
+    Path dir;
+
+    // a filter grown from a tenth of the keys still knows every key added before it grew
+    @Test
+    void grownFilterHasNoFalseNegatives() throws Exception {
+        BloomFilter filter = BloomFilter.create(KEYS / 10, 10);
+        for (int i = 0; i < KEYS; i++) {
+            filter.add(key(i));
+            if (filter.isFull()) {
+                filter = filter.grow();
+            }
+        }
+        assertTrue(filter.getLayers() > 1, "layers " + filter.getLayers());
+        for (int i = 0; i < KEYS; i++) {
+            assertTrue(filter.mightContain(key(i)), "key " + i);
+        }
+        // about 1% per layer
+        int positives = 0;
+        for (int i = KEYS; i < 11 * KEYS; i++) {
+            if (filter.mightContain(key(i))) {
+                positives++;
+            }
+        }
+        assertTrue(positives < filter.getLayers() * 10 * KEYS / 50, "false positives " + positives);
+
+        Path path = this.dir.resolve("t.bloom");
+        filter.write(path);
+        BloomFilter read = BloomFilter.read(path);
+        assertEquals(filter.getLayers(), read.getLayers());
+        for (int i = 0; i < 11 * KEYS; i++) {
+            assertEquals(filter.mightContain(key(i)), read.mightContain(key(i)), "key " + i);
+        }
+        assertEquals(filter.isFull(), read.isFull());
+
+        // cut short
+        Files.write(path, Arrays.copyOf(Files.readAllBytes(path), (int) Files.size(path) - 8));
+        assertNull(BloomFilter.read(path));
+    }
+
+    // a table inserting past the keys its filter was sized for finds every row, before and after reopening
+    @Test
+    void tableFindsEveryKeyPastTheFilterSize() throws Exception {
+        String name = this.dir.resolve("t").toString();
+        Table table = new Table(name, columns(), PAGE_SIZE, config());
+        try {
+            for (int id = 0; id < KEYS; id++) {
+                table.insertRow(row(id));
+            }
+            assertFound(table);
+        } finally {
+            table.close();
+        }
+        Table reopened = new Table(name, columns(), PAGE_SIZE, config());
+        try {
+            assertFound(reopened);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static void assertFound(Table table) throws Exception {
+        for (int id = 0; id < KEYS; id++) {
+            assertEquals("user" + id, table.search(id).get("name"), "id " + id);
+        }
+        // missing keys are ruled out without going down the tree
+        TableStats stats = table.getStats();
+        long pages = stats.getCacheHits() + stats.getCacheMisses();
+        for (int id = KEYS; id < 2 * KEYS; id++) {
+            assertNull(table.search(id));
+        }
+        pages = stats.getCacheHits() + stats.getCacheMisses() - pages;
+        assertTrue(pages < KEYS / 2, "pages " + pages);
+    }
+
+    private static TableConfig config() {
+        TableConfig config = Fixtures.config();
+        config.setBloomFilterBitsPerKey(10);
+        config.setBloomFilterKeys(KEYS / 10);
+        return config;
+    }
+
+    private static byte[] key(int i) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(i).array();
+    }
+}
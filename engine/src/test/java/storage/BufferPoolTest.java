@@ -0,0 +1,99 @@
+package storage;
+
+import interfaces.Node;
+import org.junit.jupiter.api.Test;
+import tree.LeafNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BufferPoolTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int FRAMES = 8;
+
+    // pages written by the pool, in order
+    private final List<Integer> written = new ArrayList<>();
+
+    // pages used between every miss keep their reference bit, the hand passes them over
+    @Test
+    void usedPagesStayWhileOthersStreamThrough() throws Exception {
+        BufferPool pool = pool();
+        int[] hot = {0, 1, 2};
+        for (int cold = 100; cold < 1100; cold++) {
+            for (int no : hot) {
+                pool.unpin(pool.fetch(no));
+            }
+            pool.unpin(pool.fetch(cold));
+        }
+        // every cold page read once, the hot ones hardly ever again: a sweep finding every page
+        // referenced takes one now and then, first in first out would take them every few misses
+        long hotMisses = pool.getMisses() - 1000;
+        assertTrue(hotMisses < 4 * hot.length, "hot page misses " + hotMisses);
+        for (int no : hot) {
+            assertNotNull(pool.peek(no), "page " + no);
+        }
+        assertEquals(FRAMES, pool.size());
+    }
+
+    // a pinned page is passed over by the hand however long it wasn't used
+    @Test
+    void pinnedPagesAreNotEvicted() throws Exception {
+        BufferPool pool = pool();
+        Node pinned = pool.fetch(0);
+        for (int no = 1; no < 100; no++) {
+            pool.unpin(pool.fetch(no));
+        }
+        assertTrue(pool.peek(0) == pinned);
+        assertEquals(1, pool.getPinCount(0));
+        pool.unpin(pinned);
+    }
+
+    // a dirty page is written back before its frame goes to another page
+    @Test
+    void dirtyPagesAreWrittenBeforeEviction() throws Exception {
+        BufferPool pool = pool();
+        Node node = pool.fetch(0);
+        pool.markDirty(0);
+        pool.unpin(node);
+        assertEquals(1, pool.getDirtyCount());
+        for (int no = 1; no <= 2 * FRAMES; no++) {
+            pool.unpin(pool.fetch(no));
+        }
+        assertNull(pool.peek(0));
+        assertEquals(List.of(0), this.written);
+        assertEquals(0, pool.getDirtyCount());
+    }
+
+    /*
+        a write back copies the page, then a change is written through before the copy lands over
+        it. The page is clean as of the newer version, the older copy must leave it dirty again
+     */
+    @Test
+    void olderCopyLandingLastMakesThePageDirtyAgain() throws Exception {
+        BufferPool pool = pool();
+        Node node = pool.fetch(0);
+        pool.markDirty(0);
+        long copied = pool.getVersion(0);
+        pool.markDirty(0);
+        pool.flush(0);
+        assertEquals(0, pool.getDirtyCount());
+        pool.markClean(0, copied);
+        assertEquals(List.of(0), pool.getDirtyPages());
+        // the current image goes out once more and the page is clean for good
+        pool.flush(0);
+        assertEquals(0, pool.getDirtyCount());
+        assertEquals(List.of(0, 0), this.written);
+        pool.unpin(node);
+    }
+
+    private BufferPool pool() {
+        return new BufferPool((long) FRAMES * PAGE_SIZE, PAGE_SIZE,
+                no -> new LeafNode(no, PAGE_SIZE, 16, Integer.BYTES),
+                node -> this.written.add(node.getNodeNo()));
+    }
+}
@@ -0,0 +1,87 @@
+package storage;
+
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+import static storage.Fixtures.rows;
+
+class BulkLoadTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int ROWS = 5000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void failedLoadLeavesTheTableEmpty() throws Exception {
+        this.failLoadPartway(false);
+    }
+
+    @Test
+    void failedLoadWithLogLeavesTheTableEmpty() throws Exception {
+        this.failLoadPartway(true);
+    }
+
+    private void failLoadPartway(boolean wal) throws Exception {
+        String name = this.dir.resolve("t").toString();
+        Table table = new Table(name, columns(), PAGE_SIZE, config(wal));
+        try {
+            // sorted up to the last row, which goes back to the start
+            List<Row> rows = rows(ROWS);
+            rows.add(row(7));
+            assertThrows(Exception.class, () -> table.bulkLoad(rows.iterator()));
+            assertEquals(0, table.count());
+            assertNull(table.search(7));
+        } finally {
+            table.close();
+        }
+
+        Table reopened = new Table(name, columns(), PAGE_SIZE, config(wal));
+        try {
+            assertEquals(0, reopened.count());
+            assertEquals(ROWS, reopened.bulkLoad(rows(ROWS).iterator()));
+            assertEquals(ROWS, reopened.count());
+            assertEquals("user4999", reopened.search(4999).get("name"));
+        } finally {
+            reopened.close();
+        }
+
+        // the pages of the failed load were handed out again, the file is no bigger than a clean load's
+        String clean = this.dir.resolve("clean").toString();
+        Table loaded = new Table(clean, columns(), PAGE_SIZE, config(wal));
+        try {
+            loaded.bulkLoad(rows(ROWS).iterator());
+        } finally {
+            loaded.close();
+        }
+        assertEquals(Files.size(Path.of(clean + ".bin")), Files.size(Path.of(name + ".bin")));
+    }
+
+    @Test
+    void loadedTableTakesInserts() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config(false));
+        try {
+            assertEquals(ROWS, table.bulkLoad(rows(ROWS).iterator(), 0.5));
+            for (int id = ROWS; id < ROWS + 1000; id++) {
+                table.insertRow(row(id));
+            }
+            assertEquals(ROWS + 1000, table.count());
+            assertEquals("user0", table.search(0).get("name"));
+            assertEquals("user5999", table.search(5999).get("name"));
+            assertThrows(Exception.class, () -> table.bulkLoad(rows(10).iterator()));
+        } finally {
+            table.close();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package storage;
+
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+
+class ConcurrentReadTest {
+    private static final int PAGE_SIZE = 1024;
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    // even keys, there before the writers start and never deleted
+    private static final int KEPT = 10000;
+    private static final int ROUNDS = 3;
+
+    @TempDir
+    Path dir;
+
+    /*
+        writers insert the odd keys between the kept ones and delete them again, splitting and
+        merging the leaves the readers are on. A reader must find every kept key, and a scan must
+        return all of them in order, however many pages moved under it
+     */
+    @Test
+    void readersSeeEveryRowWhileLeavesSplitAndMerge() {
+        assertTimeoutPreemptively(Duration.ofMinutes(2), () -> {
+            Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config());
+            try {
+                for (int i = 0; i < KEPT; i++) {
+                    table.insertRow(row(2 * i));
+                }
+                AtomicReference<Throwable> failed = new AtomicReference<>();
+                AtomicBoolean writing = new AtomicBoolean(true);
+                List<Thread> writers = new ArrayList<>();
+                for (int t = 0; t < WRITERS; t++) {
+                    int first = t;
+                    writers.add(start(failed, () -> {
+                        for (int round = 0; round < ROUNDS; round++) {
+                            for (int i = first; i < KEPT; i += WRITERS) {
+                                assertTrue(table.insertRow(row(2 * i + 1)));
+                            }
+                            for (int i = first; i < KEPT; i += WRITERS) {
+                                assertTrue(table.delete(2 * i + 1));
+                            }
+                        }
+                    }));
+                }
+                List<Thread> readers = new ArrayList<>();
+                for (int t = 0; t < READERS; t++) {
+                    boolean scans = t % 2 == 0;
+                    readers.add(start(failed, () -> {
+                        while (writing.get()) {
+                            if (scans) {
+                                scanKept(table);
+                            } else {
+                                int id = 2 * ThreadLocalRandom.current().nextInt(KEPT);
+                                Row row = table.search(id);
+                                assertNotNull(row, "row " + id);
+                                assertEquals("user" + id, row.get("name"));
+                            }
+                        }
+                    }));
+                }
+                for (Thread writer : writers) {
+                    writer.join();
+                }
+                writing.set(false);
+                for (Thread reader : readers) {
+                    reader.join();
+                }
+                if (failed.get() != null) {
+                    throw new AssertionError("read or write failed", failed.get());
+                }
+                assertEquals(KEPT, table.count());
+            } finally {
+                table.close();
+            }
+        });
+    }
+
+    private interface Work {
+        void run() throws Exception;
+    }
+
+    private static Thread start(AtomicReference<Throwable> failed, Work work) {
+        Thread thread = new Thread(() -> {
+            try {
+                work.run();
+            } catch (Throwable e) {
+                failed.compareAndSet(null, e);
+            }
+        });
+        // a thread left hanging must not keep the test run alive
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void scanKept(Table table) throws Exception {
+        int last = -1;
+        int kept = 0;
+        try (RangeScan scan = table.scan(0, 2 * KEPT)) {
+            while (scan.hasNext()) {
+                int id = (Integer) scan.next().get("id");
+                assertTrue(id > last, "key " + id + " after " + last);
+                last = id;
+                if (id % 2 == 0) {
+                    kept++;
+                }
+            }
+        }
+        assertEquals(KEPT, kept);
+    }
+}
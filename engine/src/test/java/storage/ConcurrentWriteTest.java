@@ -0,0 +1,97 @@
+package storage;
+
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+import static storage.Fixtures.updates;
+
+class ConcurrentWriteTest {
+    private static final int PAGE_SIZE = 1024;
+    private static final int THREADS = 8;
+    private static final int ROWS_PER_THREAD = 3000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentWritersWithLog() {
+        this.writeConcurrently(true);
+    }
+
+    @Test
+    void concurrentWritersWithoutLog() {
+        this.writeConcurrently(false);
+    }
+
+    /*
+        every writer inserts keys interleaved with the others', so they split the same leaves and
+        parents, then updates some of its rows and deletes others, merging leaves back
+     */
+    private void writeConcurrently(boolean wal) {
+        assertTimeoutPreemptively(Duration.ofMinutes(2), () -> {
+            Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config(wal));
+            try {
+                AtomicReference<Throwable> failed = new AtomicReference<>();
+                List<Thread> writers = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    int first = t;
+                    Thread writer = new Thread(() -> {
+                        try {
+                            for (int i = 0; i < ROWS_PER_THREAD; i++) {
+                                assertTrue(table.insertRow(row(first + i * THREADS)));
+                            }
+                            for (int i = 0; i < ROWS_PER_THREAD; i++) {
+                                int id = first + i * THREADS;
+                                if (i % 4 == 0) {
+                                    assertTrue(table.delete(id));
+                                } else if (i % 4 == 1) {
+                                    assertTrue(table.update(id, updates("name", "renamed" + id)));
+                                }
+                            }
+                        } catch (Throwable e) {
+                            failed.compareAndSet(null, e);
+                        }
+                    });
+                    // a writer left hanging must not keep the test run alive
+                    writer.setDaemon(true);
+                    writers.add(writer);
+                    writer.start();
+                }
+                for (Thread writer : writers) {
+                    writer.join();
+                }
+                if (failed.get() != null) {
+                    throw new AssertionError("write failed", failed.get());
+                }
+
+                int rows = THREADS * ROWS_PER_THREAD;
+                assertEquals(rows - rows / 4, table.count());
+                for (int id = 0; id < rows; id++) {
+                    Row row = table.search(id);
+                    int i = id / THREADS;
+                    if (i % 4 == 0) {
+                        assertNull(row, "row " + id);
+                    } else {
+                        assertEquals((i % 4 == 1 ? "renamed" : "user") + id, row.get("name"));
+                    }
+                }
+            } finally {
+                table.close();
+            }
+        });
+    }
+}
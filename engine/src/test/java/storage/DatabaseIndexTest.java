@@ -0,0 +1,96 @@
+package storage;
+
+import models.Column;
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/*
+    A table and its index share the flusher of their database. With a cache too small for the
+    dirty pages of both, writers used to wait for the flusher while holding the latch of the
+    row, which the flusher was waiting for in turn.
+ */
+class DatabaseIndexTest {
+    private static final int PAGE_SIZE = 2048;
+    private static final int THREADS = 8;
+    private static final int ROWS_PER_THREAD = 3000;
+    private static final int NAMES = 100;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentIndexedInsertsWithLog() {
+        this.insertConcurrently(true);
+    }
+
+    @Test
+    void concurrentIndexedInsertsWithoutLog() {
+        this.insertConcurrently(false);
+    }
+
+    private void insertConcurrently(boolean wal) {
+        assertTimeoutPreemptively(Duration.ofMinutes(2), () -> {
+            try (Database db = new Database(this.dir.resolve("db").toString(), 200L * PAGE_SIZE)) {
+                TableConfig config = new TableConfig();
+                config.setWalEnabled(wal);
+                config.setJmxEnabled(false);
+                Table table = db.createTable(this.dir.resolve("users").toString(), columns(), PAGE_SIZE, config);
+                table.createIndex("name");
+
+                AtomicReference<Throwable> failed = new AtomicReference<>();
+                List<Thread> writers = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    int first = t;
+                    Thread writer = new Thread(() -> {
+                        try {
+                            for (int i = 0; i < ROWS_PER_THREAD; i++) {
+                                table.insertRow(row(first + i * THREADS));
+                            }
+                        } catch (Throwable e) {
+                            failed.compareAndSet(null, e);
+                        }
+                    });
+                    // a writer left hanging must not keep the test run alive
+                    writer.setDaemon(true);
+                    writers.add(writer);
+                    writer.start();
+                }
+                for (Thread writer : writers) {
+                    writer.join();
+                }
+                if (failed.get() != null) {
+                    throw new AssertionError("insert failed", failed.get());
+                }
+
+                assertEquals(THREADS * ROWS_PER_THREAD, table.count());
+                assertEquals(THREADS * ROWS_PER_THREAD / NAMES, table.findBy("name", "n7", "id").size());
+            }
+        });
+    }
+
+    private static List<Column<?>> columns() {
+        List<Column<?>> columns = new ArrayList<>();
+        columns.add(new Column<Integer>("id", Integer.class));
+        columns.add(new Column<String>("name", String.class, 64));
+        columns.add(new Column<String>("email", String.class, 128));
+        return columns;
+    }
+
+    private static Row row(int id) {
+        Row row = new Row(id);
+        row.put("id", id);
+        row.put("name", "n" + id % NAMES);
+        row.put("email", "user" + id + "@example.com");
+        return row;
+    }
+}
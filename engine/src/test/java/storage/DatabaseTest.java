@@ -0,0 +1,84 @@
+package storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+
+class DatabaseTest {
+    private static final int PAGE_SIZE = 2048;
+    private static final int TABLES = 4;
+
+    @TempDir
+    Path dir;
+
+    // each table on its own would keep up to three quarters of the cache dirty
+    @Test
+    void tablesWithLogShareTheDirtyBudget() throws Exception {
+        long budget = 64L * PAGE_SIZE;
+        try (Database db = new Database(this.dir.resolve("db").toString(), budget)) {
+            TableConfig config = config(true);
+            List<Table> tables = new ArrayList<>();
+            for (int t = 0; t < TABLES; t++) {
+                tables.add(db.createTable(this.dir.resolve("t" + t).toString(), columns(), PAGE_SIZE, config));
+            }
+            PageCache cache = db.getPageCache();
+            for (int id = 0; id < 3000; id++) {
+                tables.get(id % TABLES).insertRow(row(id));
+                assertTrue(cache.getDirtyBytes() < budget * 3 / 4, "dirty bytes " + cache.getDirtyBytes());
+                assertTrue(cache.getMemoryUsed() <= budget, "memory used " + cache.getMemoryUsed());
+            }
+            for (Table table : tables) {
+                assertEquals(3000 / TABLES, table.count());
+            }
+        }
+    }
+
+    @Test
+    void catalogWithoutVersionIsRead() throws Exception {
+        String name = this.dir.resolve("db").toString();
+        this.createUsers(name);
+        // the first layout, the number of tables right after the magic
+        Path catalog = Path.of(name + ".catalog");
+        byte[] bytes = Files.readAllBytes(catalog);
+        ByteBuffer legacy = ByteBuffer.allocate(bytes.length - Integer.BYTES);
+        legacy.put(bytes, 0, Integer.BYTES).put(bytes, 2 * Integer.BYTES, bytes.length - 2 * Integer.BYTES);
+        Files.write(catalog, legacy.array());
+        try (Database db = new Database(name, 64L * PAGE_SIZE)) {
+            assertEquals(List.of(this.dir.resolve("users").toString()), db.getTableNames());
+            assertEquals(100, db.getTable(this.dir.resolve("users").toString()).count());
+        }
+    }
+
+    @Test
+    void catalogOfANewerVersionIsRejected() throws Exception {
+        String name = this.dir.resolve("db").toString();
+        this.createUsers(name);
+        Path catalog = Path.of(name + ".catalog");
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(catalog));
+        bytes.putInt(Integer.BYTES, -99);
+        Files.write(catalog, bytes.array());
+        Exception e = assertThrows(Exception.class, () -> new Database(name, 64L * PAGE_SIZE));
+        assertTrue(e.getMessage().contains("version 99"), e.getMessage());
+    }
+
+    private void createUsers(String name) throws Exception {
+        try (Database db = new Database(name, 64L * PAGE_SIZE)) {
+            Table table = db.createTable(this.dir.resolve("users").toString(), columns(), PAGE_SIZE, config());
+            for (int id = 0; id < 100; id++) {
+                table.insertRow(row(id));
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package storage;
+
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+
+class DeleteTest {
+    private static final int PAGE_SIZE = 1024;
+    private static final int ROWS = 20000;
+
+    @TempDir
+    Path dir;
+
+    // every other row goes, leaves borrow from and merge with their siblings
+    @Test
+    void rowsLeftAfterDeletesAreAllFound() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config(false));
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id));
+            }
+            for (int id = 0; id < ROWS; id += 2) {
+                assertTrue(table.delete(id));
+            }
+            for (int id = ROWS - 1; id >= ROWS / 2; id -= 2) {
+                assertTrue(table.delete(id));
+            }
+            assertEquals(ROWS / 4, table.count());
+            for (int id = 0; id < ROWS; id++) {
+                Row found = table.search(id);
+                if (id % 2 == 1 && id < ROWS / 2) {
+                    assertEquals("user" + id, found.get("name"));
+                } else {
+                    assertNull(found, "row " + id);
+                }
+            }
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    void pagesFreedPastTheMetadataPageAreReused() throws Exception {
+        this.deleteAndRefill(false);
+    }
+
+    @Test
+    void pagesFreedPastTheMetadataPageAreReusedWithLog() throws Exception {
+        this.deleteAndRefill(true);
+    }
+
+    // far more pages are freed than the metadata page lists, the rest are kept in trunks
+    private void deleteAndRefill(boolean wal) throws Exception {
+        String name = this.dir.resolve("t").toString();
+        Path file = Path.of(name + ".bin");
+        long full;
+        Table table = new Table(name, columns(), PAGE_SIZE, config(wal));
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id));
+            }
+            table.flush();
+            full = Files.size(file);
+            assertTrue(full / PAGE_SIZE > 4 * (PAGE_SIZE / Integer.BYTES), "pages " + full / PAGE_SIZE);
+            for (int id = 0; id < ROWS; id++) {
+                assertTrue(table.delete(id));
+            }
+            assertEquals(0, table.count());
+        } finally {
+            table.close();
+        }
+
+        // the trunks outlive the table
+        Table reopened = new Table(name, columns(), PAGE_SIZE, config(wal));
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                reopened.insertRow(row(id));
+            }
+            assertEquals(ROWS, reopened.count());
+            assertEquals("user12345", reopened.search(12345).get("name"));
+        } finally {
+            reopened.close();
+        }
+        assertTrue(Files.size(file) <= full, "file grew from " + full + " to " + Files.size(file));
+    }
+}
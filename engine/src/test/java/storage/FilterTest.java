@@ -0,0 +1,95 @@
+package storage;
+
+import models.Filter;
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+
+class FilterTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int ROWS = 5000;
+
+    @TempDir
+    Path dir;
+
+    // filters checked on the records return what checking the decoded rows would
+    @Test
+    void filteredScanMatchesTheDecodedRows() throws Exception {
+        Table table = table();
+        try {
+            assertFiltered(table, List.of(Filter.eq("name", "user77")), id -> id == 77);
+            // "user7" is not "user77" with the rest cut off
+            assertFiltered(table, List.of(Filter.eq("name", "user7")), id -> id == 7);
+            assertFiltered(table, List.of(Filter.prefix("name", "user12")), id -> ("user" + id).startsWith("user12"));
+            assertFiltered(table, List.of(Filter.lt("name", "user2")), id -> ("user" + id).compareTo("user2") < 0);
+            assertFiltered(table, List.of(Filter.gt("id", 4990)), id -> id > 4990);
+            assertFiltered(table, List.of(Filter.between("id", 100, 200), Filter.gt("name", "user15")),
+                    id -> id >= 100 && id <= 200 && ("user" + id).compareTo("user15") > 0);
+            assertFiltered(table, List.of(Filter.eq("name", "nobody")), id -> false);
+        } finally {
+            table.close();
+        }
+    }
+
+    // the limit counts the rows returned, not the ones passed over
+    @Test
+    void limitCountsMatchingRows() throws Exception {
+        Table table = table();
+        try {
+            List<Integer> ids = new ArrayList<>();
+            try (RangeScan scan = table.scan(table.key(0), table.key(ROWS - 1), List.of(Filter.prefix("name", "user3")), 5)) {
+                scan.forEachRemaining(row -> ids.add(row.getId()));
+            }
+            assertEquals(List.of(3, 30, 31, 32, 33), ids);
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    void badFiltersAreRejected() throws Exception {
+        Table table = table();
+        try {
+            assertThrows(IllegalArgumentException.class, () -> table.count(Filter.eq("email", "a")));
+            assertThrows(IllegalArgumentException.class, () -> table.count(Filter.eq("id", "7")));
+            assertThrows(IllegalArgumentException.class, () -> table.count(Filter.prefix("id", "7")));
+            assertThrows(IllegalArgumentException.class, () -> Filter.between("id", 1, null));
+        } finally {
+            table.close();
+        }
+    }
+
+    private static void assertFiltered(Table table, List<Filter> filters, IntPredicate expected) throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < ROWS; id++) {
+            if (expected.test(id)) {
+                ids.add(id);
+            }
+        }
+        try (Stream<Row> rows = table.stream(filters, "id")) {
+            assertEquals(ids, rows.map(Row::getId).collect(Collectors.toList()), filters.toString());
+        }
+        assertEquals(ids.size(), table.count(filters.toArray(new Filter[0])), filters.toString());
+    }
+
+    private Table table() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config());
+        for (int id = 0; id < ROWS; id++) {
+            table.insertRow(row(id));
+        }
+        return table;
+    }
+}
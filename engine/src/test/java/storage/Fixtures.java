@@ -0,0 +1,63 @@
+package storage;
+
+import models.Column;
+import models.Row;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    the table most tests run against: an int id and a name of up to 64 bytes, "user<id>" unless
+    the test gives another. Configs have JMX off, tests open many tables with the same names
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    static List<Column<?>> columns() {
+        List<Column<?>> columns = new ArrayList<>();
+        columns.add(new Column<Integer>("id", Integer.class));
+        columns.add(new Column<String>("name", String.class, 64));
+        return columns;
+    }
+
+    static Row row(int id) {
+        return row(id, "user" + id);
+    }
+
+    static Row row(int id, String name) {
+        Row row = new Row(id);
+        row.put("id", id);
+        row.put("name", name);
+        return row;
+    }
+
+    // ids 0 up to count, in order
+    static List<Row> rows(int count) {
+        List<Row> rows = new ArrayList<>();
+        for (int id = 0; id < count; id++) {
+            rows.add(row(id));
+        }
+        return rows;
+    }
+
+    static TableConfig config() {
+        return config(false);
+    }
+
+    static TableConfig config(boolean wal) {
+        TableConfig config = new TableConfig();
+        config.setJmxEnabled(false);
+        config.setWalEnabled(wal);
+        return config;
+    }
+
+    // update takes a map it can add the key to
+    static Map<String, Object> updates(String column, Object value) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(column, value);
+        return updates;
+    }
+}
@@ -0,0 +1,115 @@
+package storage;
+
+import interfaces.PageStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.row;
+
+class FlusherTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int MAX_DIRTY_PAGES = 16;
+
+    @TempDir
+    Path dir;
+
+    // writers past the limit wait for the flusher, which keeps the dirty pages at the limit or below
+    @Test
+    void flusherKeepsDirtyPagesBelowTheLimit() throws Exception {
+        String name = this.dir.resolve("t").toString();
+        Table table = new Table(name, columns(), PAGE_SIZE, config());
+        try {
+            for (int id = 0; id < 20000; id++) {
+                table.insertRow(row(id));
+                assertTrue(table.getStats().getDirtyPages() <= MAX_DIRTY_PAGES + 4, "dirty " + table.getStats().getDirtyPages());
+            }
+            assertTrue(table.getStats().getFlushedPages() > 0);
+            assertEquals(0, table.getStats().getFlushFailures());
+        } finally {
+            table.close();
+        }
+        Table reopened = new Table(name, columns(), PAGE_SIZE, config());
+        try {
+            assertEquals(20000, reopened.count());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    // a writer held back by a store that fails every write gets the failure instead of waiting forever
+    @Test
+    void failedWriteBackReachesTheWriter() throws Exception {
+        String name = this.dir.resolve("t").toString();
+        Table table = new Table(name, columns(), PAGE_SIZE, config());
+        FailingStore store = ForwardingStore.install(table, FailingStore::new);
+        int inserted = 0;
+        try {
+            store.failing = true;
+            IOException failure = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> assertThrows(IOException.class, () -> {
+                for (int id = 0; id < 20000; id++) {
+                    table.insertRow(row(id));
+                }
+            }));
+            assertEquals("disk gone", failure.getCause().getMessage());
+            assertTrue(table.getStats().getFlushFailures() > 0);
+            inserted = (int) table.count();
+        } finally {
+            store.failing = false;
+            table.close();
+        }
+        // the rows were inserted before the writer was told, they are written back on close
+        Table reopened = new Table(name, columns(), PAGE_SIZE, config());
+        try {
+            assertTrue(inserted > 0);
+            assertEquals(inserted, reopened.count());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static TableConfig config() {
+        TableConfig config = Fixtures.config();
+        config.setCheckpointIntervalMillis(50);
+        config.setMaxDirtyPages(MAX_DIRTY_PAGES);
+        config.setCheckpointDirtyPages(8);
+        config.setFlushLowWatermark(4);
+        return config;
+    }
+
+    // the table's store with writes of tree pages failing while asked to, the metadata page still
+    // goes through since allocating a page writes it right away
+    private static final class FailingStore extends ForwardingStore {
+        volatile boolean failing;
+
+        private FailingStore(PageStore store) {
+            super(store);
+        }
+
+        @Override
+        public void write(int pageNo, byte[] data) throws Exception {
+            this.check(pageNo);
+            super.write(pageNo, data);
+        }
+
+        @Override
+        public void write(int firstPageNo, byte[][] pages) throws Exception {
+            this.check(firstPageNo);
+            super.write(firstPageNo, pages);
+        }
+
+        private void check(int pageNo) throws IOException {
+            if (this.failing && pageNo > 0) {
+                throw new IOException("disk gone");
+            }
+        }
+    }
+}
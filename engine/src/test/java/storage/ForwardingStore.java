@@ -0,0 +1,57 @@
+package storage;
+
+import interfaces.PageStore;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+/*
+    page store handing every call on to the one of a table, tests override the calls they look
+    at. install puts it in place of the store of an open table
+ */
+class ForwardingStore implements PageStore {
+    final PageStore store;
+
+    ForwardingStore(PageStore store) {
+        this.store = store;
+    }
+
+    static <S extends ForwardingStore> S install(Table table, Function<PageStore, S> wrap) throws Exception {
+        Field field = Table.class.getDeclaredField("store");
+        field.setAccessible(true);
+        S store = wrap.apply((PageStore) field.get(table));
+        field.set(table, store);
+        return store;
+    }
+
+    @Override
+    public int getPageSize() {
+        return this.store.getPageSize();
+    }
+
+    @Override
+    public ByteBuffer read(int pageNo) throws Exception {
+        return this.store.read(pageNo);
+    }
+
+    @Override
+    public void write(int pageNo, byte[] data) throws Exception {
+        this.store.write(pageNo, data);
+    }
+
+    @Override
+    public void write(int firstPageNo, byte[][] pages) throws Exception {
+        this.store.write(firstPageNo, pages);
+    }
+
+    @Override
+    public void sync() throws Exception {
+        this.store.sync();
+    }
+
+    @Override
+    public void close() throws Exception {
+        this.store.close();
+    }
+}
@@ -0,0 +1,79 @@
+package storage;
+
+import interfaces.PageStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+
+class GatheringWriteTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int ROWS = 20000;
+
+    @TempDir
+    Path dir;
+
+    // leaves filled in key order lie next to each other, a write back sends them out in runs
+    @Test
+    void neighbouringPagesGoOutTogether() throws Exception {
+        String name = this.dir.resolve("t").toString();
+        Table table = new Table(name, columns(), PAGE_SIZE, config());
+        CountingStore store = ForwardingStore.install(table, CountingStore::new);
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id));
+            }
+            table.flush();
+            assertTrue(store.runs.get() > 0);
+            assertTrue(store.pages.get() > 2 * store.calls.get(), "pages " + store.pages + " in " + store.calls + " writes");
+        } finally {
+            table.close();
+        }
+        Table reopened = new Table(name, columns(), PAGE_SIZE, config());
+        try {
+            assertEquals(ROWS, reopened.count());
+            for (int id = 0; id < ROWS; id += 97) {
+                assertEquals("user" + id, reopened.search(id).get("name"));
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    // counts the writes of tree pages and the pages they carry, the metadata page is written alone
+    private static final class CountingStore extends ForwardingStore {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicInteger pages = new AtomicInteger();
+
+        private CountingStore(PageStore store) {
+            super(store);
+        }
+
+        @Override
+        public void write(int pageNo, byte[] data) throws Exception {
+            if (pageNo > 0) {
+                this.calls.incrementAndGet();
+                this.pages.incrementAndGet();
+            }
+            super.write(pageNo, data);
+        }
+
+        @Override
+        public void write(int firstPageNo, byte[][] pages) throws Exception {
+            this.calls.incrementAndGet();
+            if (pages.length > 1) {
+                this.runs.incrementAndGet();
+            }
+            this.pages.addAndGet(pages.length);
+            super.write(firstPageNo, pages);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package storage;
+
+import models.Column;
+import models.Key;
+import models.KeyCodec;
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static storage.Fixtures.config;
+
+class KeyOrderTest {
+    private static final String[] NAMES = {"", "a", "a ", " a", "ab", "b", "\ta\t", "a\u0001", "é", "zz", "Z", "a b"};
+
+    @TempDir
+    Path dir;
+
+    // leading and trailing spaces and control characters are part of the value
+    @Test
+    void stringKeysComeBackAsInserted() throws Exception {
+        KeyCodec codec = new KeyCodec(List.of(new Column<String>("name", String.class, 8), new Column<Integer>("id", Integer.class)));
+        for (String name : NAMES) {
+            Key key = codec.key(name, -3);
+            Object[] decoded = codec.decode(key.getBytes()).getValues();
+            assertArrayEquals(new Object[]{name, -3}, decoded, "'" + name + "'");
+        }
+    }
+
+    // padding is zeros, a zero of the value itself would make "a" and "a\0" the same key
+    @Test
+    void keysPaddingWouldLoseAreRejected() throws Exception {
+        KeyCodec codec = new KeyCodec(List.of(new Column<String>("name", String.class, 4)));
+        assertThrows(IllegalArgumentException.class, () -> codec.key("a\0"));
+        assertThrows(IllegalArgumentException.class, () -> codec.key("\0"));
+        assertEquals("a", codec.decode(codec.key("a").getBytes()).getValues()[0]);
+        // longer than the column, Column.validate turns it down first
+        assertThrows(Exception.class, () -> codec.key("abcde"));
+    }
+
+    // the unsigned byte order of the keys is the order of their values, column by column
+    @Test
+    void compositeKeysSortLikeTheirValues() throws Exception {
+        KeyCodec codec = new KeyCodec(List.of(new Column<String>("region", String.class, 8), new Column<Double>("score", Double.class),
+                new Column<Long>("id", Long.class), new Column<Short>("rank", Short.class)));
+        Random random = new Random(42);
+        double[] scores = {Double.NEGATIVE_INFINITY, -1e300, -2.5, -0.0, 0.0, Double.MIN_VALUE, 1.5, 1e300, Double.POSITIVE_INFINITY};
+        long[] ids = {Long.MIN_VALUE, -7, -1, 0, 1, 7, Long.MAX_VALUE};
+        short[] ranks = {Short.MIN_VALUE, -1, 0, 1, Short.MAX_VALUE};
+        List<Object[]> values = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            values.add(new Object[]{NAMES[random.nextInt(NAMES.length)], scores[random.nextInt(scores.length)],
+                    ids[random.nextInt(ids.length)], ranks[random.nextInt(ranks.length)]});
+        }
+        Comparator<Object[]> byValues = Comparator.<Object[], String>comparing(v -> (String) v[0])
+                .thenComparing(v -> (Double) v[1], Double::compare)
+                .thenComparing(v -> (Long) v[2])
+                .thenComparing(v -> (Short) v[3]);
+        List<Object[]> byBytes = new ArrayList<>(values);
+        byBytes.sort((a, b) -> Arrays.compareUnsigned(encode(codec, a), encode(codec, b)));
+        values.sort(byValues);
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(0, byValues.compare(values.get(i), byBytes.get(i)), Arrays.toString(values.get(i)) + " at " + i);
+        }
+    }
+
+    // a table keyed by a string and an int returns its rows in key order and finds them by exact value
+    @Test
+    void tableOrdersRowsByCompositeKey() throws Exception {
+        List<Column<?>> columns = List.of(new Column<String>("name", String.class, 8), new Column<Integer>("id", Integer.class),
+                new Column<String>("note", String.class, 16));
+        TableConfig config = config();
+        config.setKeyColumns("name", "id");
+        Table table = new Table(this.dir.resolve("t").toString(), columns, 4096, config);
+        try {
+            List<Row> rows = new ArrayList<>();
+            int n = 0;
+            for (String name : NAMES) {
+                for (int id : new int[]{3, -1, 0}) {
+                    Row row = new Row(n++);
+                    row.put("name", name);
+                    row.put("id", id);
+                    row.put("note", name + "/" + id);
+                    rows.add(row);
+                }
+            }
+            Collections.shuffle(rows, new Random(7));
+            for (Row row : rows) {
+                table.insertRow(row);
+            }
+            List<String> expected = new ArrayList<>();
+            rows.sort(Comparator.<Row, String>comparing(r -> (String) r.get("name")).thenComparing(r -> (Integer) r.get("id")));
+            rows.forEach(row -> expected.add((String) row.get("note")));
+            List<String> scanned = new ArrayList<>();
+            KeyCodec codec = table.getKeyCodec();
+            try (RangeScan scan = table.scan(codec.first(), codec.last())) {
+                scan.forEachRemaining(row -> scanned.add((String) row.get("note")));
+            }
+            assertEquals(expected, scanned);
+            assertEquals(" a/0", table.search(table.key(" a", 0)).get("note"));
+            assertEquals("a /3", table.search(table.key("a ", 3)).get("note"));
+            assertNull(table.search(table.key("a  ", 3)));
+        } finally {
+            table.close();
+        }
+    }
+
+    // the value of an indexed column is a key of the index, it is checked before the row goes in
+    @Test
+    void indexedValueWithZeroIsRejectedBeforeTheRowIsWritten() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), Fixtures.columns(), 4096, config());
+        try {
+            table.createIndex("name");
+            table.insertRow(Fixtures.row(1, "a"));
+            assertThrows(IllegalArgumentException.class, () -> table.insertRow(Fixtures.row(2, "a\0")));
+            assertNull(table.search(2));
+            assertEquals(1, table.findBy("name", "a").size());
+        } finally {
+            table.close();
+        }
+    }
+
+    private static byte[] encode(KeyCodec codec, Object[] values) {
+        try {
+            return codec.key(values).getBytes();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    // the bucket of a value reports at most 1% more, from nanoseconds up to about a minute
+    @Test
+    void bucketsStayWithinOnePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value < 1L << 36; value = value * 9 / 8 + 1) {
+            histogram.reset();
+            for (int i = 0; i < 99; i++) {
+                histogram.record(value);
+            }
+            // keeps the max above, it would cap the answer otherwise
+            histogram.record(2 * value);
+            long p50 = histogram.getP50Nanos();
+            assertTrue(p50 >= value && p50 <= value + value / 100, "value " + value + " reported " + p50);
+        }
+    }
+
+    @Test
+    void percentilesFollowTheRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000, histogram.getMaxNanos());
+        assertEquals(50_000_500.0, histogram.getMeanNanos(), 0.001);
+        assertWithin(50_000_000, histogram.getP50Nanos());
+        assertWithin(90_000_000, histogram.getP90Nanos());
+        assertWithin(99_000_000, histogram.getP99Nanos());
+        assertWithin(99_900_000, histogram.getP999Nanos());
+    }
+
+    // past the tracked range the value lands in the last bucket, the max stays exact
+    @Test
+    void largeValuesKeepAnExactMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long hour = 3_600_000_000_000L;
+        histogram.record(hour);
+        histogram.record(-5);
+        assertEquals(hour, histogram.getMaxNanos());
+        assertEquals(hour, histogram.getValueAtPercentile(100));
+        assertEquals(0, histogram.getValueAtPercentile(1));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getP99Nanos());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 100, "expected " + expected + " reported " + actual);
+    }
+}
@@ -0,0 +1,90 @@
+package storage;
+
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+
+class MappedPageStoreTest {
+    private static final int PAGE_SIZE = 512;
+    // four pages to a chunk, so pages land in several mappings
+    private static final int CHUNK_SIZE = 4 * PAGE_SIZE;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pagesComeBackFromEveryChunkAfterReopen() throws Exception {
+        String path = this.dir.resolve("t.bin").toString();
+        MappedPageStore store = new MappedPageStore(path, PAGE_SIZE, CHUNK_SIZE);
+        try {
+            for (int no = 0; no < 10; no++) {
+                store.write(no, page(no));
+            }
+            // a run of pages across a chunk boundary
+            store.write(14, new byte[][]{page(14), page(15), page(16)});
+            for (int no = 0; no < 10; no++) {
+                assertArrayEquals(page(no), bytes(store.read(no)), "page " + no);
+            }
+            assertArrayEquals(page(16), bytes(store.read(16)));
+            // past the last mapped chunk there is no file to read
+            assertThrows(Exception.class, () -> store.read(20));
+        } finally {
+            store.close();
+        }
+
+        MappedPageStore reopened = new MappedPageStore(path, PAGE_SIZE, CHUNK_SIZE);
+        try {
+            assertArrayEquals(page(15), bytes(reopened.read(15)));
+            assertArrayEquals(page(3), bytes(reopened.read(3)));
+            assertThrows(Exception.class, () -> reopened.read(20));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void tableOnMappedFileKeepsItsRows() throws Exception {
+        String name = this.dir.resolve("t").toString();
+        TableConfig config = config();
+        config.setStorageMode(StorageMode.MMAP);
+        Table table = new Table(name, columns(), 4096, config);
+        try {
+            for (int id = 0; id < 5000; id++) {
+                table.insertRow(row(id));
+            }
+        } finally {
+            table.close();
+        }
+        Table reopened = new Table(name, columns(), 4096, config);
+        try {
+            assertEquals(5000, reopened.count());
+            Row row = reopened.search(4321);
+            assertEquals("user4321", row.get("name"));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private static byte[] page(int no) {
+        byte[] page = new byte[PAGE_SIZE];
+        Arrays.fill(page, (byte) (no + 1));
+        return page;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
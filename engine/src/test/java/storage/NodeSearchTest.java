@@ -0,0 +1,83 @@
+package storage;
+
+import org.junit.jupiter.api.Test;
+import tree.InternalNode;
+import tree.LeafNode;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NodeSearchTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int KEY_SIZE = Integer.BYTES;
+    private static final int KEYS = 200;
+
+    // keys 10, 20 and so on, half of them in the upper half of the unsigned range, found where a sorted array has them
+    @Test
+    void findKeyMatchesTheSortedPositions() {
+        LeafNode leaf = new LeafNode(1, PAGE_SIZE, KEYS, KEY_SIZE);
+        for (int i = 0; i < KEYS; i++) {
+            leaf.insert(i, key(value(i)), new byte[]{(byte) i});
+        }
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(i, leaf.findKey(key(value(i))));
+            // just above the key, before the next one
+            assertEquals(-(i + 2), leaf.findKey(key(value(i) + 1)));
+        }
+        assertEquals(-1, leaf.findKey(key(0)));
+        assertEquals(-(KEYS + 1), leaf.findKey(key(-1)));
+        assertEquals(7, leaf.getRecord(7)[0]);
+    }
+
+    // a key equal to a separator goes to the child right of it
+    @Test
+    void findChildGoesRightOnEqualKeys() {
+        InternalNode node = new InternalNode(1, PAGE_SIZE, KEYS, KEY_SIZE);
+        node.init(100, key(value(0)), 101);
+        for (int i = 1; i < KEYS; i++) {
+            node.insert(i, key(value(i)), 100 + i + 1);
+        }
+        assertEquals(0, node.findChild(key(value(0) - 1)));
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(i + 1, node.findChild(key(value(i))));
+            assertEquals(100 + i + 1, node.getValue(node.findChild(key(value(i) + 1))));
+        }
+    }
+
+    // keys and child pointers come back from the page as they went in
+    @Test
+    void internalNodeSurvivesPackAndUnpack() throws Exception {
+        InternalNode node = new InternalNode(3, PAGE_SIZE, KEYS, KEY_SIZE);
+        node.init(7, key(value(0)), 8);
+        for (int i = 1; i < KEYS; i++) {
+            node.insert(i, key(value(i)), 8 + i);
+        }
+        node.setNext(42);
+        node.setHighKey(key(-1));
+        byte[] page = node.pack(List.of());
+        InternalNode read = new InternalNode(0, PAGE_SIZE, KEYS, KEY_SIZE);
+        read.unpack(List.of(), ByteBuffer.wrap(page));
+        assertEquals(3, read.getNodeNo());
+        assertEquals(KEYS, read.getKeyCount());
+        assertEquals(42, read.getNext());
+        assertArrayEquals(key(-1), read.getHighKey());
+        for (int i = 0; i < KEYS; i++) {
+            assertArrayEquals(node.getKey(i), read.getKey(i));
+        }
+        for (int i = 0; i < read.getValueCount(); i++) {
+            assertEquals(node.getValue(i), read.getValue(i));
+        }
+    }
+
+    // half of the keys have the top bit set, they sort after the others as unsigned bytes
+    private static int value(int i) {
+        return i < KEYS / 2 ? (i + 1) * 10 : Integer.MIN_VALUE + i * 10;
+    }
+
+    private static byte[] key(int value) {
+        return ByteBuffer.allocate(KEY_SIZE).putInt(value).array();
+    }
+}
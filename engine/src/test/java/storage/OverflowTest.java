@@ -0,0 +1,128 @@
+package storage;
+
+import models.Column;
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.config;
+import static storage.Fixtures.updates;
+
+class OverflowTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int ROWS = 200;
+
+    @TempDir
+    Path dir;
+
+    // values of several pages each go to overflow chains and come back whole, also after a reopen
+    @Test
+    void longValuesSurviveUpdatesAndReopen() throws Exception {
+        String name = this.dir.resolve("t").toString();
+        Table table = new Table(name, columns(), PAGE_SIZE, config());
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id, text(id, 3 * PAGE_SIZE + id)));
+            }
+            for (int id = 0; id < ROWS; id += 3) {
+                assertTrue(table.update(id, updates("body", text(id, 5 * PAGE_SIZE))));
+            }
+            for (int id = 1; id < ROWS; id += 3) {
+                // short enough to stay in the leaf
+                assertTrue(table.update(id, updates("body", "short" + id)));
+            }
+            for (int id = 2; id < ROWS; id += 6) {
+                assertTrue(table.delete(id));
+            }
+        } finally {
+            table.close();
+        }
+
+        Table reopened = new Table(name, columns(), PAGE_SIZE, config());
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                Row row = reopened.search(id);
+                if (id % 6 == 2) {
+                    assertNull(row, "row " + id);
+                } else {
+                    assertEquals(expected(id), row.get("body"), "row " + id);
+                }
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    // chains freed by updates and deletes are reused, rewriting the same rows doesn't grow the file
+    @Test
+    void freedChainsAreReused() throws Exception {
+        String name = this.dir.resolve("t").toString();
+        Table table = new Table(name, columns(), PAGE_SIZE, config());
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id, text(id, 4 * PAGE_SIZE)));
+            }
+            table.flush();
+            long size = Files.size(Path.of(name + ".bin"));
+            for (int round = 1; round <= 5; round++) {
+                for (int id = 0; id < ROWS; id++) {
+                    assertTrue(table.update(id, updates("body", text(id + round, 4 * PAGE_SIZE))));
+                }
+            }
+            for (int id = 0; id < ROWS; id++) {
+                assertTrue(table.delete(id));
+                assertTrue(table.insertRow(row(id, text(id, 4 * PAGE_SIZE))));
+            }
+            table.flush();
+            // a few pages for the chains of the rows being rewritten
+            assertTrue(Files.size(Path.of(name + ".bin")) <= size + 16L * PAGE_SIZE,
+                    "file grew from " + size + " to " + Files.size(Path.of(name + ".bin")));
+            assertEquals(text(7, 4 * PAGE_SIZE), table.search(7).get("body"));
+        } finally {
+            table.close();
+        }
+    }
+
+    private static String expected(int id) {
+        if (id % 3 == 0) {
+            return text(id, 5 * PAGE_SIZE);
+        }
+        if (id % 3 == 1) {
+            return "short" + id;
+        }
+        return text(id, 3 * PAGE_SIZE + id);
+    }
+
+    // differs from row to row all the way through, a page out of place shows
+    private static String text(int seed, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + (seed * 31 + i / 97) % 26));
+        }
+        return text.toString();
+    }
+
+
+
+    private static List<Column<?>> columns() {
+        List<Column<?>> columns = new ArrayList<>();
+        columns.add(new Column<Integer>("id", Integer.class));
+        columns.add(new Column<String>("body", String.class, 8 * PAGE_SIZE));
+        return columns;
+    }
+
+    private static Row row(int id, String body) {
+        Row row = new Row(id);
+        row.put("id", id);
+        row.put("body", body);
+        return row;
+    }
+}
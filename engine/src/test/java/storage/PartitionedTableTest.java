@@ -0,0 +1,90 @@
+package storage;
+
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+import static storage.Fixtures.rows;
+
+class PartitionedTableTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int PARTITIONS = 4;
+    private static final int ROWS = 20000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rowsInsertedByTheWritersComeBackInKeyOrder() throws Exception {
+        try (PartitionedTable table = new PartitionedTable(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config(), PARTITIONS)) {
+            assertEquals(ROWS, table.insertAll(rows(ROWS).iterator()));
+            // taken already, left out
+            assertEquals(0, table.insertAll(rows(100).iterator()));
+            assertEquals(ROWS, table.count());
+            for (int i = 0; i < PARTITIONS; i++) {
+                assertTrue(table.getPartition(i).count() > 0, "partition " + i);
+            }
+            try (Stream<Row> rows = table.stream()) {
+                int[] next = {0};
+                rows.forEach(row -> {
+                    assertEquals(next[0], row.get("id"));
+                    next[0]++;
+                });
+                assertEquals(ROWS, next[0]);
+            }
+            assertEquals("user777", table.search(777).get("name"));
+        }
+    }
+
+    @Test
+    void partitionsShareTheCacheSize() throws Exception {
+        TableConfig config = config();
+        try (PartitionedTable table = new PartitionedTable(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config, PARTITIONS)) {
+            long pages = 0;
+            for (int i = 0; i < PARTITIONS; i++) {
+                pages += table.getPartition(i).getStats().getCacheCapacity();
+            }
+            assertEquals(config.getCacheSize() / PAGE_SIZE, pages);
+        }
+    }
+
+    // a partition whose rows are out of order fails its load, the others finish theirs
+    @Test
+    void failedWriterFailsTheLoad() throws Exception {
+        try (PartitionedTable table = new PartitionedTable(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config(), PARTITIONS)) {
+            List<Row> rows = rows(ROWS);
+            rows.add(row(7));
+            assertThrows(Exception.class, () -> table.bulkLoad(rows.iterator()));
+            assertTrue(table.count() < ROWS);
+        }
+    }
+
+    // the layout is saved once every partition opened, a table that failed to open leaves none
+    @Test
+    void failedOpenLeavesNoLayout() throws Exception {
+        String name = this.dir.resolve("t").toString();
+        // a directory where the file of the last partition goes
+        Path blocked = Files.createDirectory(Path.of(PartitionedTable.getPartitionName(name, PARTITIONS - 1) + ".bin"));
+        assertThrows(Exception.class, () -> new PartitionedTable(name, columns(), PAGE_SIZE, config(), PARTITIONS));
+        assertFalse(Files.exists(Path.of(name + ".partitions")));
+
+        Files.delete(blocked);
+        try (PartitionedTable table = new PartitionedTable(name, columns(), PAGE_SIZE, config(), PARTITIONS)) {
+            assertEquals(PARTITIONS, table.getPartitionCount());
+        }
+        assertTrue(Files.exists(Path.of(name + ".partitions")));
+        assertThrows(IllegalArgumentException.class, () -> new PartitionedTable(name, columns(), PAGE_SIZE, config(), PARTITIONS + 1));
+    }
+}
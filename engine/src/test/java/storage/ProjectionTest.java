@@ -0,0 +1,77 @@
+package storage;
+
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+
+class ProjectionTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int ROWS = 5000;
+
+    @TempDir
+    Path dir;
+
+    // only the columns asked for are decoded, none asked for means all of them
+    @Test
+    void searchReturnsTheProjectedColumns() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config());
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id));
+            }
+            Row name = table.search(123, "name");
+            assertEquals(Set.of("name"), name.getData().keySet());
+            assertEquals("user123", name.get("name"));
+            assertEquals(123, name.getId());
+
+            Row all = table.search(123);
+            assertEquals(Set.of("id", "name"), all.getData().keySet());
+            assertEquals(123, all.get("id"));
+        } finally {
+            table.close();
+        }
+    }
+
+    // the view reads the record where it lies, it is reused from row to row
+    @Test
+    void scanReadsTheRecordsThroughOneView() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config());
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id));
+            }
+            int[] next = {0};
+            Set<Integer> views = new HashSet<>();
+            table.scan(view -> {
+                views.add(System.identityHashCode(view));
+                int name = view.indexOf("name");
+                assertEquals(next[0], view.getId());
+                assertEquals(next[0], view.getInt(view.indexOf("id")));
+                assertEquals("user" + next[0], view.getString(name));
+                assertEquals("user" + next[0], view.get("name"));
+                next[0]++;
+            });
+            assertEquals(ROWS, next[0]);
+            assertEquals(1, views.size());
+
+            List<Row> rows = new ArrayList<>();
+            table.scanRows(rows::add, "id");
+            assertEquals(ROWS, rows.size());
+            assertEquals(Set.of("id"), rows.get(ROWS - 1).getData().keySet());
+            assertEquals(ROWS - 1, rows.get(ROWS - 1).get("id"));
+        } finally {
+            table.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package storage;
+
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+
+class RangeScanTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int ROWS = 20000;
+
+    @TempDir
+    Path dir;
+
+    // both bounds are in the range, across as many leaves as it takes
+    @Test
+    void scanReturnsTheRangeInKeyOrder() throws Exception {
+        Table table = table();
+        try {
+            assertEquals(ids(1000, 9000), ids(table.scan(1000, 9000)));
+            assertEquals(List.of(ROWS - 1), ids(table.scan(ROWS - 1, ROWS + 100)));
+            assertFalse(table.scan(500, 400).hasNext());
+            // past the last key
+            assertEquals(List.of(), ids(table.scan(ROWS + 1, ROWS + 1)));
+        } finally {
+            table.close();
+        }
+    }
+
+    // a page of rows at a time, each one going on from the key after the last one returned
+    @Test
+    void limitPagesThroughTheRange() throws Exception {
+        Table table = table();
+        try {
+            List<Integer> all = new ArrayList<>();
+            int from = 0;
+            while (true) {
+                List<Integer> page = ids(table.scan(from, ROWS - 1, 700));
+                if (page.isEmpty()) {
+                    break;
+                }
+                assertEquals(Math.min(700, ROWS - from), page.size());
+                all.addAll(page);
+                from = page.get(page.size() - 1) + 1;
+            }
+            assertEquals(ids(0, ROWS - 1), all);
+        } finally {
+            table.close();
+        }
+    }
+
+    // rows inserted ahead of the cursor while it goes are returned, the ones behind it are not
+    @Test
+    void scanSeesInsertsAheadOfTheCursor() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config());
+        try {
+            for (int id = 0; id < ROWS; id += 2) {
+                table.insertRow(row(id));
+            }
+            List<Integer> seen = new ArrayList<>();
+            try (RangeScan scan = table.scan(0, ROWS)) {
+                while (scan.hasNext()) {
+                    int id = scan.next().getId();
+                    seen.add(id);
+                    if (id % 1000 == 0) {
+                        table.insertRow(row(id + 1));
+                        if (id > 0) {
+                            table.insertRow(row(id - 1));
+                        }
+                    }
+                }
+            }
+            List<Integer> expected = new ArrayList<>();
+            for (int id = 0; id < ROWS; id++) {
+                if (id % 2 == 0 || id % 1000 == 1) {
+                    expected.add(id);
+                }
+            }
+            assertEquals(expected, seen);
+            assertEquals(ROWS / 2 + 2 * (ROWS / 1000) - 1, table.count());
+        } finally {
+            table.close();
+        }
+    }
+
+    // the stream is the same scan, projected and closed with the stream
+    @Test
+    void streamReturnsTheProjectedRange() throws Exception {
+        Table table = table();
+        try (Stream<Row> rows = table.stream(10, 20, "name")) {
+            assertEquals(ids(10, 20).stream().map(id -> "user" + id).collect(Collectors.toList()),
+                    rows.map(row -> row.get("name")).collect(Collectors.toList()));
+        } finally {
+            table.close();
+        }
+    }
+
+    private Table table() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config());
+        for (int id = 0; id < ROWS; id++) {
+            table.insertRow(row(id));
+        }
+        return table;
+    }
+
+    private static List<Integer> ids(int from, int to) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static List<Integer> ids(RangeScan scan) {
+        List<Integer> ids = new ArrayList<>();
+        try (scan) {
+            scan.forEachRemaining(row -> ids.add(row.getId()));
+        }
+        return ids;
+    }
+}
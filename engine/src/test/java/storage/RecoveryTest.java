@@ -0,0 +1,94 @@
+package storage;
+
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.row;
+import static storage.Fixtures.updates;
+
+class RecoveryTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int ROWS = 4000;
+
+    @TempDir
+    Path dir;
+
+    // the files are copied while the table is open, as a crash would leave them
+    @Test
+    void committedChangesSurviveACrash() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config());
+        try {
+            for (int id = 0; id < ROWS / 2; id++) {
+                table.insertRow(row(id));
+            }
+            table.checkpoint();
+            // after the checkpoint, only in the log
+            for (int id = ROWS / 2; id < ROWS; id++) {
+                table.insertRow(row(id));
+            }
+            for (int id = 0; id < ROWS; id += 10) {
+                table.delete(id);
+            }
+            for (int id = 1; id < ROWS; id += 10) {
+                table.update(id, updates("name", "renamed" + id));
+            }
+            this.crash("t", "crashed");
+        } finally {
+            table.close();
+        }
+        // a record torn by the crash is dropped
+        Files.write(this.dir.resolve("crashed.wal"), new byte[]{1, 2, 3, 4, 5, 6, 7}, StandardOpenOption.APPEND);
+
+        Table recovered = new Table(this.dir.resolve("crashed").toString(), columns(), PAGE_SIZE, config());
+        try {
+            assertEquals(ROWS - ROWS / 10, recovered.count());
+            for (int id = 0; id < ROWS; id++) {
+                Row row = recovered.search(id);
+                if (id % 10 == 0) {
+                    assertNull(row, "row " + id);
+                } else if (id % 10 == 1) {
+                    assertEquals("renamed" + id, row.get("name"));
+                } else {
+                    assertEquals("user" + id, row.get("name"));
+                }
+            }
+            // the log was replayed into the pages and emptied, new changes follow
+            recovered.insertRow(row(ROWS));
+            assertEquals("user" + ROWS, recovered.search(ROWS).get("name"));
+        } finally {
+            recovered.close();
+        }
+    }
+
+    private void crash(String table, String copy) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listed = Files.list(this.dir)) {
+            files = listed.filter(path -> path.getFileName().toString().startsWith(table + ".")).toList();
+        }
+        for (Path file : files) {
+            String suffix = file.getFileName().toString().substring(table.length());
+            Files.copy(file, this.dir.resolve(copy + suffix));
+        }
+    }
+
+    // no checkpoint but the one the test asks for
+    private static TableConfig config() {
+        TableConfig config = Fixtures.config(true);
+        config.setCacheSize(16L * 1024 * 1024);
+        config.setCheckpointIntervalMillis(3_600_000);
+        config.setCheckpointDirtyPages(2048);
+        config.setMaxDirtyPages(2048);
+        return config;
+    }
+}
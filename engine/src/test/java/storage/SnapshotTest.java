@@ -0,0 +1,126 @@
+package storage;
+
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+
+class SnapshotTest {
+    private static final int PAGE_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void imagesPastTheBudgetGoToTheSpillFile() throws Exception {
+        TableConfig config = config();
+        config.setSnapshotMemory(16L * PAGE_SIZE);
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config);
+        try {
+            for (int id = 0; id < 2000; id++) {
+                table.insertRow(row(id, "a"));
+            }
+            Snapshot old = table.snapshot();
+            Snapshot recent = null;
+            for (int id = 0; id < 2000; id++) {
+                table.update(id, new HashMap<>(Map.of("name", "b")));
+                if (id == 1000) {
+                    recent = table.snapshot();
+                }
+            }
+            TableStats stats = table.getStats();
+            assertTrue(stats.getSnapshotSpilledBytes() > 0);
+            assertTrue(stats.getSnapshotImageBytes() <= config.getSnapshotMemory());
+            // both still read the rows as they were, from memory or from the file
+            assertEquals("a", old.search(1).get("name"));
+            assertEquals("a", old.search(1999).get("name"));
+            assertEquals("b", recent.search(1000).get("name"));
+            assertEquals("a", recent.search(1001).get("name"));
+            try (Stream<Row> rows = old.stream()) {
+                assertTrue(rows.allMatch(row -> row.get("name").equals("a")));
+            }
+            old.close();
+            recent.close();
+            assertEquals(0, stats.getOpenSnapshots());
+            assertEquals(0, stats.getSnapshotImageBytes());
+            assertEquals(0, stats.getSnapshotSpilledBytes());
+        } finally {
+            table.close();
+        }
+    }
+
+    // a single writer inserts in key order, a snapshot that sees any change half done misses a row
+    @Test
+    void snapshotsTakenWhileWritersRunSeeWholeChanges() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config());
+        try {
+            AtomicReference<Throwable> failed = new AtomicReference<>();
+            Thread writer = new Thread(() -> {
+                try {
+                    for (int id = 0; id < 20000; id++) {
+                        table.insertRow(row(id, "name" + id));
+                        if (id % 3 == 0) {
+                            table.update(id, new HashMap<>(Map.of("name", "updated" + id)));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failed.set(e);
+                }
+            });
+            writer.start();
+            while (writer.isAlive()) {
+                try (Snapshot snapshot = table.snapshot()) {
+                    List<Row> rows;
+                    try (Stream<Row> stream = snapshot.stream()) {
+                        rows = stream.toList();
+                    }
+                    for (int i = 0; i < rows.size(); i++) {
+                        assertEquals(i, rows.get(i).get("id"));
+                    }
+                    assertEquals(rows.size(), snapshot.count());
+                }
+            }
+            writer.join();
+            if (failed.get() != null) {
+                throw new AssertionError("writer failed", failed.get());
+            }
+            assertEquals(0, table.getStats().getSnapshotImages());
+        } finally {
+            table.close();
+        }
+    }
+
+    @Test
+    void snapshotWithinTheBudgetKeepsItsRows() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config());
+        try {
+            for (int id = 0; id < 2000; id++) {
+                table.insertRow(row(id, "a"));
+            }
+            try (Snapshot snapshot = table.snapshot()) {
+                for (int id = 0; id < 2000; id++) {
+                    table.update(id, new HashMap<>(Map.of("name", "b")));
+                }
+                assertTrue(table.getStats().getSnapshotImageBytes() > 0);
+                assertEquals("a", snapshot.search(1999).get("name"));
+                assertEquals(2000, snapshot.count());
+            }
+            assertEquals(0, table.getStats().getSnapshotSpilledBytes());
+            assertEquals(0, table.getStats().getSnapshotImageBytes());
+        } finally {
+            table.close();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.columns;
+import static storage.Fixtures.config;
+import static storage.Fixtures.row;
+
+class WarmUpTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int ROWS = 20000;
+
+    @TempDir
+    Path dir;
+
+    // the pages cached when the table was closed are read again on open, before the first search
+    @Test
+    void hotPagesAreLoadedOnOpen() throws Exception {
+        String name = this.dir.resolve("t").toString();
+        Table table = new Table(name, columns(), PAGE_SIZE, config(WarmUpMode.BLOCKING));
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id));
+            }
+            for (int id = 0; id < ROWS; id += 7) {
+                table.search(id);
+            }
+        } finally {
+            table.close();
+        }
+        assertTrue(Files.exists(Path.of(name + ".hot")));
+
+        Table reopened = new Table(name, columns(), PAGE_SIZE, config(WarmUpMode.BACKGROUND));
+        try {
+            reopened.awaitWarmUp();
+            TableStats stats = reopened.getStats();
+            assertNull(stats.getWarmUpFailure());
+            assertTrue(stats.getWarmUpPages() > 10, "pages " + stats.getWarmUpPages());
+            assertTrue(stats.getCachedPages() >= stats.getWarmUpPages());
+            long reads = stats.getPageReads();
+            for (int id = 0; id < ROWS; id += 7) {
+                assertEquals("user" + id, reopened.search(id).get("name"));
+            }
+            // the searches find their pages cached, a cold cache would read every leaf now
+            assertTrue(stats.getPageReads() - reads < stats.getWarmUpPages() / 10, "read " + (stats.getPageReads() - reads));
+        } finally {
+            reopened.close();
+        }
+    }
+
+    // a file cut short after the metadata page fails the warm-up, the failure is kept instead of printed
+    @Test
+    void failedWarmUpIsKeptInTheStats() throws Exception {
+        String name = this.dir.resolve("t").toString();
+        Table table = new Table(name, columns(), PAGE_SIZE, config(WarmUpMode.OFF));
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id));
+            }
+        } finally {
+            table.close();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(name + ".bin", "rw")) {
+            file.setLength(PAGE_SIZE);
+        }
+        Table reopened = new Table(name, columns(), PAGE_SIZE, config(WarmUpMode.BLOCKING));
+        try {
+            assertNotNull(reopened.getStats().getWarmUpFailure());
+            assertNotNull(reopened.getStats().getWarmUpError());
+        } finally {
+            // nothing to write back, the pages were never read
+            reopened.close();
+        }
+    }
+
+    private static TableConfig config(WarmUpMode mode) {
+        TableConfig config = Fixtures.config();
+        config.setWarmUpMode(mode);
+        config.setCacheSize(4L * 1024 * 1024);
+        return config;
+    }
+}
@@ -0,0 +1,115 @@
+package storage;
+
+import models.Column;
+import models.Filter;
+import models.Row;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static storage.Fixtures.updates;
+
+class ZoneMapTest {
+    private static final int PAGE_SIZE = 4096;
+    private static final int ROWS = 20000;
+
+    @TempDir
+    Path dir;
+
+    // a score following the key lets the scan jump over every leaf outside the range
+    @Test
+    void filteredScanSkipsLeavesOutsideTheRange() throws Exception {
+        String name = this.dir.resolve("t").toString();
+        Table table = new Table(name, columns(), PAGE_SIZE, config(true));
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id));
+            }
+            assertEquals(ids(15000, 15100), scores(table, Filter.between("score", 150000L, 151000L)));
+            long skipped = table.getStats().getSkippedLeaves();
+            assertTrue(skipped > 10, "skipped " + skipped);
+        } finally {
+            table.close();
+        }
+        // the summaries are read back on open
+        Table reopened = new Table(name, columns(), PAGE_SIZE, config(true));
+        try {
+            assertEquals(ids(19990, ROWS - 1), scores(reopened, Filter.gt("score", 199895L)));
+            assertTrue(reopened.getStats().getSkippedLeaves() > 10);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    // a changed leaf is summarized again, the scan doesn't skip a row moved into the range
+    @Test
+    void changedRowsAreNotSkipped() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config(true));
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id));
+            }
+            table.update(5, updates("score", 10_000_000L));
+            table.delete(ROWS - 1);
+            assertEquals(List.of(5), scores(table, Filter.gt("score", 9_999_999L)));
+            assertEquals(ids(ROWS - 5, ROWS - 2), scores(table, Filter.between("score", (ROWS - 5) * 10L, ROWS * 10L)));
+        } finally {
+            table.close();
+        }
+    }
+
+    // without zone maps every leaf is read
+    @Test
+    void nothingIsSkippedWithoutZoneMaps() throws Exception {
+        Table table = new Table(this.dir.resolve("t").toString(), columns(), PAGE_SIZE, config(false));
+        try {
+            for (int id = 0; id < ROWS; id++) {
+                table.insertRow(row(id));
+            }
+            assertEquals(ids(15000, 15100), scores(table, Filter.between("score", 150000L, 151000L)));
+            assertEquals(0, table.getStats().getSkippedLeaves());
+        } finally {
+            table.close();
+        }
+    }
+
+    private static List<Integer> scores(Table table, Filter filter) throws Exception {
+        try (Stream<Row> rows = table.stream(List.of(filter), "id")) {
+            return rows.map(Row::getId).collect(Collectors.toList());
+        }
+    }
+
+    private static List<Integer> ids(int from, int to) {
+        List<Integer> ids = new ArrayList<>();
+        for (int id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static List<Column<?>> columns() {
+        List<Column<?>> columns = Fixtures.columns();
+        columns.add(new Column<Long>("score", Long.class));
+        return columns;
+    }
+
+    // scores go up with the id, ten apart
+    private static Row row(int id) {
+        Row row = Fixtures.row(id);
+        row.put("score", id * 10L);
+        return row;
+    }
+
+    private static TableConfig config(boolean zoneMaps) {
+        TableConfig config = Fixtures.config();
+        config.setZoneMapsEnabled(zoneMaps);
+        return config;
+    }
+}
@@ -1,5 +1,6 @@
 import models.Column;
 import models.Row;
+import storage.Database;
 import storage.Table;
 import java.io.BufferedReader;
 import java.io.FileReader;
@@ -14,35 +15,37 @@ public class Main {
 
     public static void insertMockData(Table table) {
         try (BufferedReader br = new BufferedReader(new FileReader("./mockData.csv"))) {
-            String line;
             // skip first line
             br.readLine();
-            while ((line = br.readLine()) != null) {
-                // Split the line by commas (you can adjust this if your CSV uses a different delimiter)
-                String[] fields = line.split(",");
-
-                // Assuming CSV has columns in this order: id, name, active, email, created_at
-                int id = Integer.parseInt(fields[0]);
-                String name = fields[1];
-                String email = fields[2];
-                boolean active = Boolean.parseBoolean(fields[3]);
-                ZonedDateTime createdAt = ZonedDateTime.now(ZoneId.of("UTC"));
-
-                // Create a new Row object and populate it with data
-                Row row = new Row(id);
-                row.put("id", id);
-                row.put("name", name);
-                row.put("active", active);
-                row.put("email", email);
-                row.put("created_at", createdAt);
-
-                table.insert(row);
-//                table.printTree();
-            }
+            // mock data is sorted by id, so the tree can be built bottom up
+            long count = table.bulkLoad(br.lines().map(Main::parseRow).iterator());
+            System.out.println("Loaded rows: " + count);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
+
+    private static Row parseRow(String line) {
+        // Split the line by commas (you can adjust this if your CSV uses a different delimiter)
+        String[] fields = line.split(",");
+
+        // Assuming CSV has columns in this order: id, name, active, email, created_at
+        int id = Integer.parseInt(fields[0]);
+        String name = fields[1];
+        String email = fields[2];
+        boolean active = Boolean.parseBoolean(fields[3]);
+        ZonedDateTime createdAt = ZonedDateTime.now(ZoneId.of("UTC"));
+
+        // Create a new Row object and populate it with data
+        Row row = new Row(id);
+        row.put("id", id);
+        row.put("name", name);
+        row.put("active", active);
+        row.put("email", email);
+        row.put("created_at", createdAt);
+        return row;
+    }
+
     public static void main(String[] args) throws Exception {
         List<Column<?>> columns = new ArrayList<>();
         columns.add(new Column<Integer>("id", Integer.class));
@@ -51,10 +54,15 @@ public class Main {
         columns.add(new Column<Boolean>("active", Boolean.class));
         columns.add(new Column<ZonedDateTime>("created_at", ZonedDateTime.class));
 
-        Table table = new Table("users", columns, 4 * 1024);
-        insertMockData(table);
-//        table.print();
-        table.printTree();
+        try (Database db = new Database("main", 4 * 1024 * 1024)) {
+            // the schema is kept in the catalog, later runs open the table by name
+            if (!db.hasTable("users")) {
+                insertMockData(db.createTable("users", columns, 4 * 1024));
+            }
+            Table table = db.getTable("users");
+//            table.print();
+            table.printTree();
+        }
 //        int id = 999;
 //        Row r = table.search(id);
 //        if (r == null) {
@@ -4,18 +4,35 @@ import models.Column;
 import models.Row;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 
 public interface Node {
     public boolean hasSpace();
     public int getNodeNo();
     public void setNodeNo(int n);
-    public int getParent();
-    public void setParent(int parent);
-    public List<Integer> getKeys();
-    public void setKeys(List<Integer> keys);
+    // height above the leaves, 0 for a leaf
+    public int getLevel();
+    public void setLevel(int level);
+    // right sibling on the same level, -1 for the right most node
+    public int getNext();
+    public void setNext(int next);
+    // keys of the node are below the high key, only meaningful when there is a right sibling
+    public byte[] getHighKey();
+    // the array is kept as is, it must not be changed afterwards
+    public void setHighKey(byte[] highKey);
+    public int getKeyCount();
+    // keys are encoded by the table's KeyCodec, this returns a copy
+    public byte[] getKey(int index);
+    // compares the key at index with the given one as unsigned bytes
+    public int compareKey(int index, byte[] key);
+    // same contract as Arrays.binarySearch over the node keys
+    public int findKey(byte[] key);
     public boolean isLeafNode();
     public void setIsLeafNode(boolean value);
     public byte[] pack(List<Column<?>> columns) throws IOException;
-    public void unpack(List<Column<?>> columns, byte[] data);
+    public void unpack(List<Column<?>> columns, ByteBuffer buffer);
+    // latch of the cached page, write locking it changes the version optimistic readers validate
+    public StampedLock getLatch();
 }
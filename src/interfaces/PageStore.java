@@ -0,0 +1,14 @@
+package interfaces;
+
+import java.nio.ByteBuffer;
+
+public interface PageStore {
+    public int getPageSize();
+    // returns a buffer positioned at the start of the page, limited to the page size
+    public ByteBuffer read(int pageNo) throws Exception;
+    public void write(int pageNo, byte[] data) throws Exception;
+    // pages that follow each other on disk, starting at firstPageNo
+    public void write(int firstPageNo, byte[][] pages) throws Exception;
+    public void sync() throws Exception;
+    public void close() throws Exception;
+}
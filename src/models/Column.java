@@ -1,4 +1,8 @@
 package models;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 
 public class Column<T> {
@@ -30,6 +34,11 @@ public class Column<T> {
         return size;
     }
 
+    // strings are stored with their actual length in rows, size is only their maximum there
+    public boolean isVariableLength() {
+        return type == String.class;
+    }
+
     private static int getDefaultSize(Class<?> type) {
         if (type == Integer.class) {
             return 4;
@@ -54,6 +63,152 @@ public class Column<T> {
         }
     }
 
+    // decodes the value stored at offset without moving the buffer position
+    public Object read(ByteBuffer buffer, int offset) {
+        if (type == Integer.class) {
+            return buffer.getInt(offset);
+        } else if (type == Long.class) {
+            return buffer.getLong(offset);
+        } else if (type == Short.class) {
+            return buffer.getShort(offset);
+        } else if (type == Byte.class) {
+            return buffer.get(offset);
+        } else if (type == Double.class) {
+            return buffer.getDouble(offset);
+        } else if (type == Float.class) {
+            return buffer.getFloat(offset);
+        } else if (type == String.class) {
+            return readString(buffer, offset, size);
+        } else if (type == Boolean.class) {
+            return buffer.get(offset) != 0;
+        } else if (type == ZonedDateTime.class) {
+            long timestamp = buffer.getLong(offset);
+            return ZonedDateTime.ofInstant(Instant.ofEpochSecond(timestamp), ZoneId.of("UTC"));
+        } else {
+            throw new IllegalArgumentException("Unsupported data type: " + type);
+        }
+    }
+
+    // writes the value at the buffer position, padded with zeros to the column size
+    public void write(ByteBuffer buffer, Object value) {
+        int start = buffer.position();
+        switch (value) {
+            case Integer i -> buffer.putInt(i);
+            case Long l -> buffer.putLong(l);
+            case Short i -> buffer.putShort(i);
+            case Byte b -> buffer.put(b);
+            case Double v -> buffer.putDouble(v);
+            case Float v -> buffer.putFloat(v);
+            case String s -> {
+                byte[] stringBytes = s.getBytes(StandardCharsets.UTF_8);
+                // Truncate or fit exactly
+                buffer.put(stringBytes, 0, Math.min(stringBytes.length, size));
+            }
+            case Boolean b -> buffer.put((byte) (b ? 1 : 0));
+            case ZonedDateTime zonedDateTime -> {
+                long timestamp = zonedDateTime.toEpochSecond();
+                buffer.putLong(timestamp);
+            }
+            case null, default ->
+                    throw new IllegalArgumentException("Unsupported number type or size: " + (value == null ? null : value.getClass()) + " with size " + size);
+        }
+
+        // Adjust the buffer size if necessary
+        while (buffer.position() < start + size) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    /*
+        writes the value as a key: the unsigned byte order of the encoding is the order of
+        the values. Numbers are big endian with the sign bit flipped, negative floating point
+        numbers have all their bits flipped, strings are zero padded to the column size
+     */
+    public void writeKey(ByteBuffer buffer, Object value) {
+        int start = buffer.position();
+        switch (value) {
+            case Integer i -> buffer.putInt(i ^ Integer.MIN_VALUE);
+            case Long l -> buffer.putLong(l ^ Long.MIN_VALUE);
+            case Short i -> buffer.putShort((short) (i ^ Short.MIN_VALUE));
+            case Byte b -> buffer.put((byte) (b ^ Byte.MIN_VALUE));
+            case Double v -> {
+                long bits = Double.doubleToLongBits(v);
+                buffer.putLong(bits ^ ((bits >> 63) | Long.MIN_VALUE));
+            }
+            case Float v -> {
+                int bits = Float.floatToIntBits(v);
+                buffer.putInt(bits ^ ((bits >> 31) | Integer.MIN_VALUE));
+            }
+            case String s -> {
+                byte[] stringBytes = s.getBytes(StandardCharsets.UTF_8);
+                buffer.put(stringBytes, 0, Math.min(stringBytes.length, size));
+            }
+            case Boolean b -> buffer.put((byte) (b ? 1 : 0));
+            case ZonedDateTime zonedDateTime -> buffer.putLong(zonedDateTime.toEpochSecond() ^ Long.MIN_VALUE);
+            case null, default ->
+                    throw new IllegalArgumentException("Unsupported key type: " + (value == null ? null : value.getClass()));
+        }
+
+        while (buffer.position() < start + size) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    // decodes a value written by writeKey
+    public Object readKey(ByteBuffer buffer, int offset) {
+        if (type == Integer.class) {
+            return buffer.getInt(offset) ^ Integer.MIN_VALUE;
+        } else if (type == Long.class) {
+            return buffer.getLong(offset) ^ Long.MIN_VALUE;
+        } else if (type == Short.class) {
+            return (short) (buffer.getShort(offset) ^ Short.MIN_VALUE);
+        } else if (type == Byte.class) {
+            return (byte) (buffer.get(offset) ^ Byte.MIN_VALUE);
+        } else if (type == Double.class) {
+            long bits = buffer.getLong(offset);
+            return Double.longBitsToDouble(bits < 0 ? bits ^ Long.MIN_VALUE : ~bits);
+        } else if (type == Float.class) {
+            int bits = buffer.getInt(offset);
+            return Float.intBitsToFloat(bits < 0 ? bits ^ Integer.MIN_VALUE : ~bits);
+        } else if (type == ZonedDateTime.class) {
+            long timestamp = buffer.getLong(offset) ^ Long.MIN_VALUE;
+            return ZonedDateTime.ofInstant(Instant.ofEpochSecond(timestamp), ZoneId.of("UTC"));
+        } else if (type == String.class) {
+            return readKeyString(buffer, offset, size);
+        }
+        // booleans are stored the same way as in rows
+        return read(buffer, offset);
+    }
+
+    // only the zero padding is cut, key strings hold no zero bytes of their own, see KeyCodec
+    private static String readKeyString(ByteBuffer buffer, int offset, int size) {
+        int end = offset + size;
+        while (end > offset && buffer.get(end - 1) == 0) {
+            end--;
+        }
+        byte[] data = new byte[end - offset];
+        buffer.get(offset, data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    // strings are zero padded to the column size, only the trimmed bytes are decoded
+    private static String readString(ByteBuffer buffer, int offset, int size) {
+        int start = offset;
+        int end = offset + size;
+        while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+        }
+        byte[] data = new byte[end - start];
+        buffer.get(start, data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
     public void validate(Object value) throws Exception {
         String colName = this.getName();
         if (!this.type.isInstance(value)) {
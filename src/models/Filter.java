@@ -0,0 +1,150 @@
+package models;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/*
+    Condition on one column of a row, checked against the record where it lies (see RowView)
+    before anything is decoded. Numbers, booleans and dates are compared as the primitives they
+    are stored as, dates to the second as that's all that is stored. Strings are compared as
+    their UTF-8 bytes, which orders them like String.compareTo but for characters outside the
+    basic plane. Bounds of between are both included.
+ */
+public class Filter {
+    public enum Op {
+        EQ, LT, GT, BETWEEN, PREFIX
+    }
+
+    private final String column;
+    private final Op op;
+    private final Object value;
+    // upper bound of between, null otherwise
+    private final Object to;
+
+    private Filter(String column, Op op, Object value, Object to) {
+        if (value == null || (op == Op.BETWEEN && to == null)) {
+            throw new IllegalArgumentException("Filter on " + column + " needs a value.");
+        }
+        this.column = column;
+        this.op = op;
+        this.value = value;
+        this.to = to;
+    }
+
+    public static Filter eq(String column, Object value) {
+        return new Filter(column, Op.EQ, value, null);
+    }
+
+    public static Filter lt(String column, Object value) {
+        return new Filter(column, Op.LT, value, null);
+    }
+
+    public static Filter gt(String column, Object value) {
+        return new Filter(column, Op.GT, value, null);
+    }
+
+    public static Filter between(String column, Object from, Object to) {
+        return new Filter(column, Op.BETWEEN, from, to);
+    }
+
+    public static Filter prefix(String column, String prefix) {
+        return new Filter(column, Op.PREFIX, prefix, null);
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public Object getTo() {
+        return to;
+    }
+
+    // all filters have to hold, a row view wrapped around a record of the columns is tested
+    public static Predicate<RowView> bind(List<Filter> filters, List<Column<?>> columns) {
+        Predicate<RowView> all = view -> true;
+        for (Filter filter : filters) {
+            all = all.and(filter.bind(columns));
+        }
+        return all;
+    }
+
+    public Predicate<RowView> bind(List<Column<?>> columns) {
+        int index = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equals(this.column)) {
+                index = i;
+            }
+        }
+        if (index == -1) {
+            throw new IllegalArgumentException("Unknown column: " + this.column);
+        }
+        Column<?> col = columns.get(index);
+        int idx = index;
+        if (this.op == Op.PREFIX) {
+            if (col.getType() != String.class) {
+                throw new IllegalArgumentException("Prefix filter on column " + this.column + " which is not a string.");
+            }
+            byte[] prefix = ((String) this.value).getBytes(StandardCharsets.UTF_8);
+            return view -> view.startsWith(idx, prefix);
+        }
+        ToIntFunction<RowView> compare = comparator(col, idx, this.value);
+        return switch (this.op) {
+            case EQ -> view -> compare.applyAsInt(view) == 0;
+            case LT -> view -> compare.applyAsInt(view) < 0;
+            case GT -> view -> compare.applyAsInt(view) > 0;
+            case BETWEEN -> {
+                ToIntFunction<RowView> compareTo = comparator(col, idx, this.to);
+                yield view -> compare.applyAsInt(view) >= 0 && compareTo.applyAsInt(view) <= 0;
+            }
+            default -> throw new IllegalStateException("unexpected op " + this.op);
+        };
+    }
+
+    // sign of the stored value compared with the given one
+    @SuppressWarnings("unchecked")
+    private static ToIntFunction<RowView> comparator(Column<?> col, int idx, Object value) {
+        if (!col.getType().isInstance(value)) {
+            throw new IllegalArgumentException("Invalid type for column " + col.getName() + ": expected "
+                    + col.getType().getSimpleName() + ", got " + value.getClass().getSimpleName());
+        }
+        if (col.getType() == Integer.class) {
+            int v = (Integer) value;
+            return view -> Integer.compare(view.getInt(idx), v);
+        } else if (col.getType() == Long.class) {
+            long v = (Long) value;
+            return view -> Long.compare(view.getLong(idx), v);
+        } else if (col.getType() == ZonedDateTime.class) {
+            long v = ((ZonedDateTime) value).toEpochSecond();
+            return view -> Long.compare(view.getLong(idx), v);
+        } else if (col.getType() == Double.class) {
+            double v = (Double) value;
+            return view -> Double.compare(view.getDouble(idx), v);
+        } else if (col.getType() == Boolean.class) {
+            boolean v = (Boolean) value;
+            return view -> Boolean.compare(view.getBoolean(idx), v);
+        } else if (col.getType() == String.class) {
+            byte[] v = ((String) value).getBytes(StandardCharsets.UTF_8);
+            return view -> view.compareString(idx, v);
+        }
+        // the remaining types are rare enough to be decoded
+        Comparable<Object> v = (Comparable<Object>) value;
+        return view -> -Integer.signum(v.compareTo(view.get(idx)));
+    }
+
+    @Override
+    public String toString() {
+        return this.op == Op.BETWEEN ? String.format("%s BETWEEN %s AND %s", this.column, this.value, this.to)
+                : String.format("%s %s %s", this.column, this.op, this.value);
+    }
+}
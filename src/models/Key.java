@@ -0,0 +1,76 @@
+package models;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/*
+    Key of a row in its encoded form, see KeyCodec. Keys compare as unsigned bytes,
+    which orders them like the values of the key columns. Get one from Table.key.
+ */
+public final class Key implements Comparable<Key> {
+    private final byte[] bytes;
+    // decoded values, null for keys made up from bytes alone
+    private final Object[] values;
+
+    Key(byte[] bytes, Object[] values) {
+        this.bytes = bytes;
+        this.values = values;
+    }
+
+    // the encoded key, it is not copied and must not be changed
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public Object[] getValues() {
+        return values == null ? null : values.clone();
+    }
+
+    // smallest key above this one, null for the largest possible key
+    public Key successor() {
+        byte[] next = successor(bytes);
+        return next == null ? null : new Key(next, null);
+    }
+
+    // fixed width keys: add one to the bytes as an unsigned big endian number
+    public static byte[] successor(byte[] key) {
+        byte[] next = key.clone();
+        for (int i = next.length - 1; i >= 0; i--) {
+            if (++next[i] != 0) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int compareTo(Key other) {
+        return Arrays.compareUnsigned(bytes, other.bytes);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Key key && Arrays.equals(bytes, key.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public String toString() {
+        if (values == null) {
+            return HexFormat.of().formatHex(bytes);
+        }
+        if (values.length == 1) {
+            return String.valueOf(values[0]);
+        }
+        StringBuilder sb = new StringBuilder("(");
+        for (Object value : values) {
+            sb.append(value).append(", ");
+        }
+        sb.setLength(sb.length() - 2);
+        return sb.append(")").toString();
+    }
+}
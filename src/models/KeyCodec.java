@@ -0,0 +1,164 @@
+package models;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Turns the key columns of a table into fixed width byte strings. Each column is
+    encoded with Column.writeKey and the encodings are concatenated, so a composite key
+    is ordered by its first column, then by the second and so on. Nodes only ever
+    compare the bytes.
+    Nodes hold keys of one width, so strings are zero padded to the size of their column
+    rather than given a terminator. A string with a zero byte of its own could not be told
+    from a shorter one, such keys are rejected, as are strings longer than the column.
+ */
+public class KeyCodec {
+    private final List<Column<?>> columns;
+    private final int size;
+
+    public KeyCodec(List<Column<?>> columns) {
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("Key needs at least one column.");
+        }
+        this.columns = columns;
+        int size = 0;
+        for (Column<?> col : columns) {
+            size += col.getSize();
+        }
+        this.size = size;
+    }
+
+    // key made of the named columns of the table, in the given order
+    public static KeyCodec of(List<Column<?>> tableColumns, String... names) {
+        List<Column<?>> keyColumns = new ArrayList<>();
+        for (String name : names) {
+            Column<?> column = tableColumns.stream()
+                    .filter(c -> c.getName().equals(name))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown key column: " + name));
+            keyColumns.add(column);
+        }
+        return new KeyCodec(keyColumns);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public List<Column<?>> getColumns() {
+        return columns;
+    }
+
+    public Key key(Object... values) throws Exception {
+        if (values.length != columns.size()) {
+            throw new IllegalArgumentException(String.format("key has %d columns, got %d values", columns.size(), values.length));
+        }
+        values = this.checked(values);
+        return new Key(encode(values), values);
+    }
+
+    // smallest key whose first columns hold the given values
+    public Key first(Object... values) throws Exception {
+        return this.prefixed(values, (byte) 0);
+    }
+
+    // largest key whose first columns hold the given values
+    public Key last(Object... values) throws Exception {
+        return this.prefixed(values, (byte) 0xff);
+    }
+
+    private Key prefixed(Object[] values, byte fill) throws Exception {
+        if (values.length > columns.size()) {
+            throw new IllegalArgumentException(String.format("key has %d columns, got %d values", columns.size(), values.length));
+        }
+        byte[] bytes = encode(this.checked(values));
+        int length = 0;
+        for (int i = 0; i < values.length; i++) {
+            length += columns.get(i).getSize();
+        }
+        Arrays.fill(bytes, length, size, fill);
+        return new Key(bytes, null);
+    }
+
+    private Object[] checked(Object[] values) throws Exception {
+        values = values.clone();
+        for (int i = 0; i < values.length; i++) {
+            Column<?> col = columns.get(i);
+            if (col.getType() == Long.class && values[i] instanceof Integer v) {
+                values[i] = (long) v;
+            }
+            col.validate(values[i]);
+        }
+        return values;
+    }
+
+    // key of the row, taken from its values of the key columns
+    public Key keyOf(Row row) {
+        Object[] values = values(row);
+        return new Key(encode(values), values);
+    }
+
+    public byte[] encode(Row row) {
+        return encode(values(row));
+    }
+
+    public Key decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Object[] values = new Object[columns.size()];
+        int offset = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = columns.get(i).readKey(buffer, offset);
+            offset += columns.get(i).getSize();
+        }
+        return new Key(bytes, values);
+    }
+
+    // below and above every key
+    public byte[] min() {
+        return new byte[size];
+    }
+
+    public byte[] max() {
+        byte[] max = new byte[size];
+        Arrays.fill(max, (byte) 0xff);
+        return max;
+    }
+
+    private Object[] values(Row row) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            String name = columns.get(i).getName();
+            if (!row.containsKey(name)) {
+                throw new IllegalArgumentException(String.format("key column: %s is required", name));
+            }
+            values[i] = row.get(name);
+        }
+        return values;
+    }
+
+    // values of the first columns, the bytes of the others are left zero
+    private byte[] encode(Object[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (int i = 0; i < values.length; i++) {
+            Column<?> col = columns.get(i);
+            checkValue(col, values[i]);
+            col.writeKey(buffer, values[i]);
+        }
+        return buffer.array();
+    }
+
+    // a truncated string would make different keys equal, so would one with a zero byte of its own
+    public static void checkValue(Column<?> col, Object value) {
+        if (value instanceof String s) {
+            if (s.getBytes(StandardCharsets.UTF_8).length > col.getSize()) {
+                throw new IllegalArgumentException(String.format("key column: %s is greater than %d bytes", col.getName(), col.getSize()));
+            }
+            if (s.indexOf('\0') != -1) {
+                throw new IllegalArgumentException(String.format("key column: %s can't hold a zero character", col.getName()));
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package models;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/*
+    Turns rows into variable length records:
+
+        [fixed part][string bytes]...
+
+    The fixed part has every column at the offset RowView.offsets gives it: numbers, booleans
+    and dates in their binary form, strings as the 4 byte end offset of their bytes within the
+    record. A string starts where the string column before it ended, the first one right after
+    the fixed part, so strings take only as much space as they need.
+    A string too big to stay in the page goes to a chain of overflow pages: its bytes in the
+    record are then [length 4][first page 4] and its end offset has the OVERFLOW bit set.
+ */
+public class RowCodec {
+    public static final int OVERFLOW = Integer.MIN_VALUE;
+    // length and first page of a value kept in overflow pages
+    public static final int OVERFLOW_POINTER_SIZE = 8;
+
+    public interface OverflowWriter {
+        // stores the value in overflow pages and returns the first one
+        int write(byte[] value) throws Exception;
+    }
+
+    private final List<Column<?>> columns;
+    private final int[] offsets;
+
+    public RowCodec(List<Column<?>> columns) {
+        this.columns = columns;
+        this.offsets = RowView.offsets(columns);
+    }
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    // size of a record whose strings are all empty or in overflow pages
+    public int getFixedSize() {
+        return offsets[columns.size()];
+    }
+
+    // smallest record that can hold the row, every string moved to overflow pages
+    public int getMinSize() {
+        int size = getFixedSize();
+        for (Column<?> col : columns) {
+            if (col.isVariableLength()) {
+                size += OVERFLOW_POINTER_SIZE;
+            }
+        }
+        return size;
+    }
+
+    // every value stays in the record, used where the record doesn't go into a page
+    public byte[] encode(Row row) throws Exception {
+        return encode(row, Integer.MAX_VALUE, null);
+    }
+
+    // record of at most maxSize bytes, the largest strings go to overflow pages until the rest fits
+    public byte[] encode(Row row, int maxSize, OverflowWriter overflow) throws Exception {
+        byte[][] strings = new byte[columns.size()][];
+        int size = getFixedSize();
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).isVariableLength()) {
+                strings[i] = ((String) row.get(columns.get(i).getName())).getBytes(StandardCharsets.UTF_8);
+                size += strings[i].length;
+            }
+        }
+        boolean[] spilled = new boolean[columns.size()];
+        while (size > maxSize) {
+            int largest = -1;
+            for (int i = 0; i < strings.length; i++) {
+                if (strings[i] != null && !spilled[i] && strings[i].length > OVERFLOW_POINTER_SIZE
+                        && (largest == -1 || strings[i].length > strings[largest].length)) {
+                    largest = i;
+                }
+            }
+            if (largest == -1 || overflow == null) {
+                throw new IllegalArgumentException(String.format("row takes %d bytes, at most %d fit in a page", size, maxSize));
+            }
+            spilled[largest] = true;
+            size -= strings[largest].length - OVERFLOW_POINTER_SIZE;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        int end = getFixedSize();
+        for (int i = 0; i < columns.size(); i++) {
+            Column<?> col = columns.get(i);
+            if (!col.isVariableLength()) {
+                buffer.position(offsets[i]);
+                col.write(buffer, row.get(col.getName()));
+                continue;
+            }
+            int start = end;
+            if (spilled[i]) {
+                end += OVERFLOW_POINTER_SIZE;
+                buffer.putInt(offsets[i], end | OVERFLOW);
+                buffer.putInt(start, strings[i].length);
+                buffer.putInt(start + Integer.BYTES, overflow.write(strings[i]));
+            } else {
+                end += strings[i].length;
+                buffer.putInt(offsets[i], end);
+                buffer.put(start, strings[i]);
+            }
+        }
+        return buffer.array();
+    }
+}
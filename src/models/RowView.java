@@ -0,0 +1,215 @@
+package models;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Flyweight over a record, see RowCodec for its layout. Nothing is decoded up
+    front, each get reads a single column: fixed size columns at their offset
+    within the record, strings between the end offsets kept in the fixed part.
+    A view is only valid until it is wrapped around another record or the
+    page it points to is modified, use toRow to keep the data around.
+ */
+public class RowView {
+    public interface OverflowReader {
+        byte[] read(int page, int length) throws Exception;
+    }
+
+    private final List<Column<?>> columns;
+    private final int[] offsets;
+    // string column before each string column, -1 for the first one
+    private final int[] previousString;
+    // null when records never point to overflow pages, as in the log
+    private final OverflowReader overflow;
+    private ByteBuffer buffer;
+    private int base;
+    // integer id column backing getId, -1 when there is none
+    private final int idIndex;
+
+    public RowView(List<Column<?>> columns, int[] offsets, OverflowReader overflow) {
+        this.columns = columns;
+        this.offsets = offsets;
+        this.overflow = overflow;
+        this.previousString = new int[columns.size()];
+        int idIndex = -1;
+        int lastString = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equals("id") && columns.get(i).getType() == Integer.class) {
+                idIndex = i;
+            }
+            if (columns.get(i).isVariableLength()) {
+                this.previousString[i] = lastString;
+                lastString = i;
+            }
+        }
+        this.idIndex = idIndex;
+    }
+
+    public RowView(List<Column<?>> columns, int[] offsets) {
+        this(columns, offsets, null);
+    }
+
+    public RowView(List<Column<?>> columns) {
+        this(columns, offsets(columns));
+    }
+
+    // offset of every column within the fixed part of a record, the last entry is its size
+    public static int[] offsets(List<Column<?>> columns) {
+        int[] offsets = new int[columns.size() + 1];
+        for (int i = 0; i < columns.size(); i++) {
+            Column<?> col = columns.get(i);
+            // strings keep the end offset of their bytes here
+            offsets[i + 1] = offsets[i] + (col.isVariableLength() ? Integer.BYTES : col.getSize());
+        }
+        return offsets;
+    }
+
+    public RowView wrap(ByteBuffer buffer, int base) {
+        this.buffer = buffer;
+        this.base = base;
+        return this;
+    }
+
+    public int getId() {
+        if (idIndex == -1) {
+            throw new IllegalStateException("no integer id column");
+        }
+        return getInt(idIndex);
+    }
+
+    public int indexOf(String columnName) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equals(columnName)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column: " + columnName);
+    }
+
+    public Object get(String columnName) {
+        return get(indexOf(columnName));
+    }
+
+    public Object get(int columnIndex) {
+        Column<?> col = columns.get(columnIndex);
+        if (col.isVariableLength()) {
+            return getString(columnIndex);
+        }
+        return col.read(buffer, base + offsets[columnIndex]);
+    }
+
+    public String getString(int columnIndex) {
+        int end = buffer.getInt(base + offsets[columnIndex]);
+        int start = start(columnIndex);
+        if ((end & RowCodec.OVERFLOW) != 0) {
+            int length = buffer.getInt(base + start);
+            int page = buffer.getInt(base + start + Integer.BYTES);
+            if (overflow == null) {
+                throw new IllegalStateException("value in overflow page " + page + " can't be read here");
+            }
+            try {
+                return new String(overflow.read(page, length), StandardCharsets.UTF_8);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("failed to read overflow page " + page, e);
+            }
+        }
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + base + start, end - start, StandardCharsets.UTF_8);
+        }
+        byte[] data = new byte[end - start];
+        buffer.get(base + start, data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    // compares the UTF-8 bytes of a string column with the given ones as unsigned bytes, without decoding it
+    public int compareString(int columnIndex, byte[] value) {
+        int end = buffer.getInt(base + offsets[columnIndex]);
+        if ((end & RowCodec.OVERFLOW) != 0) {
+            return Arrays.compareUnsigned(getString(columnIndex).getBytes(StandardCharsets.UTF_8), value);
+        }
+        int start = start(columnIndex);
+        return compareBytes(base + start, end - start, value, value.length);
+    }
+
+    public boolean startsWith(int columnIndex, byte[] prefix) {
+        int end = buffer.getInt(base + offsets[columnIndex]);
+        if ((end & RowCodec.OVERFLOW) != 0) {
+            byte[] bytes = getString(columnIndex).getBytes(StandardCharsets.UTF_8);
+            return bytes.length >= prefix.length && Arrays.equals(bytes, 0, prefix.length, prefix, 0, prefix.length);
+        }
+        int start = start(columnIndex);
+        return end - start >= prefix.length && compareBytes(base + start, prefix.length, prefix, prefix.length) == 0;
+    }
+
+    private int compareBytes(int offset, int length, byte[] value, int valueLength) {
+        if (buffer.hasArray()) {
+            int from = buffer.arrayOffset() + offset;
+            return Arrays.compareUnsigned(buffer.array(), from, from + length, value, 0, valueLength);
+        }
+        for (int i = 0; i < Math.min(length, valueLength); i++) {
+            int cmp = Byte.compareUnsigned(buffer.get(offset + i), value[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - valueLength;
+    }
+
+    // first overflow page of a string column, -1 when the value is in the record itself
+    public int getOverflowPage(int columnIndex) {
+        if ((buffer.getInt(base + offsets[columnIndex]) & RowCodec.OVERFLOW) == 0) {
+            return -1;
+        }
+        return buffer.getInt(base + start(columnIndex) + Integer.BYTES);
+    }
+
+    // where the bytes of a string column start within the record
+    private int start(int columnIndex) {
+        int previous = previousString[columnIndex];
+        if (previous == -1) {
+            return offsets[columns.size()];
+        }
+        return buffer.getInt(base + offsets[previous]) & ~RowCodec.OVERFLOW;
+    }
+
+    public int getInt(int columnIndex) {
+        return buffer.getInt(base + offsets[columnIndex]);
+    }
+
+    public long getLong(int columnIndex) {
+        // ZonedDateTime columns are stored as epoch seconds
+        return buffer.getLong(base + offsets[columnIndex]);
+    }
+
+    public double getDouble(int columnIndex) {
+        return buffer.getDouble(base + offsets[columnIndex]);
+    }
+
+    public boolean getBoolean(int columnIndex) {
+        return buffer.get(base + offsets[columnIndex]) != 0;
+    }
+
+    public Row toRow() {
+        Row row = new Row(idIndex == -1 ? 0 : getInt(idIndex));
+        for (int i = 0; i < columns.size(); i++) {
+            row.put(columns.get(i).getName(), get(i));
+        }
+        return row;
+    }
+
+    // materializes only the given columns
+    public Row toRow(String... columnNames) {
+        if (columnNames.length == 0) {
+            return toRow();
+        }
+        Row row = new Row(idIndex == -1 ? 0 : getInt(idIndex));
+        for (String name : columnNames) {
+            row.put(name, get(indexOf(name)));
+        }
+        return row;
+    }
+}
@@ -0,0 +1,189 @@
+package storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+    Split block Bloom filter over encoded keys. A key picks one block of 8 words (one cache
+    line) and sets one bit in each of them, so a lookup reads a single block. Keys are never
+    removed, a deleted key only costs a false positive. Bits are set atomically and may be
+    read without any lock.
+    A full filter grows by a layer twice its size on top of it: new keys go to the top layer, a
+    lookup goes through all of them, so no key is added again. Every layer adds its own false
+    positives, the filter is rebuilt as one when the table is bulk loaded or opened without it.
+ */
+class BloomFilter {
+    private static final int WORDS_PER_BLOCK = 8;
+    private static final int MAGIC = 0x424c4d32;
+    // odd multipliers picking the bit of each word, as in the split block filters of Parquet
+    private static final int[] SALT = {
+            0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d,
+            0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31
+    };
+    private final AtomicLongArray words;
+    private final int blocks;
+    // keys the filter was sized for, past them the false positive rate climbs
+    private final long capacity;
+    private final AtomicLong count;
+    private final int bitsPerKey;
+    // the layer that filled up before this one, null for the first
+    private final BloomFilter below;
+
+    private BloomFilter(long capacity, int bitsPerKey, int blocks, long count, BloomFilter below) {
+        this.capacity = capacity;
+        this.bitsPerKey = bitsPerKey;
+        this.blocks = blocks;
+        this.words = new AtomicLongArray(blocks * WORDS_PER_BLOCK);
+        this.count = new AtomicLong(count);
+        this.below = below;
+    }
+
+    static BloomFilter create(long capacity, int bitsPerKey) {
+        return new BloomFilter(capacity, bitsPerKey, blocks(capacity, bitsPerKey), 0, null);
+    }
+
+    private static int blocks(long capacity, int bitsPerKey) {
+        long bits = Math.max(1, capacity) * bitsPerKey;
+        return (int) Math.min(Integer.MAX_VALUE / WORDS_PER_BLOCK, Math.max(1, (bits + 511) / 512));
+    }
+
+    // an empty layer on top of this one, sized for twice as many keys
+    BloomFilter grow() {
+        long capacity = 2 * this.capacity;
+        return new BloomFilter(capacity, this.bitsPerKey, blocks(capacity, this.bitsPerKey), 0, this);
+    }
+
+    void add(byte[] key) {
+        long hash = hash(key);
+        int base = this.block(hash) * WORDS_PER_BLOCK;
+        int low = (int) hash;
+        for (int i = 0; i < WORDS_PER_BLOCK; i++) {
+            long bit = 1L << ((low * SALT[i]) >>> 26);
+            if ((this.words.get(base + i) & bit) == 0) {
+                this.words.getAndAccumulate(base + i, bit, (a, b) -> a | b);
+            }
+        }
+        this.count.incrementAndGet();
+    }
+
+    // false only for keys that were never added
+    boolean mightContain(byte[] key) {
+        long hash = hash(key);
+        for (BloomFilter layer = this; layer != null; layer = layer.below) {
+            if (layer.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean mightContain(long hash) {
+        int base = this.block(hash) * WORDS_PER_BLOCK;
+        int low = (int) hash;
+        for (int i = 0; i < WORDS_PER_BLOCK; i++) {
+            long bit = 1L << ((low * SALT[i]) >>> 26);
+            if ((this.words.get(base + i) & bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    int getLayers() {
+        return this.below == null ? 1 : this.below.getLayers() + 1;
+    }
+
+    // the top layer holds more keys than it was sized for
+    boolean isFull() {
+        return this.count.get() > this.capacity;
+    }
+
+    // the upper half of the hash picks the block, the lower half the bits
+    private int block(long hash) {
+        return (int) (((hash >>> 32) * this.blocks) >>> 32);
+    }
+
+    // FNV-1a over the bytes, then the murmur3 finalizer to spread them over all 64 bits
+    private static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // the layers from the top down
+    void write(Path path) throws Exception {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(this.bitsPerKey);
+            out.writeInt(this.getLayers());
+            for (BloomFilter layer = this; layer != null; layer = layer.below) {
+                out.writeLong(layer.capacity);
+                out.writeLong(layer.count.get());
+                out.writeInt(layer.blocks);
+                for (int i = 0; i < layer.words.length(); i++) {
+                    out.writeLong(layer.words.get(i));
+                }
+            }
+        }
+    }
+
+    // null when the file is not a complete filter
+    static BloomFilter read(Path path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int bitsPerKey = in.readInt();
+            int layers = in.readInt();
+            long left = Files.size(path) - 12;
+            long[] capacities = new long[layers];
+            long[] counts = new long[layers];
+            long[][] words = new long[layers][];
+            for (int n = 0; n < layers; n++) {
+                capacities[n] = in.readLong();
+                counts[n] = in.readLong();
+                int blocks = in.readInt();
+                left -= 20 + (long) blocks * WORDS_PER_BLOCK * Long.BYTES;
+                if (blocks <= 0 || left < 0) {
+                    return null;
+                }
+                words[n] = new long[blocks * WORDS_PER_BLOCK];
+                for (int i = 0; i < words[n].length; i++) {
+                    words[n][i] = in.readLong();
+                }
+            }
+            if (layers <= 0 || left != 0) {
+                return null;
+            }
+            // built from the bottom up, each layer on the one it grew from
+            BloomFilter filter = null;
+            for (int n = layers - 1; n >= 0; n--) {
+                filter = new BloomFilter(capacities[n], bitsPerKey, words[n].length / WORDS_PER_BLOCK, counts[n], filter);
+                for (int i = 0; i < words[n].length; i++) {
+                    filter.words.set(i, words[n][i]);
+                }
+            }
+            return filter;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package storage;
+
+import interfaces.Node;
+
+import storage.PageCache.Frame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Fixed budget page cache in front of the table file.
+    Frames are evicted with the CLOCK algorithm: every access sets the reference bit,
+    the hand clears it on the first pass and evicts on the second.
+    Pinned frames are never evicted, dirty frames are written back before eviction, outside
+    the lock of the cache by the thread that needed the room. Pages flushed by a table are
+    written outside the lock as well, no table's I/O holds up the others sharing the cache.
+    The latch of a node is only taken while its page is pinned. Optimistic readers use
+    get, which neither pins nor locks: a node dropped from the pool has its latch write
+    locked for good, so a reader still holding it fails validation and starts over.
+    Misses are read outside the pool lock, threads asking for a page that is being
+    loaded wait for it instead of reading it a second time.
+    Pins belong to the node they were taken on: once a page is freed or reused, unpinning
+    the node it held before does nothing.
+    The frames are kept by a PageCache, a pool of its own or one shared with the pools of other
+    tables within a common budget. Either way the lock of the cache guards them, each pool
+    knows its own frames so it doesn't go through those of the other tables.
+ */
+public class BufferPool {
+    private static final int MIN_FRAMES = 8;
+
+    public interface NodeReader {
+        Node read(int no) throws Exception;
+    }
+
+    public interface NodeWriter {
+        void write(Node node) throws Exception;
+    }
+
+    private final PageCache cache;
+    private final int id;
+    private final int pageSize;
+    private final NodeReader reader;
+    private final NodeWriter writer;
+    // frames of this pool, kept up to date by the cache
+    private final Set<Frame> frames;
+    private int dirtyCount;
+    // dirty pages stay in memory until a checkpoint writes them (used with the write ahead log)
+    private boolean noSteal;
+    // counted without the cache lock by get
+    private final LongAdder hits;
+    private long misses;
+
+    public BufferPool(long memoryBudget, int pageSize, NodeReader reader, NodeWriter writer) {
+        this(new PageCache(Math.max(MIN_FRAMES, memoryBudget / pageSize) * pageSize), pageSize, reader, writer);
+    }
+
+    public BufferPool(PageCache cache, int pageSize, NodeReader reader, NodeWriter writer) {
+        this.cache = cache;
+        this.id = cache.register();
+        this.pageSize = pageSize;
+        this.reader = reader;
+        this.writer = writer;
+        this.hits = new LongAdder();
+        this.frames = new HashSet<>();
+    }
+
+    // returns the node pinned, caller has to unpin it once done
+    public Node fetch(int no) throws Exception {
+        Frame frame;
+        List<Frame> claimed;
+        synchronized (cache) {
+            while (true) {
+                frame = cache.get(id, no);
+                if (frame == null) {
+                    break;
+                }
+                frame.pinCount++;
+                frame.referenced = true;
+                while (frame.loading) {
+                    cache.wait();
+                }
+                if (frame.node != null) {
+                    hits.increment();
+                    frame.uses++;
+                    return frame.node;
+                }
+                // the read failed, try it again ourselves
+                frame.pinCount--;
+            }
+            misses++;
+            frame = new Frame(this, no, null);
+            frame.loading = true;
+            frame.pinCount++;
+            frame.uses++;
+            // read counts as a use, a page the hand sits next to isn't the next victim right away
+            frame.referenced = true;
+            claimed = cache.install(frame);
+        }
+        Node node = null;
+        try {
+            node = reader.read(no);
+        } finally {
+            synchronized (cache) {
+                frame.loading = false;
+                frame.node = node;
+                if (node == null) {
+                    cache.remove(frame);
+                }
+                cache.notifyAll();
+            }
+            cache.writeBack(claimed);
+        }
+        return node;
+    }
+
+    // pins the node if the page is cached, null when it isn't (or is still being read)
+    public Node fetchIfCached(int no) {
+        synchronized (cache) {
+            Frame frame = cache.get(id, no);
+            if (frame == null || frame.node == null) {
+                return null;
+            }
+            frame.pinCount++;
+            frame.referenced = true;
+            return frame.node;
+        }
+    }
+
+    /*
+        node for optimistic reading, it is not pinned and may be dropped from the pool at
+        any time. Read it between tryOptimisticRead and validate on its latch
+     */
+    public Node get(int no) throws Exception {
+        Frame frame = cache.get(id, no);
+        Node node = frame == null ? null : frame.node;
+        if (node != null) {
+            frame.referenced = true;
+            frame.uses++;
+            hits.increment();
+            return node;
+        }
+        node = fetch(no);
+        unpin(node);
+        return node;
+    }
+
+    // adds a newly allocated page, it is pinned and dirty as it is not on disk yet
+    public void add(Node node) throws Exception {
+        List<Frame> claimed = List.of();
+        synchronized (cache) {
+            Frame frame = cache.get(id, node.getNodeNo());
+            if (frame != null && frame.node != node) {
+                // stale copy of a reused page (or one still loading), read through an old pointer
+                drop(frame);
+                frame = cache.get(id, node.getNodeNo());
+            }
+            if (frame == null) {
+                frame = new Frame(this, node.getNodeNo(), node);
+                claimed = cache.install(frame);
+            }
+            frame.pinCount++;
+            frame.referenced = true;
+            setDirty(frame);
+        }
+        cache.writeBack(claimed);
+    }
+
+    public Node peek(int no) {
+        synchronized (cache) {
+            Frame frame = cache.get(id, no);
+            return frame == null ? null : frame.node;
+        }
+    }
+
+    public void unpin(Node node) {
+        synchronized (cache) {
+            Frame frame = cache.get(id, node.getNodeNo());
+            if (frame != null && frame.node == node && frame.pinCount > 0) {
+                frame.pinCount--;
+            }
+        }
+    }
+
+    public int getPinCount(int no) {
+        synchronized (cache) {
+            Frame frame = cache.get(id, no);
+            return frame == null ? 0 : frame.pinCount;
+        }
+    }
+
+    // drops a freed page without writing it back, the caller keeps its latch write locked for good
+    public void discard(Node node) throws InterruptedException {
+        synchronized (cache) {
+            Frame frame = cache.get(id, node.getNodeNo());
+            if (frame != null && frame.node == node) {
+                drop(frame);
+            }
+        }
+    }
+
+    public void markDirty(int no) {
+        synchronized (cache) {
+            Frame frame = cache.get(id, no);
+            if (frame == null) {
+                throw new IllegalStateException("page not in buffer pool: " + no);
+            }
+            setDirty(frame);
+        }
+    }
+
+    /*
+        writes the page back now. The caller keeps it from changing meanwhile, it holds the latch
+        exclusively or nothing else runs. Like eviction it is written without the lock of the
+        cache, pinned so it stays
+     */
+    public void flush(int no) throws Exception {
+        List<Frame> claimed = new ArrayList<>();
+        synchronized (cache) {
+            Frame frame = cache.get(id, no);
+            if (frame != null && frame.dirty && frame.node != null) {
+                frame.pinCount++;
+                claimed.add(frame);
+            }
+        }
+        writeBack(claimed);
+    }
+
+    // writes back every dirty page, nothing may change them meanwhile
+    public void flushAll() throws Exception {
+        List<Frame> claimed = new ArrayList<>();
+        synchronized (cache) {
+            awaitWrites();
+            for (Frame frame : frames) {
+                if (frame.dirty && frame.node != null) {
+                    frame.pinCount++;
+                    claimed.add(frame);
+                }
+            }
+        }
+        writeBack(claimed);
+    }
+
+    // drops every cached page without writing it back, used when pages are rewritten behind the pool
+    public void clear() throws InterruptedException {
+        synchronized (cache) {
+            awaitWrites();
+            for (Frame frame : frames) {
+                if (frame.pinCount > 0) {
+                    throw new IllegalStateException("page is pinned: " + frame.no);
+                }
+            }
+            for (Frame frame : new ArrayList<>(frames)) {
+                drop(frame);
+            }
+        }
+    }
+
+    // drops every page of a closed table, pinned or not. They have to be written back already
+    public void close() throws InterruptedException {
+        synchronized (cache) {
+            for (Frame frame : new ArrayList<>(frames)) {
+                drop(frame);
+            }
+        }
+    }
+
+    public void setNoSteal(boolean noSteal) {
+        synchronized (cache) {
+            this.noSteal = noSteal;
+        }
+    }
+
+    // dirty page numbers in ascending order
+    public List<Integer> getDirtyPages() {
+        List<Integer> pages = new ArrayList<>();
+        synchronized (cache) {
+            for (Frame frame : frames) {
+                if (frame.dirty) {
+                    pages.add(frame.no);
+                }
+            }
+        }
+        pages.sort(null);
+        return pages;
+    }
+
+    // cached pages, the most used first. Uses are halved each time, so older ones count for less
+    public List<Integer> getHotPages() {
+        List<Frame> cached = new ArrayList<>();
+        Map<Frame, Integer> uses = new HashMap<>();
+        synchronized (cache) {
+            for (Frame frame : frames) {
+                if (frame.node != null) {
+                    cached.add(frame);
+                    uses.put(frame, frame.uses);
+                    frame.uses /= 2;
+                }
+            }
+        }
+        cached.sort((a, b) -> Integer.compare(uses.get(b), uses.get(a)));
+        List<Integer> pages = new ArrayList<>();
+        for (Frame frame : cached) {
+            pages.add(frame.no);
+        }
+        return pages;
+    }
+
+    public long getVersion(int no) {
+        synchronized (cache) {
+            Frame frame = cache.get(id, no);
+            return frame == null ? -1 : frame.version;
+        }
+    }
+
+    // version of the page as the node holds it, -1 once the page was freed or reused
+    public long getVersion(Node node) {
+        synchronized (cache) {
+            Frame frame = cache.get(id, node.getNodeNo());
+            return frame == null || frame.node != node ? -1 : frame.version;
+        }
+    }
+
+    /*
+        the page was written as of version, it stays dirty if it changed since. A page that changed
+        and is clean again was written through meanwhile, maybe before the older copy landed over
+        it, so it is made dirty to go out once more
+     */
+    public void markClean(int no, long version) {
+        synchronized (cache) {
+            Frame frame = cache.get(id, no);
+            if (frame == null || frame.node == null) {
+                return;
+            }
+            if (frame.version == version) {
+                if (frame.dirty) {
+                    frame.dirty = false;
+                    countDirty(-1);
+                }
+            } else if (!frame.dirty) {
+                frame.dirty = true;
+                countDirty(1);
+            }
+        }
+    }
+
+    public int getDirtyCount() {
+        synchronized (cache) {
+            return dirtyCount;
+        }
+    }
+
+    // pages of this table in the cache
+    public int size() {
+        synchronized (cache) {
+            return frames.size();
+        }
+    }
+
+    // pages of this size the whole cache holds
+    public int getCapacity() {
+        return (int) (cache.getMemoryBudget() / pageSize);
+    }
+
+    // pages of this size that fit into the cache without evicting any
+    public int getFreeFrames() {
+        return (int) Math.max(0, (cache.getMemoryBudget() - cache.getMemoryUsed()) / pageSize);
+    }
+
+    public PageCache getCache() {
+        return cache;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        synchronized (cache) {
+            return misses;
+        }
+    }
+
+    int getId() {
+        return id;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    boolean isNoSteal() {
+        return noSteal;
+    }
+
+    // told by the cache, under its lock
+    void installed(Frame frame) {
+        frames.add(frame);
+    }
+
+    void removed(Frame frame) {
+        frames.remove(frame);
+        if (frame.dirty) {
+            frame.dirty = false;
+            countDirty(-1);
+        }
+    }
+
+    /*
+        writes the pinned frames without the cache lock and unpins them. A page stays dirty if it
+        changed after the version taken here, or was dropped meanwhile
+     */
+    private void writeBack(List<Frame> claimed) throws Exception {
+        Exception failed = null;
+        for (Frame frame : claimed) {
+            long version;
+            synchronized (cache) {
+                version = frame.version;
+            }
+            boolean written = false;
+            try {
+                writer.write(frame.node);
+                written = true;
+            } catch (Exception e) {
+                if (failed == null) {
+                    failed = e;
+                }
+            }
+            synchronized (cache) {
+                frame.pinCount--;
+                if (written && frame.slot != -1 && frame.version == version && frame.dirty) {
+                    cleaned(frame);
+                }
+            }
+        }
+        if (failed != null) {
+            throw failed;
+        }
+    }
+
+    // called by the cache without its lock, to evict a page of this pool
+    void write(Node node) throws Exception {
+        writer.write(node);
+    }
+
+    void cleaned(Frame frame) {
+        frame.dirty = false;
+        countDirty(-1);
+    }
+
+    // the cache counts the dirty pages of all its pools
+    private void countDirty(int delta) {
+        dirtyCount += delta;
+        cache.dirtied((long) delta * pageSize);
+    }
+
+    // the cache writes back claimed frames without its lock, they can't be dropped or replaced meanwhile
+    private void awaitWrites() throws InterruptedException {
+        for (Frame frame : new ArrayList<>(frames)) {
+            while (frame.writing) {
+                cache.wait();
+            }
+        }
+    }
+
+    private void drop(Frame frame) throws InterruptedException {
+        while (frame.writing) {
+            cache.wait();
+        }
+        cache.remove(frame);
+        if (frame.node != null) {
+            retire(frame.node);
+        }
+    }
+
+    // unpinned pages are never latched, the write lock is taken right away and never released
+    static void retire(Node node) {
+        node.getLatch().tryWriteLock();
+    }
+
+    private void setDirty(Frame frame) {
+        frame.version = cache.nextVersion();
+        if (!frame.dirty) {
+            frame.dirty = true;
+            countDirty(1);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package storage;
+
+import interfaces.Node;
+import interfaces.PageStore;
+import models.KeyCodec;
+import models.Row;
+import tree.InternalNode;
+import tree.LeafNode;
+import tree.OverflowNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/*
+    Builds the tree bottom up from rows sorted by key instead of inserting them one by one.
+    The tree goes to pages of its own, the table's root is only replaced once the load is done.
+    Leaves are filled up to the fill factor (of their bytes) and written in order, values
+    too big for a leaf go straight to their overflow pages. Every level above keeps
+    only its right most (open) node in memory. A node is written once, at the point its
+    right sibling is started, so its right link and high key are already final:
+
+        level 1:   [open]                 ← separator of every new child is appended here
+        level 0:   [done][done][open]     ← leaves, right link set when the sibling starts
+ */
+public class BulkLoader {
+    private final Table table;
+    private final PageStore store;
+    private final KeyCodec codec;
+    // bytes of entries a leaf is filled with
+    private final int leafFill;
+    private final int internalFill;
+    // open node of each internal level, index 0 is the level just above the leaves
+    private final List<InternalNode> levels;
+    // every page taken for the load, they go back to the table if it fails
+    private final List<Integer> reserved;
+    private LeafNode leaf;
+    private long rows;
+
+    BulkLoader(Table table, PageStore store, int leafCapacity, int maxInternalKeys, double fillFactor) {
+        if (fillFactor <= 0 || fillFactor > 1) {
+            throw new IllegalArgumentException("fill factor must be in (0, 1]");
+        }
+        this.table = table;
+        this.store = store;
+        this.codec = table.getKeyCodec();
+        this.leafFill = Math.max(1, (int) (leafCapacity * fillFactor));
+        this.internalFill = Math.max(1, (int) (maxInternalKeys * fillFactor));
+        this.levels = new ArrayList<>();
+        this.reserved = new ArrayList<>();
+    }
+
+    // returns the page number of the new root
+    int load(Iterator<Row> input) throws Exception {
+        while (input.hasNext()) {
+            Row row = input.next();
+            table.validateRow(row, false);
+            byte[] key = codec.encode(row);
+            if (leaf != null && leaf.compareKey(leaf.getKeyCount() - 1, key) >= 0) {
+                throw new Exception(String.format("bulk load input is not sorted by key: %s after %s",
+                        codec.decode(key), codec.decode(leaf.getKey(leaf.getKeyCount() - 1))));
+            }
+            byte[] record = table.encodeRecord(row, this::writeOverflow);
+            // a leaf takes at least one entry, whatever the fill factor
+            if (leaf == null || !leaf.fits(record.length)
+                    || (leaf.getKeyCount() > 0 && leaf.getUsedBytes() + leaf.getEntrySize(record.length) > leafFill)) {
+                startLeaf(key);
+            }
+            leaf.insert(leaf.getKeyCount(), key, record);
+            rows++;
+        }
+        if (leaf == null) {
+            return -1;
+        }
+        store.write(leaf.getNodeNo(), leaf.pack(table.getColumns()));
+        int root = leaf.getNodeNo();
+        for (InternalNode node : levels) {
+            store.write(node.getNodeNo(), node.pack(null));
+            root = node.getNodeNo();
+        }
+        return root;
+    }
+
+    public long getRowCount() {
+        return rows;
+    }
+
+    // pages written or about to be, none of them is reachable from the tree until the root is swapped
+    List<Integer> getReservedPages() {
+        return reserved;
+    }
+
+    private int reservePage() throws Exception {
+        int no = table.reservePage();
+        reserved.add(no);
+        return no;
+    }
+
+    private int writeOverflow(byte[] value) throws Exception {
+        int[] pages = new int[OverflowNode.getPageCount(value.length, store.getPageSize())];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = reservePage();
+        }
+        for (OverflowNode node : OverflowNode.chain(value, pages, store.getPageSize())) {
+            store.write(node.getNodeNo(), node.pack(null));
+        }
+        return pages[0];
+    }
+
+    private void startLeaf(byte[] firstKey) throws Exception {
+        int no = reservePage();
+        LeafNode next = table.createLeafNode(no);
+        if (leaf != null) {
+            addChild(0, leaf, next, firstKey);
+            leaf.setNext(no);
+            leaf.setHighKey(firstKey);
+            store.write(leaf.getNodeNo(), leaf.pack(table.getColumns()));
+        }
+        leaf = next;
+    }
+
+    /*
+        appends right (separated by key) to the open node at level, left is the node
+        before it on the level below and is only needed when the level does not exist yet
+     */
+    private void addChild(int level, Node left, Node right, byte[] key) throws Exception {
+        if (level == levels.size()) {
+            // second node on the level below, it needs a parent now
+            InternalNode parent = table.createInternalNode(reservePage(), level + 1);
+            parent.init(left.getNodeNo(), key, right.getNodeNo());
+            levels.add(parent);
+            return;
+        }
+        InternalNode open = levels.get(level);
+        if (open.getKeyCount() < internalFill) {
+            open.insert(open.getKeyCount(), key, right.getNodeNo());
+            return;
+        }
+        // open node is full, the new child starts its right sibling and key moves up
+        InternalNode sibling = table.createInternalNode(reservePage(), level + 1);
+        sibling.setValue(0, right.getNodeNo());
+        open.setNext(sibling.getNodeNo());
+        open.setHighKey(key);
+        addChild(level + 1, open, sibling, key);
+        store.write(open.getNodeNo(), open.pack(null));
+        levels.set(level, sibling);
+    }
+}
@@ -0,0 +1,291 @@
+package storage;
+
+import models.Column;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+    Catalog of tables sharing one page cache and one flusher thread. The schema of every table,
+    its columns, page size and settings, is kept in <database>.catalog, so tables are opened by
+    name instead of being declared again. Tables are opened on first use and stay open until
+    they or the database are closed.
+    The cache has one memory budget for all tables, pages of the tables in use push out those of
+    the others. Each table still has its own file, opened once, its own log and its own limit on
+    dirty pages; the dirty pages of all of them are held to one limit of the cache too. The
+    flusher writes the tables back in turn, every checkpoint interval of the database; the
+    interval of a table's settings is not used.
+ */
+public class Database implements AutoCloseable {
+    private static final int MAGIC = 0x43415447;
+    /*
+        layout of the catalog, written after the magic as a negative number. The first layout had
+        no version, the number of tables came right after the magic, so it reads as version 1
+     */
+    private static final int VERSION = 2;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5000;
+
+    private static final class Schema {
+        private final List<Column<?>> columns;
+        private final int pageSize;
+        private final TableConfig config;
+
+        private Schema(List<Column<?>> columns, int pageSize, TableConfig config) {
+            this.columns = columns;
+            this.pageSize = pageSize;
+            this.config = config;
+        }
+    }
+
+    private final String name;
+    private final PageCache pageCache;
+    private final PageFlusher flusher;
+    private final Map<String, Schema> schemas;
+    private final Map<String, Table> tables;
+    private boolean closed;
+
+    public Database(String name, long memoryBudget) throws Exception {
+        this(name, memoryBudget, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public Database(String name, long memoryBudget, long flushIntervalMillis) throws Exception {
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Database name is required.");
+        }
+        this.name = name;
+        this.pageCache = new PageCache(memoryBudget);
+        this.schemas = new LinkedHashMap<>();
+        this.tables = new HashMap<>();
+        this.readCatalog();
+        this.flusher = new PageFlusher(flushIntervalMillis);
+        this.flusher.setName("page-flusher-" + name);
+        this.flusher.start();
+    }
+
+    public synchronized Table createTable(String name, List<Column<?>> columns, int pageSize) throws Exception {
+        return this.createTable(name, columns, pageSize, new TableConfig());
+    }
+
+    // the settings are kept with the schema, except the cache size: the database has one cache
+    public synchronized Table createTable(String name, List<Column<?>> columns, int pageSize, TableConfig config) throws Exception {
+        this.checkOpen();
+        if (this.schemas.containsKey(name)) {
+            throw new Exception("table already exists: " + name);
+        }
+        Schema schema = new Schema(new ArrayList<>(columns), pageSize, config.copy());
+        Table table = new Table(name, schema.columns, pageSize, schema.config, this);
+        this.schemas.put(name, schema);
+        this.tables.put(name, table);
+        try {
+            this.writeCatalog();
+        } catch (Exception e) {
+            this.schemas.remove(name);
+            table.close();
+            throw e;
+        }
+        return table;
+    }
+
+    // opens the table if it isn't open yet
+    public synchronized Table getTable(String name) throws Exception {
+        this.checkOpen();
+        Table table = this.tables.get(name);
+        if (table == null) {
+            Schema schema = this.schemas.get(name);
+            if (schema == null) {
+                throw new Exception("no such table: " + name);
+            }
+            table = new Table(name, schema.columns, schema.pageSize, schema.config, this);
+            this.tables.put(name, table);
+        }
+        return table;
+    }
+
+    public synchronized boolean hasTable(String name) {
+        return this.schemas.containsKey(name);
+    }
+
+    // in the order they were created
+    public synchronized List<String> getTableNames() {
+        return new ArrayList<>(this.schemas.keySet());
+    }
+
+    // closes the table and removes it from the catalog along with its files
+    public synchronized void dropTable(String name) throws Exception {
+        this.checkOpen();
+        Schema schema = this.schemas.get(name);
+        if (schema == null) {
+            throw new Exception("no such table: " + name);
+        }
+        Table table = this.tables.get(name);
+        if (table != null) {
+            table.close();
+        }
+        this.schemas.remove(name);
+        this.writeCatalog();
+        Table.deleteFiles(name, schema.columns);
+    }
+
+    public PageCache getPageCache() {
+        return pageCache;
+    }
+
+    PageFlusher getFlusher() {
+        return flusher;
+    }
+
+    // called by a table once it is closed, also by the tables of its indexes
+    synchronized void closed(Table table) {
+        this.tables.remove(table.getName(), table);
+    }
+
+    // closes every table even when one fails, the first failure is thrown, as an IOException unless unchecked
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        Exception failed = null;
+        for (Table table : new ArrayList<>(this.tables.values())) {
+            try {
+                table.close();
+            } catch (Exception e) {
+                if (failed == null) {
+                    failed = e;
+                }
+            }
+        }
+        try {
+            this.flusher.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (failed == null) {
+                failed = e;
+            }
+        }
+        if (failed instanceof IOException e) {
+            throw e;
+        }
+        if (failed instanceof RuntimeException e) {
+            throw e;
+        }
+        if (failed != null) {
+            throw new IOException("failed to close database " + this.name, failed);
+        }
+    }
+
+    private void checkOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("database is closed: " + this.name);
+        }
+    }
+
+    private Path catalogPath() {
+        return Path.of(String.format("%s.catalog", this.name));
+    }
+
+    // the whole catalog goes to a new file that replaces the old one, a crash leaves one of the two
+    private void writeCatalog() throws Exception {
+        Path path = this.catalogPath();
+        Path written = Path.of(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(written)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(-VERSION);
+            out.writeInt(this.schemas.size());
+            for (Map.Entry<String, Schema> entry : this.schemas.entrySet()) {
+                Schema schema = entry.getValue();
+                TableConfig config = schema.config;
+                out.writeUTF(entry.getKey());
+                out.writeInt(schema.pageSize);
+                out.writeInt(schema.columns.size());
+                for (Column<?> column : schema.columns) {
+                    out.writeUTF(column.getName());
+                    out.writeUTF(column.getType().getName());
+                    out.writeInt(column.getSize());
+                }
+                out.writeInt(config.getKeyColumns().length);
+                for (String keyColumn : config.getKeyColumns()) {
+                    out.writeUTF(keyColumn);
+                }
+                out.writeUTF(config.getStorageMode().name());
+                out.writeBoolean(config.isWalEnabled());
+                out.writeInt(config.getCheckpointDirtyPages());
+                out.writeInt(config.getFlushLowWatermark());
+                out.writeInt(config.getMaxDirtyPages());
+                out.writeInt(config.getBloomFilterBitsPerKey());
+                out.writeLong(config.getBloomFilterKeys());
+                out.writeBoolean(config.isJmxEnabled());
+                out.writeBoolean(config.isZoneMapsEnabled());
+                out.writeUTF(config.getWarmUpMode().name());
+                out.writeLong(config.getHotPagesIntervalMillis());
+                out.writeLong(config.getSnapshotMemory());
+            }
+        }
+        Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // unlike the side files of a table the catalog can't be rebuilt, a bad one is an error
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void readCatalog() throws Exception {
+        Path path = this.catalogPath();
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new Exception("not a catalog: " + path);
+            }
+            int version = 1;
+            int count = in.readInt();
+            if (count < 0) {
+                version = -count;
+                count = in.readInt();
+            }
+            if (version > VERSION) {
+                throw new Exception("catalog " + path + " has layout version " + version + ", this version reads up to " + VERSION);
+            }
+            for (int i = 0; i < count; i++) {
+                String table = in.readUTF();
+                int pageSize = in.readInt();
+                List<Column<?>> columns = new ArrayList<>();
+                int columnCount = in.readInt();
+                for (int j = 0; j < columnCount; j++) {
+                    String column = in.readUTF();
+                    Class type = Class.forName(in.readUTF());
+                    columns.add(new Column(column, type, in.readInt()));
+                }
+                String[] keyColumns = new String[in.readInt()];
+                for (int j = 0; j < keyColumns.length; j++) {
+                    keyColumns[j] = in.readUTF();
+                }
+                TableConfig config = new TableConfig();
+                config.setKeyColumns(keyColumns);
+                config.setStorageMode(StorageMode.valueOf(in.readUTF()));
+                config.setWalEnabled(in.readBoolean());
+                config.setCheckpointDirtyPages(in.readInt());
+                config.setFlushLowWatermark(in.readInt());
+                config.setMaxDirtyPages(in.readInt());
+                config.setBloomFilterBitsPerKey(in.readInt());
+                config.setBloomFilterKeys(in.readLong());
+                config.setJmxEnabled(in.readBoolean());
+                config.setZoneMapsEnabled(in.readBoolean());
+                config.setWarmUpMode(WarmUpMode.valueOf(in.readUTF()));
+                config.setHotPagesIntervalMillis(in.readLong());
+                config.setSnapshotMemory(in.readLong());
+                this.schemas.put(table, new Schema(columns, pageSize, config));
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package storage;
+
+import interfaces.PageStore;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class FilePageStore implements PageStore {
+    // pages going out in one gathering write at most
+    private static final int MAX_RUN_PAGES = 64;
+    private final RandomAccessFile raf;
+    // positional reads and writes don't share a file pointer, so pages are read concurrently
+    private final FileChannel channel;
+    private final int pageSize;
+    // direct buffers reused by every run, the channel would copy heap buffers into temporary ones
+    private ByteBuffer[] runBuffers;
+
+    public FilePageStore(String path, int pageSize) throws Exception {
+        this.raf = new RandomAccessFile(path, "rw");
+        this.channel = raf.getChannel();
+        this.pageSize = pageSize;
+        this.runBuffers = new ByteBuffer[0];
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public ByteBuffer read(int pageNo) throws Exception {
+        long position = (long) pageNo * this.pageSize;
+        ByteBuffer data = ByteBuffer.allocate(this.pageSize);
+        while (data.hasRemaining()) {
+            int bytesRead = channel.read(data, position + data.position());
+            if (bytesRead == -1) {
+                if (data.position() == 0) {
+                    throw new Exception("data not present for page: " + pageNo);
+                }
+                break;
+            }
+        }
+        return data.clear();
+    }
+
+    @Override
+    public void write(int pageNo, byte[] data) throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long position = (long) pageNo * this.pageSize;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /*
+        a run of pages goes out with one gathering write per MAX_RUN_PAGES pages. Gathering writes
+        have no positional form, they use the file pointer: runs are written one at a time and
+        nothing else moves the pointer, positional reads and writes carry on meanwhile
+     */
+    @Override
+    synchronized public void write(int firstPageNo, byte[][] pages) throws Exception {
+        for (int start = 0; start < pages.length; start += MAX_RUN_PAGES) {
+            int count = Math.min(MAX_RUN_PAGES, pages.length - start);
+            ByteBuffer[] buffers = this.getRunBuffers(count);
+            for (int i = 0; i < count; i++) {
+                byte[] page = pages[start + i];
+                if (page.length != this.pageSize) {
+                    throw new IllegalArgumentException("page " + (firstPageNo + start + i) + " is " + page.length + " bytes, pages are " + this.pageSize);
+                }
+                buffers[i].clear();
+                buffers[i].put(page).flip();
+            }
+            channel.position((long) (firstPageNo + start) * this.pageSize);
+            long remaining = (long) count * this.pageSize;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers, 0, count);
+            }
+        }
+    }
+
+    private ByteBuffer[] getRunBuffers(int count) {
+        if (this.runBuffers.length < count) {
+            int length = this.runBuffers.length;
+            this.runBuffers = Arrays.copyOf(this.runBuffers, count);
+            for (int i = length; i < count; i++) {
+                this.runBuffers[i] = ByteBuffer.allocateDirect(this.pageSize);
+            }
+        }
+        return this.runBuffers;
+    }
+
+    @Override
+    public void sync() throws Exception {
+        channel.force(false);
+    }
+
+    @Override
+    synchronized public void close() throws Exception {
+        raf.close();
+    }
+}
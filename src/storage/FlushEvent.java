@@ -0,0 +1,20 @@
+package storage;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// a write back of dirty pages, or a checkpoint when the log is enabled
+@Name("db.Flush")
+@Label("Flush")
+@Category({"Database", "Page I/O"})
+class FlushEvent extends jdk.jfr.Event {
+    @Label("Table")
+    String table;
+
+    @Label("Pages")
+    int pages;
+
+    @Label("Checkpoint")
+    boolean checkpoint;
+}
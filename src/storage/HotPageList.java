@@ -0,0 +1,52 @@
+package storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Pages to load into the cache when a table is opened, hottest first. The list is only a hint:
+    it may be older than the table file, a page freed since is read for nothing. A file that
+    can't be read is taken as an empty list.
+ */
+class HotPageList {
+    private static final int MAGIC = 0x484f5450;
+
+    // replaces the file in one move, a crash leaves the old list or the new one
+    static void write(Path path, List<Integer> pages) throws Exception {
+        Path written = Path.of(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(written)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(pages.size());
+            for (int no : pages) {
+                out.writeInt(no);
+            }
+        }
+        Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static List<Integer> read(Path path) {
+        List<Integer> pages = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return pages;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                return pages;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                pages.add(in.readInt());
+            }
+        } catch (Exception e) {
+            pages.clear();
+        }
+        return pages;
+    }
+}
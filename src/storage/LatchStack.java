@@ -0,0 +1,156 @@
+package storage;
+
+import interfaces.Node;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+
+/*
+    Pages pinned and latched by one tree operation, plus the internal node the operation
+    went down through on every level. Descents take no latches, the path only tells a
+    split where to start looking for the parent; the parent may have split since and is
+    then reached through the right links.
+ */
+class LatchStack {
+    public interface ChangeListener {
+        void beforeChange(Node node) throws Exception;
+
+        default void beforeRootChange(int root) throws Exception {
+        }
+
+        // the operation let go of all its latches
+        default void released() {
+        }
+    }
+
+    private final BufferPool bufferPool;
+    // told of every page once it is latched exclusively, before the operation changes it, and
+    // of the root before another page replaces it
+    private final ChangeListener listener;
+    private Node[] nodes;
+    private Lock[] locks;
+    private int count;
+    // page visited on each level during the descent, 0 where none was
+    private int[] path;
+
+    LatchStack(BufferPool bufferPool) {
+        this(bufferPool, node -> {
+        });
+    }
+
+    LatchStack(BufferPool bufferPool, ChangeListener listener) {
+        this.bufferPool = bufferPool;
+        this.listener = listener;
+        this.nodes = new Node[4];
+        this.locks = new Lock[4];
+        this.path = new int[8];
+    }
+
+    Node latch(int no, boolean exclusive) throws Exception {
+        Node node = bufferPool.fetch(no);
+        Lock lock = exclusive ? node.getLatch().asWriteLock() : node.getLatch().asReadLock();
+        lock.lock();
+        push(node, lock);
+        if (exclusive) {
+            listener.beforeChange(node);
+        }
+        return node;
+    }
+
+    // adds a page just allocated, it is pinned by the pool and latched exclusively
+    void add(Node node) throws Exception {
+        bufferPool.add(node);
+        Lock lock = node.getLatch().asWriteLock();
+        lock.lock();
+        push(node, lock);
+    }
+
+    private void push(Node node, Lock lock) {
+        if (count == nodes.length) {
+            nodes = Arrays.copyOf(nodes, count * 2);
+            locks = Arrays.copyOf(locks, count * 2);
+        }
+        nodes[count] = node;
+        locks[count] = lock;
+        count++;
+    }
+
+    void visit(int level, int no) {
+        if (level >= path.length) {
+            path = Arrays.copyOf(path, Math.max(level + 1, path.length * 2));
+        }
+        path[level] = no;
+    }
+
+    // page the descent went through on the level, -1 when it started below it
+    int visited(int level) {
+        return level < path.length && path[level] != 0 ? path[level] : -1;
+    }
+
+    // trades the shared latch of a node for an exclusive one, only safe while no other writer runs
+    void upgrade(Node node) throws Exception {
+        for (int i = 0; i < count; i++) {
+            if (nodes[i] == node) {
+                locks[i].unlock();
+                locks[i] = node.getLatch().asWriteLock();
+                locks[i].lock();
+                listener.beforeChange(node);
+                return;
+            }
+        }
+    }
+
+    // tells the listener of a page the operation frees without latching it, like overflow pages
+    void keep(Node node) throws Exception {
+        listener.beforeChange(node);
+    }
+
+    // the old root is latched exclusively
+    void beforeRootChange(int root) throws Exception {
+        listener.beforeRootChange(root);
+    }
+
+    // forgets a freed page without unlocking it, its write latch is held for good
+    void discard(Node node) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            if (nodes[i] == node) {
+                remove(i);
+                bufferPool.discard(node);
+                return;
+            }
+        }
+    }
+
+    void release(Node node) {
+        for (int i = 0; i < count; i++) {
+            if (nodes[i] == node) {
+                unlock(i);
+                remove(i);
+                return;
+            }
+        }
+    }
+
+    private void remove(int i) {
+        System.arraycopy(nodes, i + 1, nodes, i, count - i - 1);
+        System.arraycopy(locks, i + 1, locks, i, count - i - 1);
+        count--;
+        nodes[count] = null;
+        locks[count] = null;
+    }
+
+    void releaseAll() {
+        for (int i = count - 1; i >= 0; i--) {
+            unlock(i);
+            nodes[i] = null;
+            locks[i] = null;
+        }
+        count = 0;
+        listener.released();
+    }
+
+    private void unlock(int i) {
+        locks[i].unlock();
+        bufferPool.unpin(nodes[i]);
+    }
+}
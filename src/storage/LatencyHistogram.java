@@ -0,0 +1,123 @@
+package storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Latencies in nanoseconds, bucketed the way HdrHistogram does it: every power of two is
+    split into the same number of linear sub buckets, so a value is off by less than 1% at
+    any magnitude. Values past about a minute land in the last bucket, the max is kept exact.
+    Recording takes no lock, percentiles read while others record are only approximate.
+ */
+public class LatencyHistogram {
+    // a shifted value keeps 128 distinct sub buckets, so it is at most 1/128 off
+    private static final int SUB_BITS = 8;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+    // 2^36 ns, a bit over a minute
+    private static final long MAX_TRACKED = (1L << 36) - 1;
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder total;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(index(MAX_TRACKED) + 1);
+        this.count = new LongAdder();
+        this.total = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /*
+        values below SUB_COUNT have a bucket each, larger ones are shifted right until they
+        have SUB_BITS bits left. Their top bit is then always set, so each shift only uses
+        the upper half of the sub buckets
+     */
+    private static int index(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        return shift * HALF_COUNT + (int) (value >>> shift);
+    }
+
+    // largest value that falls in the bucket
+    private static long highest(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / HALF_COUNT - 1;
+        long sub = index - (long) shift * HALF_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.counts.incrementAndGet(index(Math.min(value, MAX_TRACKED)));
+        this.count.increment();
+        this.total.add(value);
+        this.max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public double getMeanNanos() {
+        long count = this.count.sum();
+        return count == 0 ? 0 : (double) this.total.sum() / count;
+    }
+
+    public long getMaxNanos() {
+        return this.max.get();
+    }
+
+    // smallest bucket bound at or above the given share of the values, 0 when there are none
+    public long getValueAtPercentile(double percentile) {
+        long seen = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            seen += this.counts.get(i);
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * seen));
+        long sum = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            sum += this.counts.get(i);
+            if (sum >= target) {
+                // the last bucket holds everything past the tracked range, the max is the best bound
+                long bound = i == this.counts.length() - 1 ? Long.MAX_VALUE : highest(i);
+                return Math.min(bound, this.max.get());
+            }
+        }
+        return 0;
+    }
+
+    public long getP50Nanos() {
+        return this.getValueAtPercentile(50);
+    }
+
+    public long getP90Nanos() {
+        return this.getValueAtPercentile(90);
+    }
+
+    public long getP99Nanos() {
+        return this.getValueAtPercentile(99);
+    }
+
+    public long getP999Nanos() {
+        return this.getValueAtPercentile(99.9);
+    }
+
+    public void reset() {
+        for (int i = 0; i < this.counts.length(); i++) {
+            this.counts.set(i, 0);
+        }
+        this.count.reset();
+        this.total.reset();
+        this.max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", this.getCount(),
+                this.getMeanNanos() / 1000, this.getP50Nanos() / 1000.0, this.getP99Nanos() / 1000.0,
+                this.getP999Nanos() / 1000.0, this.getMaxNanos() / 1000.0);
+    }
+}
@@ -0,0 +1,106 @@
+package storage;
+
+import interfaces.PageStore;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+    Maps the table file in fixed size chunks, a chunk holds a whole number of pages
+    so a page never straddles two mappings. Chunks are mapped lazily and the file is
+    extended one chunk at a time when a page past the current end is written.
+ */
+public class MappedPageStore implements PageStore {
+    private static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+    private final FileChannel channel;
+    private final int pageSize;
+    private final int pagesPerChunk;
+    private final long chunkSize;
+    // replaced as a whole when a chunk is added, readers use it without locking
+    private volatile MappedByteBuffer[] chunks;
+    // length of the file, it only grows by mapping chunks, kept so reads need no system call
+    private volatile long fileSize;
+
+    public MappedPageStore(String path, int pageSize) throws Exception {
+        this(path, pageSize, DEFAULT_CHUNK_SIZE);
+    }
+
+    public MappedPageStore(String path, int pageSize, int chunkSize) throws Exception {
+        this.channel = FileChannel.open(Path.of(path), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.pageSize = pageSize;
+        this.pagesPerChunk = Math.max(1, chunkSize / pageSize);
+        this.chunkSize = (long) this.pagesPerChunk * pageSize;
+        this.chunks = new MappedByteBuffer[0];
+        this.fileSize = this.channel.size();
+    }
+
+    @Override
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public ByteBuffer read(int pageNo) throws Exception {
+        long offset = (long) pageNo * this.pageSize;
+        // touching a mapping past the end of file raises SIGBUS, check first
+        if (offset + this.pageSize > this.fileSize) {
+            throw new Exception("data not present for page: " + pageNo);
+        }
+        MappedByteBuffer chunk = this.getChunk(pageNo / this.pagesPerChunk);
+        return chunk.slice((pageNo % this.pagesPerChunk) * this.pageSize, this.pageSize).asReadOnlyBuffer();
+    }
+
+    @Override
+    public void write(int pageNo, byte[] data) throws Exception {
+        MappedByteBuffer chunk = this.getChunk(pageNo / this.pagesPerChunk);
+        chunk.put((pageNo % this.pagesPerChunk) * this.pageSize, data, 0, Math.min(data.length, this.pageSize));
+    }
+
+    @Override
+    public void write(int firstPageNo, byte[][] pages) throws Exception {
+        // copies into the mapping, there is no system call to save
+        for (int i = 0; i < pages.length; i++) {
+            this.write(firstPageNo + i, pages[i]);
+        }
+    }
+
+    private MappedByteBuffer getChunk(int index) throws Exception {
+        MappedByteBuffer[] mapped = this.chunks;
+        if (index < mapped.length) {
+            return mapped[index];
+        }
+        return this.mapChunks(index);
+    }
+
+    synchronized private MappedByteBuffer mapChunks(int index) throws Exception {
+        MappedByteBuffer[] mapped = this.chunks;
+        if (index >= mapped.length) {
+            mapped = Arrays.copyOf(mapped, index + 1);
+            for (int i = this.chunks.length; i <= index; i++) {
+                // mapping read write grows the file to cover the whole chunk
+                mapped[i] = this.channel.map(FileChannel.MapMode.READ_WRITE, i * this.chunkSize, this.chunkSize);
+            }
+            this.chunks = mapped;
+            this.fileSize = Math.max(this.fileSize, mapped.length * this.chunkSize);
+        }
+        return mapped[index];
+    }
+
+    @Override
+    synchronized public void sync() throws Exception {
+        for (MappedByteBuffer chunk : this.chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    synchronized public void close() throws Exception {
+        this.sync();
+        this.chunks = new MappedByteBuffer[0];
+        this.channel.close();
+    }
+}
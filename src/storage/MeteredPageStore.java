@@ -0,0 +1,76 @@
+package storage;
+
+import interfaces.PageStore;
+
+import java.nio.ByteBuffer;
+
+// counts the pages going through the store and records them as JFR events
+class MeteredPageStore implements PageStore {
+    private final PageStore store;
+    private final TableStats stats;
+    private final String table;
+
+    MeteredPageStore(PageStore store, TableStats stats, String table) {
+        this.store = store;
+        this.stats = stats;
+        this.table = table;
+    }
+
+    @Override
+    public int getPageSize() {
+        return this.store.getPageSize();
+    }
+
+    @Override
+    public ByteBuffer read(int pageNo) throws Exception {
+        PageReadEvent event = new PageReadEvent();
+        event.begin();
+        ByteBuffer page = this.store.read(pageNo);
+        this.stats.pageRead(page.remaining());
+        if (event.shouldCommit()) {
+            event.table = this.table;
+            event.page = pageNo;
+            event.bytes = page.remaining();
+            event.commit();
+        }
+        return page;
+    }
+
+    @Override
+    public void write(int pageNo, byte[] data) throws Exception {
+        this.write(pageNo, new byte[][]{data});
+    }
+
+    @Override
+    public void write(int firstPageNo, byte[][] pages) throws Exception {
+        PageWriteEvent event = new PageWriteEvent();
+        event.begin();
+        if (pages.length == 1) {
+            this.store.write(firstPageNo, pages[0]);
+        } else {
+            this.store.write(firstPageNo, pages);
+        }
+        long bytes = 0;
+        for (byte[] page : pages) {
+            bytes += page.length;
+        }
+        this.stats.pagesWritten(pages.length, bytes);
+        if (event.shouldCommit()) {
+            event.table = this.table;
+            event.firstPage = firstPageNo;
+            event.pages = pages.length;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void sync() throws Exception {
+        this.store.sync();
+    }
+
+    @Override
+    public void close() throws Exception {
+        this.store.close();
+    }
+}
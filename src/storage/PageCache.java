@@ -0,0 +1,236 @@
+package storage;
+
+import interfaces.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+    Frames of the buffer pools of any number of tables within one memory budget, in bytes so
+    tables with different page sizes can share it. Every table goes through a BufferPool of its
+    own, the frames and the CLOCK hand are shared: making room for a page of one table may evict
+    a page of another, so the memory goes to the tables in use.
+    Everything is done under the lock of the cache, frames are found without it by BufferPool.get.
+    The one exception is writing back a dirty victim: it is claimed under the lock, written by
+    the thread that needed the room once it let go of the lock, and evicted then unless it was
+    used again meanwhile. Until then the cache may be over budget by the pages being written.
+    Dirty pages of the pools with the log can't be evicted at all, so the dirty pages of all
+    pools together are held to three quarters of the budget: writers of any table wait for the
+    flusher past it (see Table.flushIfNeeded), which leaves the rest for clean pages to come
+    and go. The cache only goes over budget when every frame left is pinned.
+ */
+public class PageCache {
+    static final class Frame {
+        final BufferPool owner;
+        final int no;
+        volatile Node node;
+        int pinCount;
+        boolean dirty;
+        volatile boolean referenced;
+        // accesses since the last list of hot pages was taken, halved then. Counted without a
+        // lock by get, an increment lost now and then doesn't matter
+        int uses;
+        // set while the page is read from the store, node is null until then
+        boolean loading;
+        // set while the frame is written back to be evicted, it is pinned meanwhile
+        boolean writing;
+        // set on every change, lets a checkpoint tell whether the page changed after it was copied
+        long version;
+        // position in the frames of the cache, -1 once removed
+        int slot = -1;
+
+        Frame(BufferPool owner, int no, Node node) {
+            this.owner = owner;
+            this.no = no;
+            this.node = node;
+        }
+    }
+
+    private final long memoryBudget;
+    // bytes of dirty pages of all pools, the flusher is asked for a round at half of it
+    private final long dirtyBudget;
+    private long dirtyBytes;
+    // by pool and page, changed under the lock and read without it by get
+    private final Map<Long, Frame> pageTable;
+    private final List<Frame> frames;
+    private int hand;
+    private long memoryUsed;
+    // bytes of the frames claimed to be written back and evicted, they will be freed soon
+    private long memoryClaimed;
+    // frame versions are drawn from one counter, so a page freed and reused never repeats a version
+    private long lastVersion;
+    private int lastPool;
+
+    public PageCache(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        this.dirtyBudget = memoryBudget * 3 / 4;
+        this.pageTable = new ConcurrentHashMap<>();
+        this.frames = new ArrayList<>();
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    public synchronized long getDirtyBytes() {
+        return dirtyBytes;
+    }
+
+    // dirty pages take half the dirty budget, whichever tables they belong to
+    synchronized boolean isDirtyPastWatermark() {
+        return dirtyBytes >= dirtyBudget / 2;
+    }
+
+    synchronized boolean isDirtyFull() {
+        return dirtyBytes >= dirtyBudget;
+    }
+
+    // called by the pools under the lock whenever a page turns dirty or clean
+    void dirtied(long bytes) {
+        dirtyBytes += bytes;
+    }
+
+    public synchronized int size() {
+        return frames.size();
+    }
+
+    synchronized int register() {
+        return ++lastPool;
+    }
+
+    Frame get(int pool, int no) {
+        return pageTable.get(key(pool, no));
+    }
+
+    long nextVersion() {
+        return ++lastVersion;
+    }
+
+    /*
+        adds the frame, evicting clean frames to make room. Dirty victims are only claimed, they
+        are returned pinned and have to be passed to writeBack once the lock is let go of
+     */
+    List<Frame> install(Frame frame) {
+        List<Frame> claimed = new ArrayList<>();
+        int pageSize = frame.owner.getPageSize();
+        while (memoryUsed - memoryClaimed + pageSize > memoryBudget && !frames.isEmpty()) {
+            Frame victim = findVictim();
+            if (victim == null) {
+                // every frame is pinned, go over budget until pins are released
+                break;
+            }
+            if (victim.dirty) {
+                victim.writing = true;
+                victim.pinCount++;
+                memoryClaimed += victim.owner.getPageSize();
+                claimed.add(victim);
+            } else {
+                remove(victim);
+                BufferPool.retire(victim.node);
+            }
+        }
+        frame.slot = frames.size();
+        frames.add(frame);
+        pageTable.put(key(frame.owner.getId(), frame.no), frame);
+        memoryUsed += pageSize;
+        frame.owner.installed(frame);
+        return claimed;
+    }
+
+    /*
+        writes back the frames install claimed and evicts them, called without the lock. A page
+        is written under its shared latch so it can't change or be freed meanwhile; one latched
+        exclusively by now is in use again and stays. So does one that was pinned or changed
+        while it was written. The latch is let go of before the frame is evicted, the write lock
+        retire takes makes optimistic readers of the node start over
+     */
+    void writeBack(List<Frame> claimed) throws Exception {
+        Exception failed = null;
+        for (Frame frame : claimed) {
+            Node node = frame.node;
+            long version;
+            synchronized (this) {
+                version = frame.version;
+            }
+            boolean written = false;
+            StampedLock latch = node.getLatch();
+            long stamp = latch.tryReadLock();
+            if (stamp != 0) {
+                try {
+                    frame.owner.write(node);
+                    written = true;
+                } catch (Exception e) {
+                    if (failed == null) {
+                        failed = e;
+                    }
+                } finally {
+                    latch.unlockRead(stamp);
+                }
+            }
+            synchronized (this) {
+                frame.writing = false;
+                frame.pinCount--;
+                memoryClaimed -= frame.owner.getPageSize();
+                if (written && frame.version == version && frame.dirty) {
+                    frame.owner.cleaned(frame);
+                }
+                if (frame.slot != -1 && frame.pinCount == 0 && !frame.dirty) {
+                    remove(frame);
+                    BufferPool.retire(node);
+                }
+                notifyAll();
+            }
+        }
+        if (failed != null) {
+            throw failed;
+        }
+    }
+
+    // takes the frame out of the cache, the caller writes it back or drops its changes first
+    void remove(Frame frame) {
+        int slot = frame.slot;
+        if (slot == -1) {
+            return;
+        }
+        Frame last = frames.remove(frames.size() - 1);
+        if (last != frame) {
+            frames.set(slot, last);
+            last.slot = slot;
+        }
+        frame.slot = -1;
+        if (hand >= frames.size()) {
+            hand = frames.size() - 1;
+        }
+        pageTable.remove(key(frame.owner.getId(), frame.no), frame);
+        memoryUsed -= frame.owner.getPageSize();
+        frame.owner.removed(frame);
+    }
+
+    private Frame findVictim() {
+        // two full sweeps: the first one may only clear reference bits
+        for (int i = 0; i < 2 * frames.size(); i++) {
+            hand = (hand + 1) % frames.size();
+            Frame frame = frames.get(hand);
+            if (frame.pinCount > 0 || (frame.dirty && frame.owner.isNoSteal())) {
+                continue;
+            }
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+            return frame;
+        }
+        return null;
+    }
+
+    private static long key(int pool, int no) {
+        return ((long) pool << 32) | (no & 0xffffffffL);
+    }
+}
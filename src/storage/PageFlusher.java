@@ -0,0 +1,123 @@
+package storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+    background thread writing dirty pages back so writers don't. Every interval it writes all
+    of them, with the log as a checkpoint. When asked to by a writer that saw too many dirty
+    pages it writes them down to the low watermark, with the log a checkpoint takes them all.
+    The tables of a database share one, every round goes over all of them in turn.
+    A table whose write back fails keeps its failure until a later round gets through, writers
+    held back by it are told instead of waiting for rounds that can't help, see Table.flushIfNeeded
+ */
+public final class PageFlusher extends Thread {
+    private final List<Table> tables = new CopyOnWriteArrayList<>();
+    private final Map<Table, Exception> failures = new ConcurrentHashMap<>();
+    private final long intervalMillis;
+    private boolean requested;
+    private boolean running;
+    // set while a round runs, a table is only let go of between rounds
+    private boolean busy;
+    // finished rounds, writers held back by the dirty page limit wait for the next one
+    private long rounds;
+
+    public PageFlusher(Table table, long intervalMillis) {
+        this(intervalMillis);
+        this.tables.add(table);
+    }
+
+    public PageFlusher(long intervalMillis) {
+        super("page-flusher");
+        this.intervalMillis = intervalMillis;
+        this.running = true;
+        this.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            boolean partial;
+            synchronized (this) {
+                try {
+                    if (!requested && running) {
+                        wait(intervalMillis);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                partial = requested;
+                requested = false;
+                if (!running) {
+                    return;
+                }
+                busy = true;
+            }
+            for (Table table : tables) {
+                try {
+                    table.writeBack(partial);
+                    failures.remove(table);
+                } catch (Exception e) {
+                    failures.put(table, e);
+                    table.getStats().flushFailed();
+                }
+            }
+            synchronized (this) {
+                busy = false;
+                rounds++;
+                notifyAll();
+            }
+        }
+    }
+
+    public synchronized void request() {
+        requested = true;
+        notifyAll();
+    }
+
+    // asks for a round and waits for the next one to end, at most an interval
+    public synchronized void awaitRound() throws InterruptedException {
+        long round = rounds;
+        request();
+        long deadline = System.currentTimeMillis() + intervalMillis;
+        while (rounds == round && running) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return;
+            }
+            wait(left);
+        }
+    }
+
+    public void add(Table table) {
+        tables.add(table);
+    }
+
+    // why the last round failed to write the table back, null when it got through
+    public Exception getFailure(Table table) {
+        return failures.get(table);
+    }
+
+    // waits for a round still writing the table back, it may be closed once this returns
+    public synchronized void remove(Table table) throws InterruptedException {
+        tables.remove(table);
+        failures.remove(table);
+        while (busy) {
+            wait();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public void shutdown() throws InterruptedException {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        this.join();
+    }
+}
@@ -0,0 +1,22 @@
+package storage;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// a page read from the table file, recorded when enabled in a JFR recording
+@Name("db.PageRead")
+@Label("Page Read")
+@Category({"Database", "Page I/O"})
+class PageReadEvent extends jdk.jfr.Event {
+    @Label("Table")
+    String table;
+
+    @Label("Page")
+    int page;
+
+    @Label("Bytes")
+    @DataAmount
+    int bytes;
+}
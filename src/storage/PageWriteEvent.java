@@ -0,0 +1,25 @@
+package storage;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// pages that follow each other written to the table file in one call
+@Name("db.PageWrite")
+@Label("Page Write")
+@Category({"Database", "Page I/O"})
+class PageWriteEvent extends jdk.jfr.Event {
+    @Label("Table")
+    String table;
+
+    @Label("First Page")
+    int firstPage;
+
+    @Label("Pages")
+    int pages;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,515 @@
+package storage;
+
+import models.Column;
+import models.Filter;
+import models.Key;
+import models.KeyCodec;
+import models.Row;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+    Rows of one table spread over independent tables, the partitions, each with a file, a tree,
+    a cache and a flusher of its own (<table>.p<n>.bin). The cache size of the settings is for
+    the whole table, every partition gets an even share of it. A row goes to the partition picked by
+    the hash of its key, or by the range its key falls into when split keys are given. Writes to
+    different partitions don't meet anywhere, insertAll and bulkLoad route the rows to a writer
+    thread per partition. Point operations go to the partition of the key, scans read every
+    partition that may hold keys of the range and merge their rows back into key order.
+    How the rows are partitioned is saved in <table>.partitions, a table has to be opened
+    the way it was created.
+ */
+public class PartitionedTable implements AutoCloseable {
+    private static final int MAGIC = 0x50415254;
+    // rows handed to a partition writer at a time, and batches waiting for each one at most
+    private static final int BATCH_SIZE = 256;
+    private static final int QUEUE_BATCHES = 16;
+    private static final List<Row> END = new ArrayList<>();
+
+    private interface PartitionWriter {
+        long write(Table partition, Iterator<Row> rows) throws Exception;
+    }
+
+    private final String name;
+    private final List<Table> partitions;
+    private final KeyCodec keyCodec;
+    // lowest key of every partition but the first, null when the rows are spread by hash
+    private final byte[][] splitKeys;
+
+    // spread by the hash of the key
+    public PartitionedTable(String name, List<Column<?>> columns, int pageSize, TableConfig config, int partitions) throws Exception {
+        this(name, columns, pageSize, config, partitions, null);
+    }
+
+    // partition n holds the keys from split key n - 1 up to split key n, the keys in ascending order
+    public PartitionedTable(String name, List<Column<?>> columns, int pageSize, TableConfig config, List<Key> splitKeys) throws Exception {
+        this(name, columns, pageSize, config, splitKeys.size() + 1, splitKeys.stream().map(Key::getBytes).toArray(byte[][]::new));
+    }
+
+    private PartitionedTable(String name, List<Column<?>> columns, int pageSize, TableConfig config, int partitions, byte[][] splitKeys) throws Exception {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("A table needs at least one partition.");
+        }
+        if (splitKeys != null) {
+            for (int i = 1; i < splitKeys.length; i++) {
+                if (Arrays.compareUnsigned(splitKeys[i - 1], splitKeys[i]) >= 0) {
+                    throw new IllegalArgumentException("Split keys must be in ascending order.");
+                }
+            }
+        }
+        this.name = name;
+        this.keyCodec = KeyCodec.of(columns, config.getKeyColumns());
+        this.splitKeys = splitKeys;
+        boolean laidOut = this.checkLayout(partitions);
+        this.partitions = new ArrayList<>();
+        TableConfig share = config.copy();
+        share.setCacheSize(config.getCacheSize() / partitions);
+        try {
+            for (int i = 0; i < partitions; i++) {
+                this.partitions.add(new Table(getPartitionName(name, i), columns, pageSize, share));
+            }
+            // saved once every partition opened, a table that failed to open can be opened another way
+            if (!laidOut) {
+                this.saveLayout(partitions);
+            }
+        } catch (Exception e) {
+            for (Table partition : this.partitions) {
+                partition.close();
+            }
+            throw e;
+        }
+    }
+
+    static String getPartitionName(String table, int partition) {
+        return table + ".p" + partition;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    // for the stats of a partition, or anything else it can do on its own
+    public Table getPartition(int partition) {
+        return partitions.get(partition);
+    }
+
+    public Key key(Object... values) throws Exception {
+        return this.keyCodec.key(values);
+    }
+
+    public int partitionOf(Key key) {
+        return this.partitionOf(key.getBytes());
+    }
+
+    private int partitionOf(byte[] key) {
+        if (this.splitKeys == null) {
+            // spreads keys that differ in the last bytes only, like ids counting up
+            int hash = Arrays.hashCode(key) * 0x9e3779b9;
+            return Math.floorMod(hash ^ (hash >>> 16), this.partitions.size());
+        }
+        int low = 0;
+        int high = this.splitKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(this.splitKeys[mid], key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Table partitionFor(Key key) {
+        return this.partitions.get(this.partitionOf(key.getBytes()));
+    }
+
+    public void insert(Row row) throws Exception {
+        this.partitionFor(this.keyCodec.keyOf(row)).insert(row);
+    }
+
+    public Row search(int id, String... columns) throws Exception {
+        return this.search(this.key(id), columns);
+    }
+
+    public Row search(Key key, String... columns) throws Exception {
+        return this.partitionFor(key).search(key, columns);
+    }
+
+    public boolean update(int id, Map<String, Object> updates) throws Exception {
+        return this.update(this.key(id), updates);
+    }
+
+    public boolean update(Key key, Map<String, Object> updates) throws Exception {
+        return this.partitionFor(key).update(key, updates);
+    }
+
+    public boolean delete(int id) throws Exception {
+        return this.delete(this.key(id));
+    }
+
+    public boolean delete(Key key) throws Exception {
+        return this.partitionFor(key).delete(key);
+    }
+
+    /*
+        inserts the rows with a writer thread per partition, returns how many were inserted.
+        Rows whose key is taken already are left out, like with insert
+     */
+    public long insertAll(Iterator<Row> rows) throws Exception {
+        return this.ingest(rows, (partition, part) -> {
+            long inserted = 0;
+            while (part.hasNext()) {
+                if (partition.insertRow(part.next())) {
+                    inserted++;
+                }
+            }
+            return inserted;
+        });
+    }
+
+    /*
+        loads rows sorted by key into the empty partitions, each one bottom up by a thread of its
+        own. With hash partitioning every partition gets a sorted share of the rows, so all of
+        them load at once; with split keys the rows reach the partitions one after the other
+     */
+    public long bulkLoad(Iterator<Row> rows) throws Exception {
+        return this.ingest(rows, Table::bulkLoad);
+    }
+
+    /*
+        routes the rows to a queue per partition, drained by a thread per partition. A writer
+        that fails stops the routing, the rows already handed to the others are still written
+     */
+    private long ingest(Iterator<Row> rows, PartitionWriter writer) throws Exception {
+        int count = this.partitions.size();
+        List<BlockingQueue<List<Row>>> queues = new ArrayList<>();
+        List<List<Row>> batches = new ArrayList<>();
+        Thread[] threads = new Thread[count];
+        long[] written = new long[count];
+        AtomicReference<Throwable> failed = new AtomicReference<>();
+        for (int i = 0; i < count; i++) {
+            int partition = i;
+            BlockingQueue<List<Row>> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+            queues.add(queue);
+            batches.add(new ArrayList<>());
+            threads[i] = new Thread(() -> {
+                try {
+                    written[partition] = writer.write(this.partitions.get(partition), new QueueIterator(queue));
+                } catch (Throwable e) {
+                    // errors too, the rows routed to the partition would be lost without a word
+                    failed.compareAndSet(null, e);
+                }
+            }, "writer-" + getPartitionName(this.name, i));
+            threads[i].start();
+        }
+        try {
+            while (rows.hasNext() && failed.get() == null) {
+                Row row = rows.next();
+                int partition = this.partitionOf(this.keyCodec.encode(row));
+                List<Row> batch = batches.get(partition);
+                batch.add(row);
+                if (batch.size() == BATCH_SIZE) {
+                    hand(queues.get(partition), batch, threads[partition]);
+                    batches.set(partition, new ArrayList<>());
+                }
+            }
+            if (failed.get() == null) {
+                for (int i = 0; i < count; i++) {
+                    if (!batches.get(i).isEmpty()) {
+                        hand(queues.get(i), batches.get(i), threads[i]);
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < count; i++) {
+                hand(queues.get(i), END, threads[i]);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        Throwable cause = failed.get();
+        if (cause instanceof Exception e) {
+            throw e;
+        }
+        if (cause instanceof Error e) {
+            throw e;
+        }
+        if (cause != null) {
+            throw new Exception("partition writer failed", cause);
+        }
+        long total = 0;
+        for (long n : written) {
+            total += n;
+        }
+        return total;
+    }
+
+    // waits for room in the queue as long as its writer runs
+    private static void hand(BlockingQueue<List<Row>> queue, List<Row> batch, Thread writer) throws InterruptedException {
+        while (!queue.offer(batch, 10, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) {
+                return;
+            }
+        }
+    }
+
+    // rows of the batches in the queue up to END
+    private static class QueueIterator implements Iterator<Row> {
+        private final BlockingQueue<List<Row>> queue;
+        private List<Row> batch = List.of();
+        private int next;
+
+        private QueueIterator(BlockingQueue<List<Row>> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (batch != END && next == batch.size()) {
+                try {
+                    batch = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while waiting for rows", e);
+                }
+                next = 0;
+            }
+            return batch != END;
+        }
+
+        @Override
+        public Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.get(next++);
+        }
+    }
+
+    // every row in key order
+    public Stream<Row> stream(String... columns) throws Exception {
+        return this.stream(List.of(), columns);
+    }
+
+    public Stream<Row> stream(List<Filter> filters, String... columns) throws Exception {
+        return this.stream(this.keyCodec.decode(this.keyCodec.min()), this.keyCodec.decode(this.keyCodec.max()), filters, columns);
+    }
+
+    public Stream<Row> stream(int fromId, int toId, String... columns) throws Exception {
+        return this.stream(this.key(fromId), this.key(toId), columns);
+    }
+
+    public Stream<Row> stream(Key from, Key to, String... columns) throws Exception {
+        return this.stream(from, to, List.of(), columns);
+    }
+
+    /*
+        rows in key order, merged from a scan of each partition that may hold keys in [from, to].
+        The merge needs the keys of the rows, key columns left out of the projection are read
+        anyway and dropped from the rows returned. Close the stream when not reading it to the end
+     */
+    public Stream<Row> stream(Key from, Key to, List<Filter> filters, String... columns) throws Exception {
+        List<String> dropped = new ArrayList<>();
+        String[] read = columns;
+        if (columns.length > 0) {
+            List<String> names = new ArrayList<>(List.of(columns));
+            for (Column<?> column : this.keyCodec.getColumns()) {
+                if (!names.contains(column.getName())) {
+                    names.add(column.getName());
+                    dropped.add(column.getName());
+                }
+            }
+            read = names.toArray(new String[0]);
+        }
+        List<RangeScan> scans = new ArrayList<>();
+        try {
+            for (int i = 0; i < this.partitions.size(); i++) {
+                if (this.overlaps(i, from.getBytes(), to.getBytes())) {
+                    scans.add(this.partitions.get(i).scan(from, to, filters, 0, read));
+                }
+            }
+        } catch (Exception e) {
+            scans.forEach(RangeScan::close);
+            throw e;
+        }
+        Iterator<Row> merged = new MergeIterator(scans, dropped);
+        Spliterator<Row> spliterator = Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> scans.forEach(RangeScan::close));
+    }
+
+    // with hash partitioning any partition may hold any key
+    private boolean overlaps(int partition, byte[] from, byte[] to) {
+        if (this.splitKeys == null) {
+            return true;
+        }
+        boolean fromBelowEnd = partition == this.splitKeys.length || Arrays.compareUnsigned(from, this.splitKeys[partition]) < 0;
+        boolean toAtStart = partition == 0 || Arrays.compareUnsigned(to, this.splitKeys[partition - 1]) >= 0;
+        return fromBelowEnd && toAtStart;
+    }
+
+    // k-way merge of the scans, by the smallest key at the head of each
+    private class MergeIterator implements Iterator<Row> {
+        private final PriorityQueue<Head> heads;
+        private final List<String> dropped;
+
+        private MergeIterator(List<RangeScan> scans, List<String> dropped) {
+            this.heads = new PriorityQueue<>((a, b) -> Arrays.compareUnsigned(a.key, b.key));
+            this.dropped = dropped;
+            for (RangeScan scan : scans) {
+                this.advance(scan);
+            }
+        }
+
+        private void advance(RangeScan scan) {
+            if (scan.hasNext()) {
+                Row row = scan.next();
+                this.heads.add(new Head(scan, row, keyCodec.encode(row)));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.heads.isEmpty();
+        }
+
+        @Override
+        public Row next() {
+            Head head = this.heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            this.advance(head.scan);
+            head.row.getData().keySet().removeAll(this.dropped);
+            return head.row;
+        }
+    }
+
+    private static final class Head {
+        private final RangeScan scan;
+        private final Row row;
+        private final byte[] key;
+
+        private Head(RangeScan scan, Row row, byte[] key) {
+            this.scan = scan;
+            this.row = row;
+            this.key = key;
+        }
+    }
+
+    // each partition counts its rows in parallel already, see Table.count
+    public long count(Filter... filters) throws Exception {
+        long count = 0;
+        for (Table partition : this.partitions) {
+            count += partition.count(filters);
+        }
+        return count;
+    }
+
+    public void flush() throws Exception {
+        for (Table partition : this.partitions) {
+            partition.flush();
+        }
+    }
+
+    // closes every partition even when one fails, the first failure is thrown, as an IOException unless unchecked
+    @Override
+    public void close() throws IOException {
+        Exception failed = null;
+        for (Table partition : this.partitions) {
+            try {
+                partition.close();
+            } catch (Exception e) {
+                if (failed == null) {
+                    failed = e;
+                }
+            }
+        }
+        if (failed instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        if (failed instanceof IOException e) {
+            throw e;
+        }
+        if (failed instanceof RuntimeException e) {
+            throw e;
+        }
+        if (failed != null) {
+            throw new IOException("failed to close table " + this.name, failed);
+        }
+    }
+
+    private Path layoutPath() {
+        return Path.of(String.format("%s.partitions", this.name));
+    }
+
+    // checks that a table is opened the way it was created, false for a new table
+    private boolean checkLayout(int partitions) throws Exception {
+        Path path = this.layoutPath();
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new Exception("not a partition layout: " + path);
+            }
+            boolean same = in.readInt() == partitions;
+            int splits = in.readInt();
+            same &= (splits == -1) == (this.splitKeys == null);
+            for (int i = 0; i < splits; i++) {
+                byte[] key = new byte[in.readShort()];
+                in.readFully(key);
+                same &= this.splitKeys != null && splits == this.splitKeys.length && Arrays.equals(key, this.splitKeys[i]);
+            }
+            if (!same) {
+                throw new IllegalArgumentException("table " + this.name + " was created with other partitions, see " + path);
+            }
+        }
+        return true;
+    }
+
+    // the layout of a new table, once its partitions opened
+    private void saveLayout(int partitions) throws Exception {
+        Path path = this.layoutPath();
+        Path written = Path.of(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(written)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(partitions);
+            out.writeInt(this.splitKeys == null ? -1 : this.splitKeys.length);
+            if (this.splitKeys != null) {
+                for (byte[] key : this.splitKeys) {
+                    out.writeShort(key.length);
+                    out.write(key);
+                }
+            }
+        }
+        Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
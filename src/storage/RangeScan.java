@@ -0,0 +1,202 @@
+package storage;
+
+import models.Filter;
+import models.Key;
+import models.Row;
+import models.RowView;
+import tree.LeafNode;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+
+/*
+    Lazy cursor over the keys in [from, to], or [from, to) for the parts of a parallel scan. It descends once to the first leaf and then
+    follows the next pointers of the leaves, only the current leaf is pinned.
+    The position is tracked by key rather than by index so rows inserted into
+    the current leaf between calls don't make the cursor skip or repeat rows.
+    The leaf is latched only while a row is read, never between calls, so the
+    caller may change the table while iterating. The pinned leaf is not merged away.
+    Close it when stopping early to release the pinned leaf.
+    A filter is checked against the records in the page, rows it rules out are passed over
+    while the leaf is latched and never decoded. With zone maps the leaves whose summary rules
+    out every row are not read at all.
+ */
+public class RangeScan implements Iterator<Row>, AutoCloseable {
+    private final Table table;
+    private final byte[] to;
+    private final boolean toInclusive;
+    private final int limit;
+    private final int readAhead;
+    private final String[] columns;
+    // null when every row in the range is returned
+    private final Predicate<RowView> filter;
+    // null unless the table keeps zone maps and there are filters
+    private final Predicate<ZoneMap.Zone> zoneFilter;
+    private final RowView view;
+    private LeafNode leaf;
+    // smallest key that has not been returned yet
+    private byte[] nextKey;
+    private int returned;
+    private boolean done;
+    private Row pending;
+    // leaves already loaded ahead of the current one
+    private int prefetched;
+
+    RangeScan(Table table, byte[] from, byte[] to, int limit, int readAhead, String[] columns) throws Exception {
+        this(table, from, to, true, List.of(), limit, readAhead, columns);
+    }
+
+    RangeScan(Table table, byte[] from, byte[] to, boolean toInclusive, List<Filter> filters, int limit, int readAhead, String[] columns) throws Exception {
+        this.table = table;
+        this.to = to;
+        this.toInclusive = toInclusive;
+        this.filter = table.bind(filters);
+        this.zoneFilter = table.bindZones(filters);
+        this.limit = limit;
+        this.readAhead = readAhead;
+        this.columns = columns;
+        this.view = table.newRowView();
+        this.nextKey = from;
+        int cmp = Arrays.compareUnsigned(from, to);
+        this.done = cmp > 0 || (cmp == 0 && !toInclusive);
+        if (!this.done) {
+            Lock tree = table.sharedTreeLock();
+            tree.lock();
+            try {
+                this.leaf = table.seekLeaf(from);
+                if (this.zoneFilter != null) {
+                    this.skipFirst();
+                }
+            } finally {
+                tree.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (pending == null && !done) {
+            try {
+                pending = advance();
+            } catch (Exception e) {
+                close();
+                throw new RuntimeException("range scan failed", e);
+            }
+        }
+        return pending != null;
+    }
+
+    @Override
+    public Row next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Row row = pending;
+        pending = null;
+        return row;
+    }
+
+    private Row advance() throws Exception {
+        Row row = null;
+        boolean finished = false;
+        Lock tree = table.sharedTreeLock();
+        tree.lock();
+        Lock latch = table.latchShared(leaf);
+        try {
+            while (true) {
+                int idx = leaf.findKey(nextKey);
+                if (idx < 0) {
+                    idx = -idx - 1;
+                }
+                int count = leaf.getKeyCount();
+                while (idx < count && !pastEnd(idx) && filter != null && !filter.test(table.view(leaf, idx, view))) {
+                    idx++;
+                }
+                if (idx < count) {
+                    if (pastEnd(idx)) {
+                        finished = true;
+                        break;
+                    }
+                    row = table.view(leaf, idx, view).toRow(columns);
+                    returned++;
+                    nextKey = Key.successor(leaf.getKey(idx));
+                    if (nextKey == null || (limit > 0 && returned >= limit)) {
+                        finished = true;
+                    }
+                    break;
+                }
+                int next = leaf.getNext();
+                if (zoneFilter != null) {
+                    next = table.skipLeaves(next, to, toInclusive, zoneFilter);
+                }
+                if (next == -1) {
+                    finished = true;
+                    break;
+                }
+                readAhead(next);
+                // the next leaf is latched before the current one is let go of
+                LeafNode nextLeaf = table.pinLeaf(next);
+                Lock nextLatch = table.latchShared(nextLeaf);
+                latch.unlock();
+                table.unpinLeaf(leaf);
+                leaf = nextLeaf;
+                latch = nextLatch;
+            }
+        } finally {
+            latch.unlock();
+            tree.unlock();
+        }
+        if (finished) {
+            close();
+        }
+        return row;
+    }
+
+    // the parts of a parallel scan are often a leaf each, the one sought is skipped like the rest
+    private void skipFirst() throws Exception {
+        int first = leaf.getNodeNo();
+        int no = table.skipLeaves(first, to, toInclusive, zoneFilter);
+        if (no == first) {
+            return;
+        }
+        table.unpinLeaf(leaf);
+        leaf = null;
+        if (no == -1) {
+            done = true;
+        } else {
+            leaf = table.pinLeaf(no);
+        }
+    }
+
+    private boolean pastEnd(int idx) {
+        int cmp = leaf.compareKey(idx, to);
+        return cmp > 0 || (cmp == 0 && !toInclusive);
+    }
+
+    // once the cursor catches up with the loaded leaves the next batch is read in one go
+    private void readAhead(int next) throws Exception {
+        // the leaves loaded would mostly be the ones the zone map skips
+        if (readAhead <= 0 || zoneFilter != null) {
+            return;
+        }
+        if (prefetched == 0) {
+            prefetched = table.readAhead(next, readAhead, to);
+        }
+        if (prefetched > 0) {
+            prefetched--;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (leaf != null) {
+            table.unpinLeaf(leaf);
+            leaf = null;
+        }
+        done = true;
+    }
+}
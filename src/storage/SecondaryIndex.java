@@ -0,0 +1,163 @@
+package storage;
+
+import models.Column;
+import models.KeyCodec;
+import models.Row;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/*
+    Index on one column of a table, kept in a B+ tree file of its own (<table>.<column>.bin).
+    Its entries are the column value followed by the primary key, and both together are the
+    key of the index tree: rows with the same value are ordered by primary key and no two
+    entries are ever equal. Looking a value up scans the entries starting with it and reads
+    each row from the table by its primary key.
+ */
+class SecondaryIndex {
+    private final String column;
+    private final Table table;
+    private final Table index;
+    private final KeyCodec primaryKey;
+
+    private SecondaryIndex(Table table, String column, Table index) {
+        this.table = table;
+        this.column = column;
+        this.index = index;
+        this.primaryKey = table.getKeyCodec();
+    }
+
+    static String getName(String table, String column) {
+        return table + "." + column;
+    }
+
+    static boolean exists(String table, String column) {
+        return Files.exists(Path.of(String.format("%s.bin", getName(table, column))));
+    }
+
+    // opens the index file of the column, an empty one when it doesn't exist yet
+    static SecondaryIndex open(Table table, String name, String column, int pageSize, TableConfig config) throws Exception {
+        List<Column<?>> columns = new ArrayList<>();
+        columns.add(table.getColumn(column));
+        List<String> keyColumns = new ArrayList<>();
+        keyColumns.add(column);
+        for (Column<?> keyColumn : table.getKeyCodec().getColumns()) {
+            if (keyColumn.getName().equals(column)) {
+                throw new IllegalArgumentException("key column " + column + " is already indexed by the table");
+            }
+            columns.add(keyColumn);
+            keyColumns.add(keyColumn.getName());
+        }
+        TableConfig indexConfig = new TableConfig();
+        indexConfig.setCacheSize(config.getCacheSize());
+        indexConfig.setStorageMode(config.getStorageMode());
+        indexConfig.setWalEnabled(config.isWalEnabled());
+        indexConfig.setCheckpointIntervalMillis(config.getCheckpointIntervalMillis());
+        indexConfig.setCheckpointDirtyPages(config.getCheckpointDirtyPages());
+        indexConfig.setFlushLowWatermark(config.getFlushLowWatermark());
+        indexConfig.setMaxDirtyPages(config.getMaxDirtyPages());
+        indexConfig.setJmxEnabled(config.isJmxEnabled());
+        indexConfig.setWarmUpMode(config.getWarmUpMode());
+        indexConfig.setHotPagesIntervalMillis(config.getHotPagesIntervalMillis());
+        indexConfig.setKeyColumns(keyColumns.toArray(new String[0]));
+        return new SecondaryIndex(table, column, new Table(getName(name, column), columns, pageSize, indexConfig, table.getDatabase()));
+    }
+
+    String getColumn() {
+        return column;
+    }
+
+    // entries of all the rows of the table, sorted and loaded bottom up. The index has to be empty
+    void build() throws Exception {
+        List<Row> entries = new ArrayList<>();
+        this.table.scanRows(row -> entries.add(this.entry(row)), this.entryColumns());
+        entries.sort((a, b) -> Arrays.compareUnsigned(this.index.keyOf(a).getBytes(), this.index.keyOf(b).getBytes()));
+        this.index.bulkLoad(entries.iterator());
+    }
+
+    // columns of the table an entry is made of
+    String[] entryColumns() {
+        List<Column<?>> keyColumns = this.primaryKey.getColumns();
+        String[] names = new String[keyColumns.size() + 1];
+        names[0] = this.column;
+        for (int i = 0; i < keyColumns.size(); i++) {
+            names[i + 1] = keyColumns.get(i).getName();
+        }
+        return names;
+    }
+
+    // both are called under the latch of the row, the changes are finished once it is let go of
+    Table.Change add(Row row) throws Exception {
+        return this.index.insertEntry(this.entry(row));
+    }
+
+    Table.Change remove(Row row) throws Exception {
+        return this.index.deleteEntry(this.index.keyOf(this.entry(row)));
+    }
+
+    // whether the row has a different value for the column than the old one
+    boolean changed(Row oldRow, Row newRow) {
+        return !oldRow.get(this.column).equals(newRow.get(this.column));
+    }
+
+    /*
+        rows whose value is between from and to, both included, in the order of the index.
+        The entry of a new value is added under the latch of its row, the one of the old value
+        is removed only once the change is committed, so a row read after its entry may have
+        moved on since: only rows still holding the value of the entry are returned. The stream
+        has to be closed
+     */
+    Stream<Row> scan(Object from, Object to, String... columns) throws Exception {
+        KeyCodec codec = this.index.getKeyCodec();
+        Stream<Row> entries = this.index.stream(codec.first(from), codec.last(to));
+        String[] fetched = this.withColumn(columns);
+        return entries.map(entry -> {
+            try {
+                Row row = this.table.search(this.primaryKey.keyOf(entry), fetched);
+                return row != null && Objects.equals(row.get(this.column), entry.get(this.column)) ? this.project(row, columns) : null;
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("failed to read row for index " + this.column, e);
+            }
+        }).filter(Objects::nonNull);
+    }
+
+    // the value is needed to check the row, it is dropped again unless it was asked for
+    private String[] withColumn(String[] columns) {
+        if (columns.length == 0 || Arrays.asList(columns).contains(this.column)) {
+            return columns;
+        }
+        String[] fetched = Arrays.copyOf(columns, columns.length + 1);
+        fetched[columns.length] = this.column;
+        return fetched;
+    }
+
+    private Row project(Row row, String[] columns) {
+        if (columns.length != 0 && !Arrays.asList(columns).contains(this.column)) {
+            row.getData().remove(this.column);
+        }
+        return row;
+    }
+
+    private Row entry(Row row) {
+        Row entry = new Row(row.getId());
+        for (String name : this.entryColumns()) {
+            entry.put(name, row.get(name));
+        }
+        return entry;
+    }
+
+    void flush() throws Exception {
+        this.index.flush();
+    }
+
+    void close() throws Exception {
+        this.index.close();
+    }
+}
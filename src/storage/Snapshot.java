@@ -0,0 +1,212 @@
+package storage;
+
+import interfaces.Node;
+import models.Filter;
+import models.Key;
+import models.Row;
+import models.RowView;
+import tree.InternalNode;
+import tree.LeafNode;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+    Read only view of a table as it was when the snapshot was taken, see Table.snapshot.
+    Every page is read as a copy of its own: the image the table kept for the snapshot when the
+    page changed since, the page itself otherwise. Nothing stays pinned or latched between
+    reads, so writers, merges included, carry on while a snapshot is read, however long.
+    Close it once done, the table keeps the images of changed pages until then.
+ */
+public class Snapshot implements AutoCloseable {
+    private final Table table;
+    private final long epoch;
+    private final int root;
+    private volatile boolean closed;
+
+    Snapshot(Table table, long epoch, int root) {
+        this.table = table;
+        this.epoch = epoch;
+        this.root = root;
+    }
+
+    public Row search(int id, String... columns) throws Exception {
+        return this.search(this.table.key(id), columns);
+    }
+
+    public Row search(Key key, String... columns) throws Exception {
+        byte[] id = key.getBytes();
+        LeafNode leafNode = this.seekLeaf(id);
+        int idx = leafNode.findKey(id);
+        if (idx < 0) {
+            return null;
+        }
+        return leafNode.wrap(idx, this.table.newSnapshotRowView(this.epoch)).toRow(columns);
+    }
+
+    // every row, in key order
+    public Stream<Row> stream(String... columns) throws Exception {
+        return this.stream(List.of(), columns);
+    }
+
+    public Stream<Row> stream(List<Filter> filters, String... columns) throws Exception {
+        byte[] min = this.table.getKeyCodec().min();
+        byte[] max = this.table.getKeyCodec().max();
+        return this.stream(min, max, filters, columns);
+    }
+
+    public Stream<Row> stream(Key from, Key to, String... columns) throws Exception {
+        return this.stream(from, to, List.of(), columns);
+    }
+
+    public Stream<Row> stream(Key from, Key to, List<Filter> filters, String... columns) throws Exception {
+        return this.stream(from.getBytes(), to.getBytes(), filters, columns);
+    }
+
+    private Stream<Row> stream(byte[] from, byte[] to, List<Filter> filters, String[] columns) throws Exception {
+        Cursor cursor = new Cursor(from, to, this.table.bind(filters), columns);
+        Spliterator<Row> spliterator = Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    public long count(Filter... filters) throws Exception {
+        String column = this.table.getKeyCodec().getColumns().get(0).getName();
+        try (Stream<Row> rows = this.stream(List.of(filters), column)) {
+            return rows.count();
+        }
+    }
+
+    // keys of every node, a level per line
+    public void printTree() throws Exception {
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(this.root);
+        while (!queue.isEmpty()) {
+            int s = queue.size();
+            for (int i = 0; i < s; i++) {
+                Node node = this.read(queue.remove());
+                if (node.getKeyCount() > 0) {
+                    System.out.print("[");
+                    for (int k = 0; k < node.getKeyCount(); k++) {
+                        System.out.print(this.table.getKeyCodec().decode(node.getKey(k)) + " ");
+                    }
+                    System.out.print("] ");
+                }
+                if (!node.isLeafNode()) {
+                    InternalNode internalNode = (InternalNode) node;
+                    for (int k = 0; k < internalNode.getValueCount(); k++) {
+                        queue.add(internalNode.getValue(k));
+                    }
+                }
+            }
+            System.out.println();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+            this.table.closeSnapshot(this.epoch);
+        }
+    }
+
+    private Node read(int no) throws Exception {
+        if (this.closed) {
+            throw new IllegalStateException("snapshot is closed");
+        }
+        return this.table.readSnapshotNode(no, this.epoch);
+    }
+
+    // nothing changes in a snapshot, the right links only matter for a split the snapshot caught half done
+    private LeafNode seekLeaf(byte[] key) throws Exception {
+        Node node = this.read(this.root);
+        while (true) {
+            if (node.getNext() != -1 && Arrays.compareUnsigned(key, node.getHighKey()) >= 0) {
+                node = this.read(node.getNext());
+            } else if (node.isLeafNode()) {
+                return (LeafNode) node;
+            } else {
+                InternalNode internalNode = (InternalNode) node;
+                node = this.read(internalNode.getValue(internalNode.findChild(key)));
+            }
+        }
+    }
+
+    // follows the next pointers from the leaf of from, every leaf is a private copy
+    private class Cursor implements Iterator<Row> {
+        private final byte[] to;
+        private final Predicate<RowView> filter;
+        private final String[] columns;
+        private final RowView view;
+        private LeafNode leaf;
+        private int idx;
+        private Row pending;
+
+        private Cursor(byte[] from, byte[] to, Predicate<RowView> filter, String[] columns) throws Exception {
+            this.to = to;
+            this.filter = filter;
+            this.columns = columns;
+            this.view = table.newSnapshotRowView(epoch);
+            if (Arrays.compareUnsigned(from, to) <= 0) {
+                this.leaf = seekLeaf(from);
+                int idx = this.leaf.findKey(from);
+                this.idx = idx >= 0 ? idx : -idx - 1;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.pending == null && this.leaf != null) {
+                try {
+                    this.pending = this.advance();
+                } catch (Exception e) {
+                    this.leaf = null;
+                    throw new RuntimeException("snapshot scan failed", e);
+                }
+            }
+            return this.pending != null;
+        }
+
+        @Override
+        public Row next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Row row = this.pending;
+            this.pending = null;
+            return row;
+        }
+
+        private Row advance() throws Exception {
+            while (true) {
+                if (this.idx < this.leaf.getKeyCount()) {
+                    if (this.leaf.compareKey(this.idx, this.to) > 0) {
+                        this.leaf = null;
+                        return null;
+                    }
+                    RowView row = this.leaf.wrap(this.idx++, this.view);
+                    if (this.filter == null || this.filter.test(row)) {
+                        return row.toRow(this.columns);
+                    }
+                    continue;
+                }
+                int next = this.leaf.getNext();
+                if (next == -1) {
+                    this.leaf = null;
+                    return null;
+                }
+                this.leaf = (LeafNode) read(next);
+                this.idx = 0;
+            }
+        }
+    }
+}
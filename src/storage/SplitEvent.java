@@ -0,0 +1,26 @@
+package storage;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// a full node split in two, the duration covers moving the upper half to the new node
+@Name("db.Split")
+@Label("Node Split")
+@Category({"Database", "B+ Tree"})
+class SplitEvent extends jdk.jfr.Event {
+    @Label("Table")
+    String table;
+
+    @Label("Page")
+    int page;
+
+    @Label("New Page")
+    int newPage;
+
+    @Label("Level")
+    int level;
+
+    @Label("Leaf")
+    boolean leaf;
+}
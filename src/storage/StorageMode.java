@@ -0,0 +1,8 @@
+package storage;
+
+public enum StorageMode {
+    // seek + read into a fresh page sized array for every page
+    FILE,
+    // pages are read in place from the memory mapped file
+    MMAP
+}
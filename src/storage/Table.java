@@ -1,49 +1,181 @@
 package storage;
 
 import interfaces.Node;
+import interfaces.PageStore;
 import models.Column;
+import models.Filter;
+import models.Key;
+import models.KeyCodec;
 import models.Row;
+import models.RowCodec;
+import models.RowView;
 import tree.InternalNode;
 import tree.LeafNode;
 import tree.MetadataNode;
+import tree.OverflowNode;
 
-import java.io.*;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class Table {
+public final class Table {
+    // both are followed by the high key
     private static final int LEAF_PAGE_HEADER_SIZE = 17;
-    private static final int INTERNAL_PAGE_HEADER_SIZE = 13;
+    private static final int INTERNAL_PAGE_HEADER_SIZE = 17;
+    // slots keep record offsets in 2 bytes
+    private static final int MAX_PAGE_SIZE = 1 << 16;
+    // a record may take at most this share of a leaf, so a split always leaves both halves fitting
+    private static final int MIN_RECORDS_PER_LEAF = 4;
+    private static final int DEFAULT_READ_AHEAD = 4;
+    // dirty pages copied ahead of a write back at most
+    private static final int MAX_RUN_PAGES = 64;
+    private static final double DEFAULT_FILL_FACTOR = 1.0;
     private String table;
     private List<Column<?>> columns;
-    private HashSet<Node> updatedNodes;
+    private BufferPool bufferPool;
+    /*
+        taken shared by every change to the tree, which then latch the pages they use, and
+        exclusively by what needs the tree at rest: checkpoint snapshots, bulk loads.
+        Readers don't take it, they validate the versions of the pages they read
+     */
+    private final ReentrantReadWriteLock treeLock;
     private MetadataNode metadata;
-    private Node root;
-    private RandomAccessFile raf;
+    private PageStore store;
+    private final TableConfig config;
     private final int pageSize;
+    // entries a leaf holds at most, when all its records are as small as they get
     private final int maxLeafNodeKeys;
     private final int maxInternalNodeKeys;
+    // largest record kept in a leaf, bigger rows move their largest strings to overflow pages
+    private final int maxRecordSize;
+    // nodes other than the root are rebalanced once they drop below these
+    private final int minLeafNodeBytes;
+    private final int minInternalNodeKeys;
+    private final KeyCodec keyCodec;
+    private final RowCodec rowCodec;
+    // leaf pages loaded ahead of a range scan
+    private int readAhead;
+    // null unless the write ahead log is enabled
+    private WriteAheadLog wal;
+    private PageFlusher flusher;
+    // null unless the table belongs to a database
+    private final Database database;
+    // the flusher is asked for a round at the high watermark, writers wait for it at the limit
+    private final int maxDirtyPages;
+    private final int flushHighWatermark;
+    private final int flushLowWatermark;
+    private final Object checkpointLock = new Object();
+    // with the log, metadata changes are written by the next checkpoint
+    private boolean metadataDirty;
+    // set while replaying the log, changes are not logged again
+    private boolean recovering;
+    // bumped before a page goes on the free list, lets optimistic descents notice page reuse
+    private volatile long freedPages;
+    // kept up to date by every change while the row is latched, added under the exclusive tree lock
+    private final List<SecondaryIndex> indexes = new CopyOnWriteArrayList<>();
+    // keys of the table, null when disabled. Replaced under the exclusive tree lock
+    private volatile BloomFilter filter;
+    // summaries of the leaves, null when disabled
+    private volatile ZoneMap zones;
+    // pages as the open snapshots saw them, see snapshot
+    private final VersionStore versions;
+    private final TableStats stats;
+    // null unless the stats are registered with JMX
+    private ObjectName mbeanName;
+    // loads the hot pages after open, null unless it runs in the background
+    private Thread warmUpThread;
+    private volatile boolean warmUpStopped;
+    private final CountDownLatch warmedUp = new CountDownLatch(1);
+    // when the list of hot pages was last saved, by System.nanoTime
+    private volatile long hotPagesSaved;
 
     public Table(String name, List<Column<?>> columns, int pageSize) throws Exception {
+        this(name, columns, pageSize, new TableConfig());
+    }
+
+    public Table(String name, List<Column<?>> columns, int pageSize, long cacheSize) throws Exception {
+        this(name, columns, pageSize, cacheSize, StorageMode.FILE);
+    }
+
+    public Table(String name, List<Column<?>> columns, int pageSize, long cacheSize, StorageMode storageMode) throws Exception {
+        this(name, columns, pageSize, config(cacheSize, storageMode));
+    }
+
+    public Table(String name, List<Column<?>> columns, int pageSize, TableConfig config) throws Exception {
+        this(name, columns, pageSize, config, null);
+    }
+
+    // a table of the database shares its page cache and flusher, see Database
+    Table(String name, List<Column<?>> columns, int pageSize, TableConfig config, Database database) throws Exception {
         if (columns.isEmpty()) {
             throw new IllegalArgumentException("Columns can't be empty.");
         }
         if (name.isEmpty()) {
             throw new IllegalArgumentException("Table name is required.");
         }
+        if (pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size can't be more than " + MAX_PAGE_SIZE + " bytes.");
+        }
 
         this.table = name;
         this.columns = columns;
         this.pageSize = pageSize;
-        this.updatedNodes = new HashSet<>();
-        metadata = new MetadataNode(pageSize, name);
+        this.config = config;
+        this.database = database;
+        if (database != null) {
+            this.bufferPool = new BufferPool(database.getPageCache(), pageSize, this::readNode, this::writeNode);
+        } else {
+            this.bufferPool = new BufferPool(config.getCacheSize(), pageSize, this::readNode, this::writeNode);
+        }
+        this.treeLock = new ReentrantReadWriteLock();
+        this.versions = new VersionStore(config.getSnapshotMemory(), Path.of(String.format("%s.snap", name)));
+        this.stats = new TableStats(this.bufferPool, this::getTreeHeight, this.versions);
+        metadata = new MetadataNode(pageSize);
+        this.keyCodec = KeyCodec.of(columns, config.getKeyColumns());
+        this.rowCodec = new RowCodec(columns);
+        this.maxRecordSize = this.getMaxRecordSize();
         this.maxLeafNodeKeys = this.getMaxKeys();
+        this.readAhead = DEFAULT_READ_AHEAD;
         this.maxInternalNodeKeys = 5;
+        this.minLeafNodeBytes = this.getLeafCapacity() / 2;
+        this.minInternalNodeKeys = this.maxInternalNodeKeys / 2;
+        // limits of this table, the dirty pages of all tables sharing the cache are held back by it as well
+        this.maxDirtyPages = Math.max(2, Math.min(config.getMaxDirtyPages(), this.bufferPool.getCapacity() * 3 / 4));
+        this.flushHighWatermark = Math.min(config.getCheckpointDirtyPages(), this.maxDirtyPages);
+        this.flushLowWatermark = Math.min(config.getFlushLowWatermark(), this.flushHighWatermark / 2);
+        if (this.getMaxInternalNodeKeys() < this.maxInternalNodeKeys) {
+            throw new Exception("Key is too big either reduce the size of the key columns or increase the page size");
+        }
         this.initializeTable();
     }
 
+    private static TableConfig config(long cacheSize, StorageMode storageMode) {
+        TableConfig config = new TableConfig();
+        config.setCacheSize(cacheSize);
+        config.setStorageMode(storageMode);
+        return config;
+    }
+
     private boolean isTablePresent() {
         Path path = Path.of(String.format("%s.bin", this.table));
         return Files.exists(path);
@@ -51,88 +183,712 @@ public class Table {
 
     private void initializeTable() throws Exception {
         String path = String.format("%s.bin", this.table);
-        if (this.isTablePresent()) {
-            FileInputStream fis = new FileInputStream(path);
-            byte[] data = new byte[pageSize];
-            fis.read(data);
-            metadata.unpack(data);
+        boolean present = this.isTablePresent();
+        if (this.config.getStorageMode() == StorageMode.MMAP) {
+            this.store = new MappedPageStore(path, this.pageSize);
         } else {
-            FileOutputStream fos = new FileOutputStream(path);
-            fos.write(metadata.pack());
+            this.store = new FilePageStore(path, this.pageSize);
+        }
+        this.store = new MeteredPageStore(this.store, this.stats, this.table);
+        if (present) {
+            metadata.unpack(this.store.read(0));
+        } else {
+            this.store.write(0, metadata.pack());
         }
-        this.raf = new RandomAccessFile(path, "rw");
         // set the root node at startup
         int nodeNo = this.metadata.getRootNodeNumber();
         if (nodeNo == 0) {
-            root = new LeafNode(this.metadata.getNextPage(), this.pageSize, this.maxLeafNodeKeys);
-            this.metadata.setRootNodeNumber(root.getNodeNo());
-            this.saveMetadata();
-            this.updatedNodes.add(root);
+            LatchStack latches = this.changeLatches();
+            try {
+                Node root = this.newLeafNode(latches);
+                this.metadata.setRootNodeNumber(root.getNodeNo());
+                // the empty root is written right away so the file is valid without the log
+                this.bufferPool.flush(root.getNodeNo());
+                this.store.write(0, this.metadata.pack());
+            } finally {
+                latches.releaseAll();
+            }
+        }
+
+        if (this.config.isWalEnabled()) {
+            String walPath = String.format("%s.wal", this.table);
+            if (!present) {
+                // log left behind by an earlier table with the same name
+                Files.deleteIfExists(Path.of(walPath));
+            }
+            this.wal = new WriteAheadLog(walPath);
+            this.bufferPool.setNoSteal(true);
+            this.recover();
+        }
+        this.openFilter();
+        this.openZones();
+        if (this.database != null) {
+            this.flusher = this.database.getFlusher();
+            this.flusher.add(this);
         } else {
-            root = this.getNode(nodeNo);
+            this.flusher = new PageFlusher(this, this.config.getCheckpointIntervalMillis());
+            this.flusher.start();
+        }
+
+        // indexes are found by their files
+        for (Column<?> column : this.columns) {
+            if (!this.keyCodec.getColumns().contains(column) && SecondaryIndex.exists(this.table, column.getName())) {
+                this.indexes.add(SecondaryIndex.open(this, this.table, column.getName(), this.pageSize, this.config));
+            }
+        }
+        if (this.config.isJmxEnabled()) {
+            this.registerStats();
+        }
+        this.startWarmUp();
+    }
+
+    // a table opened twice under the same name keeps the first registration
+    private void registerStats() throws Exception {
+        ObjectName name = new ObjectName("db.storage:type=Table,name=" + ObjectName.quote(this.table));
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this.stats, name);
+            this.mbeanName = name;
+        } catch (InstanceAlreadyExistsException e) {
+            // not ours to unregister on close
+        }
+    }
+
+    private Path hotPagesPath() {
+        return Path.of(String.format("%s.hot", this.table));
+    }
+
+    private void startWarmUp() {
+        switch (this.config.getWarmUpMode()) {
+            case OFF -> this.warmedUp.countDown();
+            case BLOCKING -> this.warmUp();
+            case BACKGROUND -> {
+                this.warmUpThread = new Thread(this::warmUp, "warm-up-" + this.table);
+                this.warmUpThread.setDaemon(true);
+                this.warmUpThread.start();
+            }
+        }
+    }
+
+    /*
+        loads the upper internal levels, then the pages of the hot page list saved by the last run
+        until the cache is full. The pages of the list are read in page order, hottest ones chosen first.
+        Pages that can't be read any more are passed over, the list may be older than the file.
+        Any other failure ends the warm-up, see TableStats.getWarmUpFailure
+     */
+    private void warmUp() {
+        long start = System.nanoTime();
+        int loaded = 0;
+        try {
+            loaded += this.warmUpInternalNodes();
+            Set<Integer> seen = new HashSet<>();
+            List<Integer> pages = new ArrayList<>();
+            int room = this.bufferPool.getFreeFrames();
+            for (int no : HotPageList.read(this.hotPagesPath())) {
+                if (pages.size() == room) {
+                    break;
+                }
+                if (no > 0 && no < this.metadata.getTotalPages() && this.bufferPool.peek(no) == null && seen.add(no)) {
+                    pages.add(no);
+                }
+            }
+            pages.sort(null);
+            for (int no : pages) {
+                if (this.warmUpStopped) {
+                    break;
+                }
+                loaded += this.warmUpPage(no);
+            }
+        } catch (Exception e) {
+            // the table works without the pages, the failure is kept in the stats
+            this.stats.warmUpFailed(e);
+        } finally {
+            this.stats.warmedUp(loaded, System.nanoTime() - start);
+            this.hotPagesSaved = System.nanoTime();
+            this.warmedUp.countDown();
+        }
+    }
+
+    /*
+        level by level from the root, each one along its right links. With the small fanout the
+        lowest levels are big, they take at most a quarter of the cache and the list picks the rest
+     */
+    private int warmUpInternalNodes() throws Exception {
+        int loaded = 0;
+        int limit = Math.max(1, this.bufferPool.getCapacity() / 4);
+        this.treeLock.readLock().lock();
+        try {
+            int first = this.metadata.getRootNodeNumber();
+            while (first != -1) {
+                int no = first;
+                first = -1;
+                while (no != -1 && !this.warmUpStopped && loaded < limit) {
+                    if (this.bufferPool.peek(no) == null) {
+                        loaded++;
+                    }
+                    Node node = this.bufferPool.fetch(no);
+                    Lock latch = node.getLatch().asReadLock();
+                    latch.lock();
+                    try {
+                        if (node.isLeafNode()) {
+                            return loaded;
+                        }
+                        if (first == -1 && node.getLevel() > 1) {
+                            first = ((InternalNode) node).getValue(0);
+                        }
+                        no = node.getNext();
+                    } finally {
+                        latch.unlock();
+                        this.bufferPool.unpin(node);
+                    }
+                }
+            }
+        } finally {
+            this.treeLock.readLock().unlock();
+        }
+        return loaded;
+    }
+
+    // the shared tree lock keeps merges from freeing the page while it is read
+    private int warmUpPage(int no) {
+        this.treeLock.readLock().lock();
+        try {
+            if (this.bufferPool.peek(no) != null) {
+                return 0;
+            }
+            this.bufferPool.unpin(this.bufferPool.fetch(no));
+            return 1;
+        } catch (Exception e) {
+            // freed and cut off since the list was saved
+            return 0;
+        } finally {
+            this.treeLock.readLock().unlock();
+        }
+    }
+
+    // returns once the pages are loaded, at once unless the warm-up runs in the background
+    public void awaitWarmUp() throws InterruptedException {
+        this.warmedUp.await();
+    }
+
+    private void stopWarmUp() throws InterruptedException {
+        this.warmUpStopped = true;
+        if (this.warmUpThread != null) {
+            this.warmUpThread.join();
+        }
+    }
+
+    private void saveHotPages() throws Exception {
+        HotPageList.write(this.hotPagesPath(), this.bufferPool.getHotPages());
+        this.hotPagesSaved = System.nanoTime();
+    }
+
+    public String getName() {
+        return this.table;
+    }
+
+    // null unless the table belongs to a database
+    Database getDatabase() {
+        return this.database;
+    }
+
+    public TableStats getStats() {
+        return this.stats;
+    }
+
+    // levels from the root down to the leaves, read without latching
+    private int getTreeHeight() {
+        try {
+            return this.bufferPool.get(this.metadata.getRootNodeNumber()).getLevel() + 1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private Path filterPath() {
+        return Path.of(String.format("%s.bloom", this.table));
+    }
+
+    /*
+        the filter file is only written by close and removed again on open, a table that was not
+        closed has none and its filter is rebuilt from the keys. It goes away even when the filter
+        is disabled, the keys may change without it being kept up to date
+     */
+    private void openFilter() throws Exception {
+        Path path = this.filterPath();
+        BloomFilter filter = null;
+        if (this.config.getBloomFilterBitsPerKey() > 0 && Files.exists(path)) {
+            filter = BloomFilter.read(path);
+        }
+        Files.deleteIfExists(path);
+        if (this.config.getBloomFilterBitsPerKey() > 0) {
+            if (filter != null) {
+                this.filter = filter;
+            } else {
+                this.rebuildFilter();
+            }
+        }
+    }
+
+    /*
+        new filter with every key of the table, sized for twice as many keys as there are and at
+        least the configured number. Run on open and after a bulk load, a filter filling up while
+        rows are inserted grows instead, see growFilter. Inserts wait for it, searches keep using
+        the old one
+     */
+    private void rebuildFilter() throws Exception {
+        this.treeLock.writeLock().lock();
+        try {
+            List<byte[]> keys = new ArrayList<>();
+            String[] keyColumns = this.keyCodec.getColumns().stream().map(Column::getName).toArray(String[]::new);
+            this.scan(view -> keys.add(this.keyCodec.encode(view.toRow(keyColumns))));
+            BloomFilter filter = BloomFilter.create(Math.max(this.config.getBloomFilterKeys(), 2L * keys.size()), this.config.getBloomFilterBitsPerKey());
+            for (byte[] key : keys) {
+                filter.add(key);
+            }
+            this.filter = filter;
+        } finally {
+            this.treeLock.writeLock().unlock();
+        }
+    }
+
+    private Path zonesPath() {
+        return Path.of(String.format("%s.zones", this.table));
+    }
+
+    // like the filter file, the zone map file is only there while the table is closed
+    private void openZones() throws Exception {
+        Path path = this.zonesPath();
+        if (this.config.isZoneMapsEnabled()) {
+            ZoneMap zones = new ZoneMap(this.columns, this.rowCodec.getOffsets());
+            if (Files.exists(path) && zones.read(path)) {
+                this.zones = zones;
+            } else {
+                this.rebuildZones();
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    // summarizes every leaf again, walking the chain while nothing else runs
+    private void rebuildZones() throws Exception {
+        LatchStack latches = new LatchStack(this.bufferPool);
+        this.treeLock.writeLock().lock();
+        try {
+            ZoneMap zones = new ZoneMap(this.columns, this.rowCodec.getOffsets());
+            LeafNode leafNode = latchLeaf(latches, this.keyCodec.min(), false);
+            while (true) {
+                zones.update(leafNode);
+                int next = leafNode.getNext();
+                if (next == -1) {
+                    break;
+                }
+                LeafNode nextLeaf = (LeafNode) latches.latch(next, false);
+                latches.release(leafNode);
+                leafNode = nextLeaf;
+            }
+            this.zones = zones;
+        } finally {
+            latches.releaseAll();
+            this.treeLock.writeLock().unlock();
         }
     }
 
+    // false when the key is certainly not in the table
+    private boolean mightContain(byte[] key) {
+        BloomFilter filter = this.filter;
+        return filter == null || filter.mightContain(key);
+    }
+
     synchronized private void saveMetadata() throws Exception {
-        raf.seek(0);
-        raf.write(this.metadata.pack());
+        if (this.wal != null) {
+            this.metadataDirty = true;
+            return;
+        }
+        this.store.write(0, this.metadata.pack());
+    }
+
+    public void saveData() throws Exception {
+        this.flush();
+    }
+
+    // every change made so far is in the table file once this returns
+    public void flush() throws Exception {
+        for (SecondaryIndex index : this.indexes) {
+            index.flush();
+        }
+        if (this.wal != null) {
+            this.checkpoint();
+            return;
+        }
+        this.flushPages(0);
+    }
+
+    // run by the flusher, down to the low watermark when a writer asked for it
+    void writeBack(boolean toLowWatermark) throws Exception {
+        if (this.wal != null) {
+            this.checkpoint();
+        } else {
+            // the dirty pages of the whole cache held writers back, every table goes down to none
+            boolean partial = toLowWatermark && !this.bufferPool.getCache().isDirtyPastWatermark();
+            this.flushPages(partial ? this.flushLowWatermark : 0);
+        }
+        // the list is kept until the warm-up has read it
+        if (this.config.getWarmUpMode() != WarmUpMode.OFF && this.warmedUp.getCount() == 0
+                && System.nanoTime() - this.hotPagesSaved >= this.config.getHotPagesIntervalMillis() * 1_000_000) {
+            this.saveHotPages();
+        }
+    }
+
+    /*
+        writes back dirty pages in page order until no more than target are left. Each page is
+        copied under a shared latch so it is not changed half way and stays pinned until written,
+        so eviction can't write a newer copy first; pages next to each other go out as one run.
+        Write backs run one at a time, the checkpoint lock keeps an older copy from landing after
+        a newer one. The tree lock keeps merges from freeing a page while it is waited for,
+        overflow pages freed in the meantime are no longer cached and are skipped. The version
+        is taken from the node copied, a reused page isn't marked clean
+     */
+    private void flushPages(int target) throws Exception {
+        synchronized (this.checkpointLock) {
+            FlushEvent event = new FlushEvent();
+            event.begin();
+            long start = System.nanoTime();
+            int written = 0;
+            this.treeLock.readLock().lock();
+            List<Node> run = new ArrayList<>();
+            List<Long> versions = new ArrayList<>();
+            List<byte[]> images = new ArrayList<>();
+            try {
+                int count = this.bufferPool.getDirtyCount() - target;
+                for (int no : this.bufferPool.getDirtyPages()) {
+                    if (count <= 0) {
+                        break;
+                    }
+                    Node node = this.bufferPool.fetchIfCached(no);
+                    if (node == null) {
+                        continue;
+                    }
+                    if (!run.isEmpty() && (no != run.get(run.size() - 1).getNodeNo() + 1 || run.size() == MAX_RUN_PAGES)) {
+                        this.writeRun(run, versions, images);
+                    }
+                    Lock latch = node.getLatch().asReadLock();
+                    latch.lock();
+                    try {
+                        versions.add(this.bufferPool.getVersion(node));
+                        images.add(node.pack(this.columns));
+                    } finally {
+                        latch.unlock();
+                    }
+                    run.add(node);
+                    written++;
+                    count--;
+                }
+                this.writeRun(run, versions, images);
+            } finally {
+                for (Node node : run) {
+                    this.bufferPool.unpin(node);
+                }
+                this.treeLock.readLock().unlock();
+            }
+            this.flushed(event, start, written, false);
+        }
+    }
+
+    // rounds that found nothing to write are left out
+    private void flushed(FlushEvent event, long start, int pages, boolean checkpoint) {
+        if (pages == 0) {
+            return;
+        }
+        this.stats.flushed(pages, System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.table = this.table;
+            event.pages = pages;
+            event.checkpoint = checkpoint;
+            event.commit();
+        }
+    }
+
+    // writes pages that follow each other, marks them clean and unpins them
+    private void writeRun(List<Node> run, List<Long> versions, List<byte[]> images) throws Exception {
+        if (run.isEmpty()) {
+            return;
+        }
+        this.store.write(run.get(0).getNodeNo(), images.toArray(new byte[0][]));
+        for (int i = 0; i < run.size(); i++) {
+            this.bufferPool.markClean(run.get(i).getNodeNo(), versions.get(i));
+            this.bufferPool.unpin(run.get(i));
+        }
+        run.clear();
+        versions.clear();
+        images.clear();
+    }
+
+    // page images sorted by page, the ones next to each other go out as one run
+    private void writePages(List<Integer> pages, List<byte[]> images) throws Exception {
+        int start = 0;
+        for (int i = 1; i <= pages.size(); i++) {
+            if (i == pages.size() || pages.get(i) != pages.get(i - 1) + 1) {
+                this.store.write(pages.get(start), images.subList(start, i).toArray(new byte[0][]));
+                start = i;
+            }
+        }
     }
 
-    synchronized public void saveData() throws Exception {
-        for (Node n: this.updatedNodes) {
-            this.writeNode(n);
+    // removes the files of a closed table and of its indexes
+    static void deleteFiles(String name, List<Column<?>> columns) throws Exception {
+        for (String suffix : new String[]{"bin", "wal", "bloom", "zones", "hot", "snap"}) {
+            Files.deleteIfExists(Path.of(String.format("%s.%s", name, suffix)));
+        }
+        for (Column<?> column : columns) {
+            if (SecondaryIndex.exists(name, column.getName())) {
+                deleteFiles(SecondaryIndex.getName(name, column.getName()), columns);
+            }
         }
-        this.updatedNodes.clear();
-        System.out.println();
     }
 
-    synchronized private void writeNode(Node node) throws Exception {
-        long offset = (long) node.getNodeNo() *  this.pageSize;
-        raf.seek(offset);
-        raf.write(node.pack(this.columns));
+    public void close() throws Exception {
+        for (SecondaryIndex index : this.indexes) {
+            index.close();
+        }
+        this.stopWarmUp();
+        if (this.database != null) {
+            this.flusher.remove(this);
+        } else {
+            this.flusher.shutdown();
+        }
+        if (this.wal != null) {
+            this.checkpoint();
+            // nothing runs anymore, every logged change is in the pages now
+            this.wal.truncate(this.wal.getNextLsn());
+            this.wal.close();
+        } else {
+            this.flushPages(0);
+        }
+        this.treeLock.writeLock().lock();
+        try {
+            this.bufferPool.flushAll();
+            this.store.close();
+            if (this.mbeanName != null) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.mbeanName);
+                this.mbeanName = null;
+            }
+            if (this.filter != null) {
+                Path path = this.filterPath();
+                Path written = Path.of(path + ".tmp");
+                this.filter.write(written);
+                Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            if (this.zones != null) {
+                Path path = this.zonesPath();
+                Path written = Path.of(path + ".tmp");
+                this.zones.write(written);
+                Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            if (this.config.getWarmUpMode() != WarmUpMode.OFF && this.warmedUp.getCount() == 0) {
+                this.saveHotPages();
+            }
+            // a shared cache would keep the pages until they are evicted
+            this.bufferPool.close();
+            this.versions.shutdown();
+        } finally {
+            this.treeLock.writeLock().unlock();
+        }
+        if (this.database != null) {
+            this.database.closed(this);
+        }
     }
+
     /*
-        assumtion: key is of type integer 4 bytes
-        size of value is 4 bytes
-        let's say we can store N keys
-        space for N keys = 4 * N bytes
+        makes the current state durable in the table file. The dirty pages are copied while
+        no operation is running, logged as page images and forced, and only then written in
+        place. A crash half way through the in place writes is repaired on open by writing
+        the logged images again. Records logged after the copy are kept for redo.
+     */
+    public void checkpoint() throws Exception {
+        if (this.wal == null) {
+            this.saveData();
+            return;
+        }
+        synchronized (this.checkpointLock) {
+            FlushEvent event = new FlushEvent();
+            event.begin();
+            long start = System.nanoTime();
+            List<Integer> pages = new ArrayList<>();
+            List<Long> versions = new ArrayList<>();
+            List<byte[]> images = new ArrayList<>();
+            long snapshotLsn;
+            this.treeLock.writeLock().lock();
+            try {
+                snapshotLsn = this.wal.getNextLsn();
+                // metadata first, the pages stay in page order for the in place writes
+                if (this.metadataDirty) {
+                    pages.add(0);
+                    versions.add(-1L);
+                    images.add(this.metadata.pack());
+                    this.metadataDirty = false;
+                }
+                for (int no : this.bufferPool.getDirtyPages()) {
+                    pages.add(no);
+                    versions.add(this.bufferPool.getVersion(no));
+                    images.add(this.bufferPool.peek(no).pack(this.columns));
+                }
+            } finally {
+                this.treeLock.writeLock().unlock();
+            }
+            if (pages.isEmpty()) {
+                return;
+            }
+            try {
+                for (int i = 0; i < pages.size(); i++) {
+                    ByteBuffer body = ByteBuffer.allocate(Long.BYTES + images.get(i).length);
+                    body.putLong(snapshotLsn).put(images.get(i));
+                    this.wal.append(WriteAheadLog.PAGE, pages.get(i), body.array());
+                }
+                long end = this.wal.append(WriteAheadLog.CHECKPOINT, 0, ByteBuffer.allocate(Long.BYTES).putLong(snapshotLsn).array());
+                this.wal.commit(end);
 
-        For N + 1 values, each value requiring 4 bytes:
-        Space for values= 4 × ( N + 1)
+                this.writePages(pages, images);
+                this.store.sync();
+            } catch (Exception e) {
+                synchronized (this) {
+                    this.metadataDirty |= pages.contains(0);
+                }
+                throw e;
+            }
+            for (int i = 0; i < pages.size(); i++) {
+                if (pages.get(i) != 0) {
+                    this.bufferPool.markClean(pages.get(i), versions.get(i));
+                }
+            }
+            this.wal.truncate(snapshotLsn);
+            this.flushed(event, start, pages.size(), true);
+        }
+    }
 
-        Total Space = 4N + 4N + 4 => 8N + 4
-        4096 - 13 (header size) - 4 => 8N
- */
+    /*
+        restores the page images of the last complete checkpoint and replays the
+        changes logged after its snapshot, then checkpoints and empties the log
+     */
+    private void recover() throws Exception {
+        List<WriteAheadLog.LogRecord> records = this.wal.readAll();
+        long snapshotLsn = Long.MIN_VALUE;
+        int checkpointIdx = -1;
+        for (int i = 0; i < records.size(); i++) {
+            if (records.get(i).getType() == WriteAheadLog.CHECKPOINT) {
+                snapshotLsn = records.get(i).getBody().getLong();
+                checkpointIdx = i;
+            }
+        }
+        if (checkpointIdx != -1) {
+            for (int i = 0; i < checkpointIdx; i++) {
+                WriteAheadLog.LogRecord record = records.get(i);
+                ByteBuffer body = record.getBody();
+                if (record.getType() == WriteAheadLog.PAGE && body.getLong() == snapshotLsn) {
+                    byte[] image = new byte[body.remaining()];
+                    body.get(image);
+                    this.store.write(record.getPage(), image);
+                }
+            }
+            this.store.sync();
+            this.metadata.unpack(this.store.read(0));
+        }
 
-    private int getMaxKeys() throws Exception {
-        int availableSpace = this.pageSize - LEAF_PAGE_HEADER_SIZE;
-        int keySize = Integer.BYTES;
-        int valueSize = 0;
+        this.recovering = true;
+        try {
+            for (WriteAheadLog.LogRecord record : records) {
+                if (record.getLsn() >= snapshotLsn) {
+                    this.redo(record);
+                }
+            }
+        } finally {
+            this.recovering = false;
+        }
+        this.checkpoint();
+        this.wal.truncate(this.wal.getNextLsn());
+    }
 
-        for (Column<?> col : columns) {
-            valueSize += col.getSize();
+    private void redo(WriteAheadLog.LogRecord record) throws Exception {
+        switch (record.getType()) {
+            case WriteAheadLog.INSERT, WriteAheadLog.UPDATE -> {
+                Row row = new RowView(this.columns, this.rowCodec.getOffsets()).wrap(record.getBody(), 0).toRow();
+                this.upsert(row);
+            }
+            case WriteAheadLog.DELETE -> {
+                ByteBuffer body = record.getBody();
+                byte[] key = new byte[body.remaining()];
+                body.get(key);
+                this.delete(key);
+            }
+            default -> {
+                // page images and checkpoints are handled by recover
+            }
         }
+    }
 
-        int maxKeys = (availableSpace - valueSize) / (keySize + valueSize);
-        if (maxKeys == 0) {
+    /*
+        appends a change to the log, returns the lsn to commit or -1 when nothing was logged.
+        Rows carry their key columns and all their values, overflow pages are not logged.
+        A change without a row logs just the encoded key. Called with the leaf latched
+        so changes to the same row are logged in the order they are made
+     */
+    private long log(byte type, byte[] key, Row row) throws Exception {
+        if (this.wal == null || this.recovering) {
+            return -1;
+        }
+        return this.wal.append(type, 0, row != null ? this.rowCodec.encode(row) : key);
+    }
+
+    private void commit(long lsn) throws Exception {
+        if (lsn != -1) {
+            this.wal.commit(lsn);
+        }
+    }
+
+    public WriteAheadLog getWriteAheadLog() {
+        return this.wal;
+    }
+
+    private void writeNode(Node node) throws Exception {
+        this.store.write(node.getNodeNo(), node.pack(this.columns));
+    }
+    // bytes of a leaf page left for entries, after the header and the high key
+    private int getLeafCapacity() {
+        return this.pageSize - LEAF_PAGE_HEADER_SIZE - this.keyCodec.getSize();
+    }
+
+    /*
+        every entry of a leaf takes the key K, a slot S and the record R:
+        capacity = pageSize - header - K, an entry takes K + S + R bytes
+        and at least MIN_RECORDS_PER_LEAF entries have to fit
+        R <= capacity / MIN_RECORDS_PER_LEAF - K - S
+     */
+    private int getMaxRecordSize() throws Exception {
+        int maxRecordSize = this.getLeafCapacity() / MIN_RECORDS_PER_LEAF - this.keyCodec.getSize() - LeafNode.SLOT_SIZE;
+        if (this.rowCodec.getMinSize() > maxRecordSize) {
             throw new Exception("Row is too big either reduce size/ number of cols or increase leaf node page size");
         }
-        return maxKeys;
+        return maxRecordSize;
+    }
+
+    // most entries a leaf can hold, reached when every string is empty
+    private int getMaxKeys() {
+        return this.getLeafCapacity() / (this.keyCodec.getSize() + LeafNode.SLOT_SIZE + this.rowCodec.getFixedSize());
     }
     /*
-            assumtion: key and value are of tye integer 4 bytes
+            key is the encoded key, K bytes (the high key in the header takes another K)
+            and values are child page numbers of 4 bytes
             let's say we can store N keys
-            space for N keys = 4 * N bytes
+            space for N keys = K * N bytes
 
             For N + 1 values, each value requiring 4 bytes:
             Space for values= 4 × ( N + 1)
 
-            Total Space = 4N + 4N + 4 => 8N + 4
-            4096 - 13 (header size) - 4 => 8N
+            Total Space = KN + 4N + 4
+            pageSize - header - K - 4 => (K + 4) * N
      */
     private int getMaxInternalNodeKeys() throws Exception {
-        int availableSpace = this.pageSize - INTERNAL_PAGE_HEADER_SIZE;
-        int keySize = Integer.BYTES;
+        int keySize = this.keyCodec.getSize();
+        int availableSpace = this.pageSize - INTERNAL_PAGE_HEADER_SIZE - keySize;
         int valueSize = Integer.BYTES;
 
         // Calculate the maximum number of keys (N)
@@ -144,57 +900,36 @@ public class Table {
         return maxKeys;
     }
 
-    synchronized public void print() throws Exception {
+    public void print() throws Exception {
         Path path = Paths.get(table + ".bin");
         if (Files.exists(path)) {
-            if (!this.updatedNodes.isEmpty()) {
+            if (this.bufferPool.getDirtyCount() > 0) {
                 this.saveData();
             }
             System.out.println("Table: " + this.table);
             System.out.println("Total pages: " + this.metadata.getTotalPages());
-            for (int i = 1; i <= metadata.getTotalPages(); i++) {
-                if (this.isLeafNode(i)) {
-                    LeafNode node = this.getLeafNode(i);
-//                    System.out.println("LeafNode: " + node.getNodeNo() + ", " + node.getKeys() + ", Parent: " + node.getParent());
-                    for (Row row: node.getValues()) {
-                        System.out.println(row);
-                    }
-                }
+            // walk the leaf chain of a snapshot instead of probing every page in the file
+            try (Snapshot snapshot = this.snapshot(); Stream<Row> rows = snapshot.stream()) {
+                rows.forEach(System.out::println);
             }
         } else {
             System.out.println("No data file found.");
         }
     }
 
+    // the levels as of one moment, writers carry on while they are printed
     public void printTree() throws Exception {
-        Queue<Integer> queue = new ArrayDeque<>();
-        queue.add(this.root.getNodeNo());
         System.out.println("--------------B+ Tree-------------");
-        if (!this.updatedNodes.isEmpty()) {
+        if (this.bufferPool.getDirtyCount() > 0) {
             this.saveData();
         }
-        while (!queue.isEmpty()) {
-            int s = queue.size();
-            for (int i = 0; i < s; i++) {
-                int no = queue.remove();
-                Node node = this.getNode(no);
-                if (!node.getKeys().isEmpty()) {
-                    System.out.print("[");
-                    for (int key : node.getKeys()) {
-                        System.out.print(key + " ");
-                    }
-                    System.out.print("] ");
-                }
-                if (!this.isLeafNode(no)) {
-                    queue.addAll(((InternalNode) node).getValues());
-                }
-            }
-            System.out.println();
+        try (Snapshot snapshot = this.snapshot()) {
+            snapshot.printTree();
         }
         System.out.println("----------------------------------");
     }
 
-    private void validateRow(Row row, boolean update) throws Exception {
+    void validateRow(Row row, boolean update) throws Exception {
         // check for unknown columns
         for (String key: row.getData().keySet()) {
             boolean contains = this.columns.stream().anyMatch(c -> c.getName().equals(key));
@@ -214,272 +949,1588 @@ public class Table {
                 }
             }
         }
-    }
 
-    public synchronized boolean isLeafNode(int no) throws Exception {
-        // isLeafNode stored at 13th index
-        raf.seek((long) no * this.pageSize + 12);
-        byte[] data = new byte[1];
-        int bytesRead = raf.read(data);
-        if (bytesRead == -1) {
-            throw new Exception("not able to check whether it is internal or leaf node: " + no);
+        // values of indexed columns are keys of the index, checked before any change is made
+        for (SecondaryIndex index : this.indexes) {
+            if (row.containsKey(index.getColumn())) {
+                KeyCodec.checkValue(this.getColumn(index.getColumn()), row.get(index.getColumn()));
+            }
         }
-        return data[0] != 0;
     }
 
-    synchronized private Node getNode(int no) throws Exception {
-        Node node;
-        // first check in updated nodes to get the latest state
-        for (Node n: this.updatedNodes) {
-            if (n.getNodeNo() == no) {
-                return n;
-            }
+    public boolean isLeafNode(int no) throws Exception {
+        Node cached = this.bufferPool.peek(no);
+        if (cached != null) {
+            return cached.isLeafNode();
         }
+        // isLeafNode stored at 13th index
+        return this.store.read(no).get(12) == 1;
+    }
 
-        // fectch from disk
-        if (this.isLeafNode(no)) {
-            node = this.getLeafNode(no);
-        } else {
-            node = this.getInternalNode(no);
+    // the node is latched exclusively and already changed, its zone is summarized again
+    private void markDirty(Node node) {
+        this.bufferPool.markDirty(node.getNodeNo());
+        ZoneMap zones = this.zones;
+        if (zones != null && node.isLeafNode()) {
+            zones.update((LeafNode) node);
         }
-        return node;
     }
 
-    synchronized private InternalNode getInternalNode(int no) throws Exception {
-        raf.seek((long) no * this.pageSize);
-        byte[] data = new byte[this.pageSize];
-        int bytesRead = raf.read(data);
-        if (bytesRead == -1) {
-            throw new Exception("data not present for internal node: " + no);
-        }
-        InternalNode node = new InternalNode(no, this.pageSize, this.maxInternalNodeKeys);
-        node.unpack(null, data);
+    private LeafNode newLeafNode(LatchStack latches) throws Exception {
+        LeafNode node = new LeafNode(this.allocatePage(), this.pageSize, this.maxLeafNodeKeys, this.keyCodec.getSize());
+        latches.add(node);
         return node;
     }
 
-    synchronized private LeafNode getLeafNode(int no) throws Exception {
-        raf.seek((long) no * this.pageSize);
-        byte[] data = new byte[this.pageSize];
-        int bytesRead = raf.read(data);
-        if (bytesRead == -1) {
-            throw new Exception("data not present for leaf node: " + no);
-        }
-        LeafNode node = new LeafNode(no, this.pageSize, this.maxLeafNodeKeys);
-        node.unpack(this.columns, data);
+    private InternalNode newInternalNode(LatchStack latches, int level) throws Exception {
+        InternalNode node = new InternalNode(this.allocatePage(), this.pageSize, this.maxInternalNodeKeys, this.keyCodec.getSize());
+        node.setLevel(level);
+        latches.add(node);
         return node;
     }
 
-    private Node findLeafNode(Node node, int searchKey) throws Exception {
-        if (node.isLeafNode()) {
-            return node;
-        }
-        // typecast to internal node
-        InternalNode internalNode = (InternalNode) node;
-        List<Integer> keys = node.getKeys();
-        for (int i = 0; i < keys.size(); i++) {
-            if (searchKey < keys.get(i)) {
-                int nodeNo = internalNode.getValues().get(i);
-                Node child = this.getNode(nodeNo);
-                return findLeafNode(child, searchKey);
+    List<Column<?>> getColumns() {
+        return this.columns;
+    }
+
+    Column<?> getColumn(String name) {
+        for (Column<?> column : this.columns) {
+            if (column.getName().equals(name)) {
+                return column;
             }
         }
-        List<Integer> values = internalNode.getValues();
-        Node child = this.getNode(values.getLast());
-        return findLeafNode(child, searchKey);
+        throw new IllegalArgumentException("Unknown column: " + name);
     }
 
-    private void insertIntoLeaf(LeafNode node, int key, Row row) {
-        int pos = 0;
-        List<Integer> keys = node.getKeys();
-        while (pos < keys.size() && keys.get(pos) < key) {
-            pos++;
-        }
-        keys.add(pos, key);
-        node.getValues().add(row);
-        updatedNodes.add(node);
+    public KeyCodec getKeyCodec() {
+        return this.keyCodec;
     }
 
-    private void insertIntoParent(Node parent, int key, int val) {
-        int pos = 0;
-        List<Integer> keys = parent.getKeys();
-        List<Integer> values = ((InternalNode) parent).getValues();
-        while (pos < keys.size() && keys.get(pos) < key) {
-            pos++;
-        }
-        keys.add(pos, key);
+    // key from the values of the key columns, in the order they were configured in
+    public Key key(Object... values) throws Exception {
+        return this.keyCodec.key(values);
+    }
 
-        if (values.isEmpty() || pos + 1 == values.size()) {
-            // Append at the end
-            values.add(val);
-        } else {
-            // Insert at the next position
-            values.add(pos + 1, val);
-        }
-        this.updatedNodes.add(parent);
+    public Key keyOf(Row row) {
+        return this.keyCodec.keyOf(row);
     }
 
-    // Split a full internal node and insert the new key and child pointer
-    private void splitParentAndInsert(Node node, Node rightChild, int key) throws Exception {
-        insertIntoParent(node, key, rightChild.getNodeNo());
-        InternalNode left = (InternalNode) node;
-        InternalNode right = new InternalNode(this.metadata.getNextPage(), this.pageSize, this.maxInternalNodeKeys);
-        int mid = (this.maxInternalNodeKeys + 1) / 2;
-        int midKey = left.getKeys().get(mid);
-        right.getKeys().addAll(left.getKeys().subList(mid + 1, left.getKeys().size()));
-        right.getValues().addAll(left.getValues().subList(mid + 1, left.getValues().size()));
-
-        node.getKeys().subList(mid, left.getKeys().size()).clear();
-        ((InternalNode) node).getValues().subList(mid + 1, ((InternalNode) node).getValues().size()).clear();
-
-        // update the parent
-        right.setParent(left.getParent());
-        // update the parent pointers of children
-        for (Integer childNodeNo : right.getValues()) {
-            Node child = this.getNode(childNodeNo);
-            this.updatedNodes.add(child);
-            child.setParent(right.getNodeNo());
-        }
-
-        this.updatedNodes.add(left);
-        this.updatedNodes.add(right);
-        updateParent(left, right, midKey);
-    }
-
-    private void updateParent(Node left, Node right, int key) throws Exception {
-        if (left.getNodeNo() == root.getNodeNo()) {
-            int no = this.metadata.getNextPage();
-            InternalNode newRoot = new InternalNode(no, this.pageSize, this.maxInternalNodeKeys);
-            newRoot.getKeys().add(key);
-            newRoot.getValues().addAll(Arrays.asList(left.getNodeNo(), right.getNodeNo()));
-            newRoot.setParent(-1);
-            root = newRoot;
-            left.setParent(no);
-            right.setParent(no);
+    synchronized private int allocatePage() throws Exception {
+        int page = this.takePage();
+        this.saveMetadata();
+        return page;
+    }
 
-            this.metadata.setRootNodeNumber(no);
-            // save metadata root is updated
-            this.saveMetadata();
-            this.updatedNodes.addAll(Arrays.asList(root, left, right));
-            return;
-        }
+    synchronized int reservePage() throws Exception {
+        return this.takePage();
+    }
 
-        int parentNodeNo = left.getParent();
-        Node parent = this.getNode(parentNodeNo);
-        if (parent.hasSpace()) {
-            insertIntoParent(parent, key, right.getNodeNo());
-        } else {
-            splitParentAndInsert(parent, right, key);
+    // a free page, once the list in the metadata page is used up the pages of the last trunk refill it
+    synchronized private int takePage() throws Exception {
+        if (this.metadata.getFreePageCount() == 0 && this.metadata.getFreeListTrunk() != 0) {
+            return this.takeTrunk();
         }
+        return this.metadata.reservePage();
+    }
 
-        // update the root node
-        if (parent.getNodeNo() == this.root.getNodeNo()) {
-            this.root = parent;
+    // the pages of the trunk go back to the list and the trunk itself is handed out
+    private int takeTrunk() throws Exception {
+        int no = this.metadata.getFreeListTrunk();
+        Node node = this.bufferPool.fetch(no);
+        try {
+            if (!(node instanceof OverflowNode trunk)) {
+                throw new IllegalStateException("bad free list page: " + no);
+            }
+            ByteBuffer data = ByteBuffer.wrap(trunk.getData());
+            int[] pages = new int[data.remaining() / Integer.BYTES];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = data.getInt();
+            }
+            this.metadata.addFreePages(pages);
+            this.metadata.setFreeListTrunk(trunk.getNext());
+        } finally {
+            this.bufferPool.unpin(node);
         }
+        this.bufferPool.discard(node);
+        return no;
     }
 
-    private void splitLeafAndInsert(Node node, int key, Row row) throws Exception {
-        int midIndex = (this.maxLeafNodeKeys + 1) / 2;
-        LeafNode leafNode = (LeafNode) node;
-        this.insertIntoLeaf(leafNode , key, row);
-        LeafNode newLeafNode = new LeafNode(this.metadata.getNextPage(), this.pageSize, this.maxLeafNodeKeys);
-
-        newLeafNode.getKeys().addAll(leafNode.getKeys().subList(midIndex, leafNode.getKeys().size()));
-        newLeafNode.getValues().addAll(leafNode.getValues().subList(midIndex, leafNode.getValues().size()));
-
-        leafNode.getKeys().subList(midIndex, leafNode.getKeys().size()).clear();
-        leafNode.getValues().subList(midIndex, leafNode.getValues().size()).clear();
+    /*
+        puts a page nothing points to any more on the free list. When the list in the metadata
+        page is full, as many of its pages as fit go to the page freed, which becomes the newest
+        trunk and points to the one before. The trunk is a dirty page like any other, with the log
+        the next checkpoint writes it along with the metadata; without it it is written right away,
+        before the metadata can point to it
+     */
+    synchronized private void releasePage(int no) throws Exception {
+        if (this.metadata.freePage(no)) {
+            return;
+        }
+        int[] pages = this.metadata.takeFreePages(OverflowNode.getCapacity(this.pageSize) / Integer.BYTES);
+        ByteBuffer data = ByteBuffer.allocate(pages.length * Integer.BYTES);
+        for (int page : pages) {
+            data.putInt(page);
+        }
+        OverflowNode trunk = new OverflowNode(no, this.pageSize);
+        trunk.setData(data.array());
+        trunk.setNext(this.metadata.getFreeListTrunk());
+        this.bufferPool.add(trunk);
+        this.bufferPool.unpin(trunk);
+        if (this.wal == null) {
+            this.bufferPool.flush(no);
+        }
+        this.metadata.setFreeListTrunk(no);
+    }
+
+    LeafNode createLeafNode(int no) {
+        return new LeafNode(no, this.pageSize, this.maxLeafNodeKeys, this.keyCodec.getSize());
+    }
+
+    InternalNode createInternalNode(int no, int level) {
+        InternalNode node = new InternalNode(no, this.pageSize, this.maxInternalNodeKeys, this.keyCodec.getSize());
+        node.setLevel(level);
+        return node;
+    }
+
+    // called by the buffer pool on a miss, page type is decoded from the same read
+    private Node readNode(int no) throws Exception {
+        return this.decodeNode(no, this.store.read(no));
+    }
+
+    private Node decodeNode(int no, ByteBuffer buffer) {
+        Node node;
+        // isLeafNode stored at 13th index, overflow pages keep their type there
+        if (buffer.get(12) == OverflowNode.PAGE_TYPE) {
+            node = new OverflowNode(no, this.pageSize);
+            node.unpack(null, buffer);
+        } else if (buffer.get(12) != 0) {
+            node = this.createLeafNode(no);
+            node.unpack(this.columns, buffer);
+        } else {
+            node = new InternalNode(no, this.pageSize, this.maxInternalNodeKeys, this.keyCodec.getSize());
+            node.unpack(null, buffer);
+        }
+        return node;
+    }
+
+    // the key is past the node, it moved to the right sibling in a split
+    private static boolean movedRight(Node node, byte[] key) {
+        return node.getNext() != -1 && Arrays.compareUnsigned(key, node.getHighKey()) >= 0;
+    }
+
+    private Node descend(byte[] key, int level, LatchStack path) throws Exception {
+        return this.descend(key, level, path, null);
+    }
+
+    /*
+        descends from the root to the node on the given level (0 for the leaves) whose key
+        range held the key, without latching anything. Each node is read optimistically and
+        a child pointer is only followed once the node's version checks out, otherwise the
+        descent starts over. So does a descent during which a page was freed, as it may have
+        followed a pointer to a page that has been reused since. A node that split after its
+        parent was read is caught up with through the right links. The caller latches the
+        returned page and moves right again if it split in the meantime. The internal nodes
+        gone through are recorded in path, stamp receives the optimistic stamp of the returned
+        node, 0 if it is being changed
+     */
+    private Node descend(byte[] key, int level, LatchStack path, long[] stamp) throws Exception {
+        restart:
+        while (true) {
+            long freed = this.freedPages;
+            Node node = this.bufferPool.get(this.metadata.getRootNodeNumber());
+            long version = node.getLatch().tryOptimisticRead();
+            while (node.getLevel() > level) {
+                if (version == 0 || freed != this.freedPages) {
+                    // being changed (or dropped from the pool), come back later
+                    Thread.onSpinWait();
+                    continue restart;
+                }
+                int child;
+                boolean right;
+                try {
+                    right = movedRight(node, key);
+                    InternalNode internalNode = (InternalNode) node;
+                    child = right ? node.getNext() : internalNode.getValue(internalNode.findChild(key));
+                } catch (RuntimeException e) {
+                    // read the node half way through a change
+                    continue restart;
+                }
+                if (!node.getLatch().validate(version)) {
+                    continue restart;
+                }
+                if (!right && path != null) {
+                    path.visit(node.getLevel(), node.getNodeNo());
+                }
+                node = this.bufferPool.get(child);
+                version = node.getLatch().tryOptimisticRead();
+            }
+            if (freed != this.freedPages || (version != 0 && !node.getLatch().validate(version))) {
+                continue;
+            }
+            if (node.getLevel() < level) {
+                throw new Exception("tree has no level " + level);
+            }
+            if (stamp != null) {
+                stamp[0] = version;
+            }
+            return node;
+        }
+    }
+
+    // latches the page and follows the right links until the node covers the key, holding one latch at a time
+    private Node latchCovering(LatchStack latches, int no, byte[] key, boolean exclusive) throws Exception {
+        Node node = latches.latch(no, exclusive);
+        while (movedRight(node, key)) {
+            Node right = latches.latch(node.getNext(), exclusive);
+            latches.release(node);
+            node = right;
+        }
+        return node;
+    }
+
+    private LeafNode latchLeaf(LatchStack latches, byte[] key, boolean exclusive) throws Exception {
+        return (LeafNode) this.latchCovering(latches, this.descend(key, 0, latches).getNodeNo(), key, exclusive);
+    }
+
+    // position of the key if present, else -(insertion point) - 1
+    private static int insertionPoint(int idx) {
+        return idx >= 0 ? idx : -idx - 1;
+    }
+
+    private void insertIntoLeaf(LeafNode node, byte[] key, byte[] record) {
+        int pos = insertionPoint(node.findKey(key));
+        node.insert(pos, key, record);
+        this.markDirty(node);
+    }
+
+    private void insertIntoParent(Node parent, byte[] key, int val) {
+        int pos = insertionPoint(parent.findKey(key));
+        ((InternalNode) parent).insert(pos, key, val);
+        this.markDirty(parent);
+    }
+
+    // Split a full internal node and insert the new key and child pointer
+    private void splitParentAndInsert(LatchStack latches, Node node, Node rightChild, byte[] key) throws Exception {
+        SplitEvent event = new SplitEvent();
+        event.begin();
+        insertIntoParent(node, key, rightChild.getNodeNo());
+        InternalNode left = (InternalNode) node;
+        InternalNode right = this.newInternalNode(latches, left.getLevel());
+        int mid = (this.maxInternalNodeKeys + 1) / 2;
+        byte[] midKey = left.getKey(mid);
+        left.moveTo(right, mid);
+
+        // the new node takes over the upper part of the key range and the right link
+        right.setNext(left.getNext());
+        right.setHighKey(left.getHighKey());
+        left.setNext(right.getNodeNo());
+        left.setHighKey(midKey);
+
+        this.markDirty(left);
+        this.markDirty(right);
+        this.split(event, left, right);
+        updateParent(latches, left, right, midKey);
+    }
+
+    /*
+        adds the separator of a split to the level above (Lehman-Yao). The two halves are
+        already linked, so readers get to every key before the parent knows about the right
+        one. They stay latched until the parent is, then only the parent is held. Latches are
+        only ever taken upwards or to the right, so writers can't deadlock
+     */
+    private void updateParent(LatchStack latches, Node left, Node right, byte[] key) throws Exception {
+        if (left.getNodeNo() == this.metadata.getRootNodeNumber()) {
+            // only the writer holding the root can replace it
+            InternalNode newRoot = this.newInternalNode(latches, left.getLevel() + 1);
+            int no = newRoot.getNodeNo();
+            newRoot.init(left.getNodeNo(), key, right.getNodeNo());
+
+            latches.beforeRootChange(left.getNodeNo());
+            this.metadata.setRootNodeNumber(no);
+            // save metadata root is updated
+            this.saveMetadata();
+            return;
+        }
+
+        int level = left.getLevel() + 1;
+        int parentNo = latches.visited(level);
+        if (parentNo == -1) {
+            // the split node was the root when we went down, the tree has grown since
+            parentNo = this.descend(key, level, null).getNodeNo();
+        }
+        Node parent = this.latchCovering(latches, parentNo, key, true);
+        latches.release(left);
+        latches.release(right);
+        if (parent.hasSpace()) {
+            insertIntoParent(parent, key, right.getNodeNo());
+        } else {
+            splitParentAndInsert(latches, parent, right, key);
+        }
+    }
+
+    // inserts the record and moves the upper half (by bytes) of the full leaf to a new right sibling
+    private LeafNode splitLeafAndInsert(LatchStack latches, LeafNode leafNode, byte[] key, byte[] record) throws Exception {
+        SplitEvent event = new SplitEvent();
+        event.begin();
+        this.insertIntoLeaf(leafNode , key, record);
+        LeafNode newLeafNode = this.newLeafNode(latches);
+
+        leafNode.moveTo(newLeafNode, leafNode.splitIndex());
 
         // attaching next pointers for range queries
         newLeafNode.setNext(leafNode.getNext());
+        newLeafNode.setHighKey(leafNode.getHighKey());
         leafNode.setNext(newLeafNode.getNodeNo());
-
-        // Set the parent for the new leaf
-        newLeafNode.setParent(leafNode.getParent());
+        leafNode.setHighKey(newLeafNode.getKey(0));
 
         // set the updated nodes
-        this.updatedNodes.add(leafNode);
-        this.updatedNodes.add(newLeafNode);
+        this.markDirty(leafNode);
+        this.markDirty(newLeafNode);
+        this.split(event, leafNode, newLeafNode);
+        return newLeafNode;
+    }
+
+    private void split(SplitEvent event, Node left, Node right) {
+        this.stats.split(left.isLeafNode());
+        if (event.shouldCommit()) {
+            event.table = this.table;
+            event.page = left.getNodeNo();
+            event.newPage = right.getNodeNo();
+            event.level = left.getLevel();
+            event.leaf = left.isLeafNode();
+            event.commit();
+        }
+    }
+
+    public long bulkLoad(Iterator<Row> rows) throws Exception {
+        return this.bulkLoad(rows, DEFAULT_FILL_FACTOR);
+    }
 
-        // update parent node
-        updateParent(leafNode, newLeafNode, newLeafNode.getKeys().getFirst());
+    /*
+        loads rows sorted by key into an empty table, leaves are filled up to fillFactor
+        and every page is written exactly once. Returns the number of rows loaded.
+        Writers wait for the load, readers must not use the table until it returns
+     */
+    public long bulkLoad(Iterator<Row> rows, double fillFactor) throws Exception {
+        // pages are written straight to the store, get the cached ones on disk first
+        this.saveData();
+        long count;
+        this.treeLock.writeLock().lock();
+        try {
+            int rootNo = this.metadata.getRootNodeNumber();
+            boolean empty;
+            LatchStack latches = new LatchStack(this.bufferPool);
+            try {
+                Node root = latches.latch(rootNo, false);
+                empty = root.isLeafNode() && root.getKeyCount() == 0;
+            } finally {
+                latches.releaseAll();
+            }
+            if (!empty) {
+                throw new Exception("bulk load requires an empty table: " + this.table);
+            }
+            this.bufferPool.clear();
+
+            // the new tree goes to pages of its own, the empty one stays until it is complete
+            BulkLoader loader = new BulkLoader(this, this.store, this.getLeafCapacity(), this.maxInternalNodeKeys, fillFactor);
+            int newRoot;
+            try {
+                newRoot = loader.load(rows);
+            } catch (Exception e) {
+                // unsorted or bad input: nothing points at the pages written so far
+                for (int no : loader.getReservedPages()) {
+                    this.releasePage(no);
+                }
+                this.saveMetadata();
+                throw e;
+            }
+            // loaded pages are not logged, they must be durable before the metadata points at them
+            this.store.sync();
+            if (newRoot != -1) {
+                // snapshots taken before keep the empty tree
+                LatchStack.ChangeListener change = this.versions.begin(node -> node.pack(this.columns));
+                try {
+                    change.beforeRootChange(rootNo);
+                    change.beforeChange(this.createLeafNode(rootNo));
+                    this.metadata.setRootNodeNumber(newRoot);
+                } finally {
+                    change.released();
+                }
+                this.freedPages++;
+                this.releasePage(rootNo);
+            }
+            this.saveMetadata();
+            count = loader.getRowCount();
+            for (SecondaryIndex index : this.indexes) {
+                index.build();
+            }
+            if (this.filter != null) {
+                this.rebuildFilter();
+            }
+            if (this.zones != null) {
+                this.rebuildZones();
+            }
+        } finally {
+            this.treeLock.writeLock().unlock();
+        }
+        if (this.wal != null) {
+            this.checkpoint();
+        }
+        return count;
     }
 
     public void insert(Row row) throws Exception {
+        if (this.insertRow(row)) {
+            System.out.println("Inserted row: " + this.keyOf(row));
+        }
+    }
+
+    // false when the key is taken already
+    boolean insertRow(Row row) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return this.insertRecord(row);
+        } finally {
+            this.stats.getInsertLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    private boolean insertRecord(Row row) throws Exception {
         validateRow(row, false);
-        Node node = findLeafNode(this.root, row.getId());
-        if (node.getKeys().contains(row.getId())) {
-            System.out.printf("failed to save row: %s reason: duplicate id\n", row.getId());
+        List<Change> entries = new ArrayList<>();
+        Change change = this.insertLatched(row, entries);
+        if (change == null) {
+            System.out.printf("failed to save row: %s reason: duplicate key\n", this.keyOf(row));
+            return false;
+        }
+        // the entries are committed first, one a crash leaves without its row is passed over by the index
+        for (Change entry : entries) {
+            entry.finish();
+        }
+        change.finish();
+        BloomFilter filter = this.filter;
+        if (filter != null && filter.isFull()) {
+            this.growFilter(filter);
+        }
+        return true;
+    }
+
+    /*
+        inserts the row while its leaf is latched, null when the key is taken already. The indexes
+        get their entries under the same latch, what is left of those changes goes to entries
+     */
+    private Change insertLatched(Row row, List<Change> entries) throws Exception {
+        Key key = this.keyCodec.keyOf(row);
+        long lsn;
+        LatchStack latches = this.changeLatches();
+        this.treeLock.readLock().lock();
+        try {
+            LeafNode leafNode = latchLeaf(latches, key.getBytes(), true);
+            if (leafNode.findKey(key.getBytes()) >= 0) {
+                return null;
+            }
+            LeafNode newLeafNode = null;
+            byte[] record = this.encodeRecord(row);
+            // in the filter before it can be found
+            if (this.filter != null) {
+                this.filter.add(key.getBytes());
+            }
+            if (leafNode.fits(record.length)) {
+                insertIntoLeaf(leafNode, key.getBytes(), record);
+            } else {
+                newLeafNode = splitLeafAndInsert(latches, leafNode, key.getBytes(), record);
+            }
+            // logged while the row's leaf is still latched
+            lsn = this.log(WriteAheadLog.INSERT, key.getBytes(), row);
+            for (SecondaryIndex index : this.indexes) {
+                entries.add(index.add(row));
+            }
+            if (newLeafNode != null) {
+                updateParent(latches, leafNode, newLeafNode, newLeafNode.getKey(0));
+            }
+        } finally {
+            latches.releaseAll();
+            this.treeLock.readLock().unlock();
+        }
+        return new Change(this, lsn, null);
+    }
+
+    // adds an entry to the table of an index, called under the latch of the row it is for
+    Change insertEntry(Row entry) throws Exception {
+        Change change = this.insertLatched(entry, null);
+        // already there: the row got its old value back before the entry was removed
+        return change != null ? change : new Change(this, -1, null);
+    }
+
+    /*
+        puts a bigger layer on the full filter unless another insert did so already. Nothing is
+        scanned and inserts don't wait, one still adding to the full layer is found through it
+     */
+    private synchronized void growFilter(BloomFilter full) {
+        if (this.filter == full) {
+            this.filter = full.grow();
+        }
+    }
+
+    /*
+        called once the operation let go of its latches. Past the high watermark the flusher is
+        woken up, past the limit the writer waits for it to catch up. The same goes for the dirty
+        pages of all tables sharing the cache, see PageCache. While the flusher fails to write the
+        table back the writer gets its failure, the change itself is made already
+     */
+    private void flushIfNeeded() throws Exception {
+        int dirty = this.bufferPool.getDirtyCount();
+        PageCache cache = this.bufferPool.getCache();
+        // the flusher starts after the log is replayed
+        if ((dirty < this.flushHighWatermark && !cache.isDirtyPastWatermark()) || this.recovering) {
             return;
         }
-        if (node instanceof InternalNode) {
-            throw new Exception("internal node returned by find");
+        this.flusher.request();
+        this.checkWriteBack();
+        while ((this.bufferPool.getDirtyCount() >= this.maxDirtyPages || cache.isDirtyFull()) && this.flusher.isRunning()) {
+            this.flusher.awaitRound();
+            this.checkWriteBack();
+        }
+    }
+
+    // a writer held back by pages the flusher fails to write would wait for it forever
+    private void checkWriteBack() throws IOException {
+        Exception failure = this.flusher.getFailure(this);
+        if (failure != null) {
+            throw new IOException("write back of table " + this.table + " failed", failure);
         }
-        if (node.hasSpace()) {
-            insertIntoLeaf((LeafNode)node, row.getId(), row);
+    }
+
+    /*
+        what is left of a change once its latches are let go of: rebalancing the leaf it left
+        short, committing its log records and waiting for the flusher. None of it may run under
+        a latch, a table and its indexes share the flusher of a database and it may be busy
+        with the very page the latch is held on
+     */
+    static final class Change {
+        private final Table table;
+        private final long lsn;
+        // key of the leaf that fell short, null when none did
+        private final byte[] underflow;
+
+        private Change(Table table, long lsn, byte[] underflow) {
+            this.table = table;
+            this.lsn = lsn;
+            this.underflow = underflow;
+        }
+
+        void finish() throws Exception {
+            if (this.underflow != null) {
+                this.table.rebalance(this.underflow);
+            }
+            // waits without any latch so concurrent commits share one force
+            this.table.commit(this.lsn);
+            this.table.flushIfNeeded();
+        }
+    }
+
+    // used by redo, replaces the row if the key is already present
+    private void upsert(Row row) throws Exception {
+        byte[] key = this.keyCodec.encode(row);
+        LatchStack latches = this.changeLatches();
+        this.treeLock.readLock().lock();
+        try {
+            LeafNode leafNode = latchLeaf(latches, key, true);
+            int idx = leafNode.findKey(key);
+            byte[] record = this.encodeRecord(row);
+            LeafNode newLeafNode = null;
+            if (idx >= 0) {
+                newLeafNode = this.replaceRecord(latches, leafNode, idx, record);
+            } else if (leafNode.fits(record.length)) {
+                insertIntoLeaf(leafNode, key, record);
+            } else {
+                newLeafNode = splitLeafAndInsert(latches, leafNode, key, record);
+            }
+            if (newLeafNode != null) {
+                updateParent(latches, leafNode, newLeafNode, newLeafNode.getKey(0));
+            }
+        } finally {
+            latches.releaseAll();
+            this.treeLock.readLock().unlock();
+        }
+    }
+
+    /*
+        swaps the record of an entry for a new one of the same key and frees the overflow pages
+        of the old one. A record that grew too big for the leaf splits it like an insert does,
+        the new right leaf is returned then and the caller adds it to the parent
+     */
+    private LeafNode replaceRecord(LatchStack latches, LeafNode leafNode, int idx, byte[] record) throws Exception {
+        List<Integer> overflow = this.overflowPages(this.view(leafNode, idx, this.newRowView()));
+        LeafNode newLeafNode = null;
+        if (leafNode.canReplace(idx, record.length)) {
+            leafNode.setRecord(idx, record);
+            this.markDirty(leafNode);
         } else {
-            splitLeafAndInsert(node, row.getId(), row);
+            byte[] key = leafNode.getKey(idx);
+            leafNode.remove(idx);
+            newLeafNode = splitLeafAndInsert(latches, leafNode, key, record);
         }
+        this.freeOverflow(latches, overflow);
+        return newLeafNode;
+    }
 
-        if (this.updatedNodes.size() >= 5) {
-            this.saveData();
+    // record of the row for a leaf, strings that make it too big go to overflow pages
+    private byte[] encodeRecord(Row row) throws Exception {
+        return this.encodeRecord(row, this::writeOverflow);
+    }
+
+    byte[] encodeRecord(Row row, RowCodec.OverflowWriter overflow) throws Exception {
+        return this.rowCodec.encode(row, this.maxRecordSize, overflow);
+    }
+
+    /*
+        writes a value to a new chain of overflow pages and returns the first one. Nothing else
+        can reach the pages before the record pointing to them is stored, they need no latch
+     */
+    private int writeOverflow(byte[] value) throws Exception {
+        int[] pages = new int[OverflowNode.getPageCount(value.length, this.pageSize)];
+        for (int i = 0; i < pages.length; i++) {
+            pages[i] = this.allocatePage();
         }
-        System.out.println("Inserted row: " + row.getId());
+        for (OverflowNode node : OverflowNode.chain(value, pages, this.pageSize)) {
+            this.bufferPool.add(node);
+            this.bufferPool.unpin(node);
+        }
+        return pages[0];
     }
 
-    public Row search(int id) throws Exception {
-        Node node = findLeafNode(this.root, id);
-        if (node instanceof InternalNode) {
-            throw new Exception("internal node returned by find");
+    /*
+        reads a value back from its overflow pages. Optimistic readers get here with whatever
+        they read from the leaf, so the pointer is checked before it is followed
+     */
+    private byte[] readOverflow(int page, int length) throws Exception {
+        int capacity = OverflowNode.getCapacity(this.pageSize);
+        int totalPages = this.metadata.getTotalPages();
+        if (length < 0 || length > (long) totalPages * capacity) {
+            throw new IllegalStateException("bad overflow value length: " + length);
         }
-        LeafNode leafNode = (LeafNode) node;
-        int idx = -1;
-        for (int i = 0; i < node.getKeys().size(); i++) {
-            if (node.getKeys().get(i) == id) {
-                idx = i;
+        byte[] value = new byte[length];
+        int read = 0;
+        int no = page;
+        while (read < length) {
+            if (no <= 0 || no > totalPages) {
+                throw new IllegalStateException("bad overflow page: " + no);
+            }
+            Node node = this.bufferPool.fetch(no);
+            try {
+                byte[] data = ((OverflowNode) node).getData();
+                int count = Math.min(data.length, length - read);
+                if (count == 0) {
+                    throw new IllegalStateException("empty overflow page: " + no);
+                }
+                System.arraycopy(data, 0, value, read, count);
+                read += count;
+                no = node.getNext();
+            } finally {
+                this.bufferPool.unpin(node);
+            }
+        }
+        return value;
+    }
+
+    // first overflow page of every value of the record kept out of the leaf
+    private List<Integer> overflowPages(RowView view) {
+        List<Integer> pages = new ArrayList<>();
+        for (int i = 0; i < this.columns.size(); i++) {
+            if (this.columns.get(i).isVariableLength()) {
+                int page = view.getOverflowPage(i);
+                if (page != -1) {
+                    pages.add(page);
+                }
             }
         }
-        if (idx == -1) {
+        return pages;
+    }
+
+    // frees the overflow pages of values whose record is gone, called once the leaf no longer points to them
+    private void freeOverflow(LatchStack latches, List<Integer> firstPages) throws Exception {
+        if (firstPages.isEmpty()) {
+            return;
+        }
+        for (int no : firstPages) {
+            while (no != -1) {
+                Node node = this.bufferPool.fetch(no);
+                int next = node.getNext();
+                latches.keep(node);
+                this.bufferPool.unpin(node);
+                this.bufferPool.discard(node);
+                this.freedPages++;
+                this.releasePage(no);
+                no = next;
+            }
+        }
+        this.saveMetadata();
+    }
+
+    /*
+        only the requested columns are decoded, all of them when none are given.
+        The leaf is read optimistically like the nodes above it: no latch and no pin,
+        the row is returned only if the leaf did not change while it was decoded,
+        otherwise it is read again under a shared latch
+     */
+    public Row search(int id, String... columns) throws Exception {
+        return this.search(this.key(id), columns);
+    }
+
+    public Row search(Key key, String... columns) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return this.searchRow(key.getBytes(), columns);
+        } finally {
+            this.stats.getSearchLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    private Row searchRow(byte[] id, String... columns) throws Exception {
+        if (!this.mightContain(id)) {
             return null;
-        } else {
-            return leafNode.getValues().get(idx);
         }
+        RowView view = this.newRowView();
+        long[] stamps = new long[1];
+        LeafNode leafNode = (LeafNode) this.descend(id, 0, null, stamps);
+        long stamp = stamps[0];
+        if (stamp == 0) {
+            // being changed
+            return this.searchLatched(id, view, columns);
+        }
+        Row row = null;
+        boolean right;
+        try {
+            right = movedRight(leafNode, id);
+            int idx = right ? -1 : leafNode.findKey(id);
+            if (idx >= 0) {
+                row = leafNode.wrap(idx, view).toRow(columns);
+            }
+        } catch (RuntimeException e) {
+            if (leafNode.getLatch().validate(stamp)) {
+                throw e;
+            }
+            right = true;
+        }
+        if (!right && leafNode.getLatch().validate(stamp)) {
+            return row;
+        }
+        // moved right, changed or evicted meanwhile: reading overflow pages may evict the
+        // leaf itself, so the read is done again with the leaf pinned rather than retried
+        return this.searchLatched(id, view, columns);
+    }
+
+    private Row searchLatched(byte[] id, RowView view, String... columns) throws Exception {
+        LatchStack latches = new LatchStack(this.bufferPool);
+        this.treeLock.readLock().lock();
+        try {
+            LeafNode leafNode = latchLeaf(latches, id, false);
+            int idx = leafNode.findKey(id);
+            if (idx < 0) {
+                return null;
+            }
+            return this.view(leafNode, idx, view).toRow(columns);
+        } finally {
+            latches.releaseAll();
+            this.treeLock.readLock().unlock();
+        }
+    }
+
+    /*
+        visits every row in key order, the same view is reused for all rows so
+        it must not be kept after the callback returns. The current leaf stays
+        latched during the callback, it must not change the table
+     */
+    public void scan(Consumer<RowView> consumer) throws Exception {
+        RowView view = this.newRowView();
+        LatchStack latches = new LatchStack(this.bufferPool);
+        this.treeLock.readLock().lock();
+        try {
+            LeafNode leafNode = latchLeaf(latches, this.keyCodec.min(), false);
+            while (true) {
+                for (int i = 0; i < leafNode.getKeyCount(); i++) {
+                    consumer.accept(this.view(leafNode, i, view));
+                }
+                int next = leafNode.getNext();
+                if (next == -1) {
+                    break;
+                }
+                // crab along the leaf chain, left to right like every other latch on a level
+                LeafNode nextLeaf = (LeafNode) latches.latch(next, false);
+                latches.release(leafNode);
+                leafNode = nextLeaf;
+            }
+        } finally {
+            latches.releaseAll();
+            this.treeLock.readLock().unlock();
+        }
+    }
+
+    // same as scan but materializes the given columns of every row
+    public void scanRows(Consumer<Row> consumer, String... columns) throws Exception {
+        this.scan(view -> consumer.accept(view.toRow(columns)));
+    }
+
+    public RangeScan scan(int fromId, int toId) throws Exception {
+        return this.scan(fromId, toId, 0);
+    }
+
+    public RangeScan scan(int fromId, int toId, int limit, String... columns) throws Exception {
+        return this.scan(this.key(fromId), this.key(toId), limit, columns);
+    }
+
+    public RangeScan scan(Key from, Key to) throws Exception {
+        return this.scan(from, to, 0);
+    }
+
+    /*
+        lazy scan over keys in [from, to], a limit of 0 means no limit.
+        For pagination continue from the successor of the last returned key
+     */
+    public RangeScan scan(Key from, Key to, int limit, String... columns) throws Exception {
+        return this.scan(from, to, List.of(), limit, columns);
+    }
+
+    /*
+        scan returning only the rows all filters hold for. Filters are checked on the records in
+        the leaves, rows they rule out are never decoded. A limit counts the rows returned
+     */
+    public RangeScan scan(Key from, Key to, List<Filter> filters, int limit, String... columns) throws Exception {
+        return new RangeScan(this, from.getBytes(), to.getBytes(), true, filters, limit, this.readAhead, columns);
+    }
+
+    // null when there is nothing to check
+    Predicate<RowView> bind(List<Filter> filters) {
+        return filters.isEmpty() ? null : Filter.bind(filters, this.columns);
+    }
+
+    // null without zone maps or filters
+    Predicate<ZoneMap.Zone> bindZones(List<Filter> filters) {
+        ZoneMap zones = this.zones;
+        return zones == null || filters.isEmpty() ? null : zones.bind(filters);
+    }
+
+    /*
+        first leaf from the given one on that the zone map doesn't rule out, -1 when the rest of
+        the range is ruled out. Leaves without a summary are never skipped. Called by cursors
+        under the shared tree lock, no leaf goes away meanwhile; a summary a split has not
+        replaced yet still covers the rows of both halves, it just skips the new one too
+     */
+    int skipLeaves(int no, byte[] to, boolean toInclusive, Predicate<ZoneMap.Zone> filter) {
+        ZoneMap zones = this.zones;
+        int skipped = 0;
+        while (no != -1) {
+            ZoneMap.Zone zone = zones.get(no);
+            if (zone == null || filter.test(zone)) {
+                break;
+            }
+            skipped++;
+            // the leaves after it start at its high key
+            int cmp = Arrays.compareUnsigned(zone.getHighKey(), to);
+            no = cmp > 0 || (cmp == 0 && !toInclusive) ? -1 : zone.getNext();
+        }
+        this.stats.skipped(skipped);
+        return no;
+    }
+
+    public Stream<Row> stream(int fromId, int toId, String... columns) throws Exception {
+        return this.stream(this.key(fromId), this.key(toId), columns);
+    }
+
+    // same as scan, closing the stream releases the scan
+    public Stream<Row> stream(Key from, Key to, String... columns) throws Exception {
+        return this.stream(from, to, List.of(), columns);
+    }
+
+    // rows of the whole table the filters hold for
+    public Stream<Row> stream(List<Filter> filters, String... columns) throws Exception {
+        return this.stream(this.keyCodec.decode(this.keyCodec.min()), this.keyCodec.decode(this.keyCodec.max()), filters, columns);
+    }
+
+    public Stream<Row> stream(Key from, Key to, List<Filter> filters, String... columns) throws Exception {
+        RangeScan scan = this.scan(from, to, filters, 0, columns);
+        Spliterator<Row> spliterator = Spliterators.spliteratorUnknownSize(scan, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(scan::close);
+    }
+
+    /*
+        every row of the table, as a parallel stream. Its spliterator splits the table at the
+        separators of the internal nodes, so workers scan leaves of their own, see TableSpliterator.
+        Rows come in key order unless the stream is made unordered. Close the stream when it is
+        not run to the end, like a stream of a range
+     */
+    public Stream<Row> parallelStream(String... columns) throws Exception {
+        return this.parallelStream(List.of(), columns);
+    }
+
+    public Stream<Row> parallelStream(List<Filter> filters, String... columns) throws Exception {
+        // each part binds the filters once it runs, a bad one is reported here already
+        this.bind(filters);
+        // internal and overflow pages count as leaves, the estimate rather errs high
+        long pages = Math.max(1, this.metadata.getTotalPages() - this.metadata.getFreePageCount());
+        TableSpliterator spliterator = new TableSpliterator(this, this.keyCodec.min(), this.keyCodec.max(), true,
+                this.getTreeHeight() - 1, pages, Math.max(1, this.maxLeafNodeKeys / 2), filters, columns, ConcurrentHashMap.newKeySet());
+        return StreamSupport.stream(spliterator, true).onClose(spliterator::close);
+    }
+
+    /*
+        consistent view of the table as it is now, for reads that must not see later changes and
+        must not hold writers up, like long scans. Taking it waits for the changes already running
+        to finish, the ones starting meanwhile go ahead; from then on the first change to every
+        page keeps the page as it was, until every snapshot that may still read it is closed. Past
+        the snapshot memory of the config the kept pages go to a spill file. See VersionStore
+     */
+    public Snapshot snapshot() throws Exception {
+        long epoch = this.versions.open();
+        try {
+            // a change that started since kept the root it replaced
+            int root = this.metadata.getRootNodeNumber();
+            byte[] kept = this.versions.find(0, epoch);
+            return new Snapshot(this, epoch, kept != null ? ByteBuffer.wrap(kept).getInt() : root);
+        } catch (Exception e) {
+            this.versions.close(epoch);
+            throw e;
+        }
+    }
+
+    void closeSnapshot(long epoch) {
+        this.versions.close(epoch);
+    }
+
+    // latch stack of a change to the tree, it keeps the pages the open snapshots may need
+    private LatchStack changeLatches() {
+        return new LatchStack(this.bufferPool, this.versions.begin(node -> node.pack(this.columns)));
+    }
+
+    /*
+        the page as the snapshot of the epoch saw it, as a node of its own that nothing else uses.
+        A page without an earlier image is copied from the pool. A writer changing it meanwhile
+        kept the image first, so it is looked up once more after the copy and wins over it
+     */
+    Node readSnapshotNode(int no, long epoch) throws Exception {
+        byte[] image = this.versions.find(no, epoch);
+        if (image == null) {
+            byte[] copy = null;
+            Exception failed = null;
+            this.treeLock.readLock().lock();
+            try {
+                copy = this.copyPage(no);
+            } catch (Exception e) {
+                failed = e;
+            } finally {
+                this.treeLock.readLock().unlock();
+            }
+            image = this.versions.find(no, epoch);
+            if (image == null) {
+                if (failed != null) {
+                    throw failed;
+                }
+                image = copy;
+            }
+            if (image == null) {
+                throw new IllegalStateException("page of snapshot was freed: " + no);
+            }
+        }
+        return this.decodeNode(no, ByteBuffer.wrap(image));
+    }
+
+    /*
+        copy of the page taken under a shared latch, null when the page was dropped from the pool
+        while the latch was waited for. Overflow pages never change and are copied right away
+     */
+    private byte[] copyPage(int no) throws Exception {
+        Node node = this.bufferPool.fetch(no);
+        try {
+            if (node instanceof OverflowNode) {
+                return node.pack(this.columns);
+            }
+            StampedLock latch = node.getLatch();
+            long stamp;
+            while ((stamp = latch.tryReadLock(1, TimeUnit.MILLISECONDS)) == 0) {
+                // a dropped page keeps its latch write locked for good
+                if (this.bufferPool.getVersion(node) == -1) {
+                    return null;
+                }
+            }
+            try {
+                return node.pack(this.columns);
+            } finally {
+                latch.unlockRead(stamp);
+            }
+        } finally {
+            this.bufferPool.unpin(node);
+        }
+    }
+
+    // reads a value back from its overflow pages as the snapshot of the epoch saw them
+    byte[] readSnapshotOverflow(int page, int length, long epoch) throws Exception {
+        byte[] value = new byte[length];
+        int read = 0;
+        int no = page;
+        while (read < length) {
+            if (!(this.readSnapshotNode(no, epoch) instanceof OverflowNode node)) {
+                throw new IllegalStateException("bad overflow page: " + no);
+            }
+            byte[] data = node.getData();
+            int count = Math.min(data.length, length - read);
+            if (count == 0) {
+                throw new IllegalStateException("empty overflow page: " + no);
+            }
+            System.arraycopy(data, 0, value, read, count);
+            read += count;
+            no = node.getNext();
+        }
+        return value;
+    }
+
+    RowView newSnapshotRowView(long epoch) {
+        return new RowView(this.columns, this.rowCodec.getOffsets(), (page, length) -> this.readSnapshotOverflow(page, length, epoch));
+    }
+
+    /*
+        middle one of the separators between from and to (to excluded) of the node on the given
+        level covering from, null when there are none. The shared tree lock keeps merges from
+        taking a level away while the node is found
+     */
+    byte[] splitKey(byte[] from, byte[] to, int level) throws Exception {
+        LatchStack latches = new LatchStack(this.bufferPool);
+        this.treeLock.readLock().lock();
+        try {
+            int top = this.bufferPool.get(this.metadata.getRootNodeNumber()).getLevel();
+            Node node = this.latchCovering(latches, this.descend(from, Math.min(level, top), null).getNodeNo(), from, false);
+            if (node.isLeafNode()) {
+                return null;
+            }
+            int first = insertionPoint(node.findKey(from));
+            if (first < node.getKeyCount() && node.compareKey(first, from) == 0) {
+                first++;
+            }
+            int last = first;
+            while (last < node.getKeyCount() && node.compareKey(last, to) < 0) {
+                last++;
+            }
+            return first == last ? null : node.getKey((first + last) / 2);
+        } finally {
+            latches.releaseAll();
+            this.treeLock.readLock().unlock();
+        }
+    }
+
+    // aggregates take filters that rows have to pass to be counted, see scan
+    public long count(Filter... filters) throws Exception {
+        try (Stream<Row> rows = this.parallelStream(List.of(filters), this.keyCodec.getColumns().get(0).getName())) {
+            return rows.unordered().count();
+        }
+    }
+
+    // Long for integer columns of any width, Double for float and double ones
+    public Number sum(String column, Filter... filters) throws Exception {
+        Class<?> type = this.getColumn(column).getType();
+        boolean integral = type == Integer.class || type == Long.class || type == Short.class || type == Byte.class;
+        boolean decimal = type == Double.class || type == Float.class;
+        if (!integral && !decimal) {
+            throw new IllegalArgumentException("Column " + column + " is not numeric.");
+        }
+        try (Stream<Row> rows = this.parallelStream(List.of(filters), column)) {
+            if (integral) {
+                return rows.unordered().mapToLong(row -> ((Number) row.get(column)).longValue()).sum();
+            }
+            return rows.unordered().mapToDouble(row -> ((Number) row.get(column)).doubleValue()).sum();
+        }
+    }
+
+    // null when the table is empty
+    public Object min(String column, Filter... filters) throws Exception {
+        return this.extreme(column, false, filters);
+    }
+
+    public Object max(String column, Filter... filters) throws Exception {
+        return this.extreme(column, true, filters);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object extreme(String column, boolean max, Filter[] filters) throws Exception {
+        this.getColumn(column);
+        Comparator<Object> order = (a, b) -> ((Comparable<Object>) a).compareTo(b);
+        try (Stream<Row> rows = this.parallelStream(List.of(filters), column)) {
+            Stream<Object> values = rows.unordered().map(row -> row.get(column));
+            return (max ? values.max(order) : values.min(order)).orElse(null);
+        }
+    }
+
+    // number of rows for each value of the column
+    public Map<Object, Long> groupBy(String column) throws Exception {
+        return this.groupBy(column, Collectors.counting(), column);
+    }
+
+    /*
+        rows grouped by the value of the column and reduced by the downstream collector, which
+        may run concurrently for the same group. Only the given columns are read, the grouping
+        column has to be one of them (all columns when none are given)
+     */
+    public <R> Map<Object, R> groupBy(String column, Collector<Row, ?, R> downstream, String... columns) throws Exception {
+        this.getColumn(column);
+        if (columns.length > 0 && !Arrays.asList(columns).contains(column)) {
+            throw new IllegalArgumentException("Grouping column " + column + " has to be read.");
+        }
+        try (Stream<Row> rows = this.parallelStream(columns)) {
+            return rows.unordered().collect(Collectors.groupingByConcurrent(row -> row.get(column), downstream));
+        }
+    }
+
+    /*
+        builds an index on the column from the rows in the table, writers wait until it is done.
+        From then on every change keeps it up to date, it is opened again with the table
+     */
+    public void createIndex(String column) throws Exception {
+        this.getColumn(column);
+        if (SecondaryIndex.exists(this.table, column)) {
+            throw new Exception("index already exists: " + SecondaryIndex.getName(this.table, column));
+        }
+        this.treeLock.writeLock().lock();
+        try {
+            SecondaryIndex index = SecondaryIndex.open(this, this.table, column, this.pageSize, this.config);
+            index.build();
+            this.indexes.add(index);
+        } finally {
+            this.treeLock.writeLock().unlock();
+        }
+    }
+
+    public boolean hasIndex(String column) {
+        return this.getIndex(column) != null;
+    }
+
+    // rows whose column holds the value, through the index on the column
+    public List<Row> findBy(String column, Object value, String... columns) throws Exception {
+        try (Stream<Row> rows = this.scanBy(column, value, value, columns)) {
+            return rows.toList();
+        }
+    }
+
+    // rows whose column is between from and to, both included, ordered by the column. The stream has to be closed
+    public Stream<Row> scanBy(String column, Object from, Object to, String... columns) throws Exception {
+        SecondaryIndex index = this.getIndex(column);
+        if (index == null) {
+            throw new IllegalArgumentException("no index on column: " + column);
+        }
+        return index.scan(from, to, columns);
+    }
+
+    private SecondaryIndex getIndex(String column) {
+        for (SecondaryIndex index : this.indexes) {
+            if (index.getColumn().equals(column)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    public void setReadAhead(int pages) {
+        // keep read ahead from pushing the scanned pages out of the pool
+        this.readAhead = Math.max(0, Math.min(pages, this.bufferPool.getCapacity() / 4));
+    }
+
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    RowView newRowView() {
+        return new RowView(this.columns, this.rowCodec.getOffsets(), this::readOverflow);
+    }
+
+    /*
+        descends to the leaf for the key, it stays pinned but not latched until unpinLeaf.
+        The caller holds the tree lock shared, see sharedTreeLock
+     */
+    LeafNode seekLeaf(byte[] key) throws Exception {
+        LatchStack latches = new LatchStack(this.bufferPool);
+        try {
+            Node node = latchLeaf(latches, key, false);
+            this.bufferPool.fetch(node.getNodeNo());
+            return (LeafNode) node;
+        } finally {
+            latches.releaseAll();
+        }
+    }
+
+    LeafNode pinLeaf(int no) throws Exception {
+        return (LeafNode) this.bufferPool.fetch(no);
+    }
+
+    void unpinLeaf(LeafNode leafNode) {
+        this.bufferPool.unpin(leafNode);
+    }
+
+    /*
+        taken by cursors while they latch leaves. Merges run under the exclusive lock and leave
+        pinned leaves alone, so a leaf a cursor holds on to between calls is not freed
+     */
+    Lock sharedTreeLock() {
+        return this.treeLock.readLock();
+    }
+
+    // shared latch of a pinned leaf, locked on return
+    Lock latchShared(LeafNode leafNode) {
+        Lock latch = leafNode.getLatch().asReadLock();
+        latch.lock();
+        return latch;
+    }
+
+    // loads up to count leaves of the chain starting at from, stops past the key to
+    int readAhead(int from, int count, byte[] to) throws Exception {
+        int loaded = 0;
+        int no = from;
+        while (no != -1 && loaded < count) {
+            LeafNode leafNode = (LeafNode) this.bufferPool.fetch(no);
+            Lock latch = this.latchShared(leafNode);
+            try {
+                loaded++;
+                if (leafNode.getKeyCount() > 0 && leafNode.compareKey(0, to) > 0) {
+                    break;
+                }
+                no = leafNode.getNext();
+            } finally {
+                latch.unlock();
+                this.bufferPool.unpin(leafNode);
+            }
+        }
+        return loaded;
+    }
+
+    // the leaf has to be latched, shared is enough
+    RowView view(LeafNode leafNode, int idx, RowView view) {
+        return leafNode.wrap(idx, view);
     }
 
     public boolean update(int id, Map<String, Object> updates) throws Exception {
         updates.put("id", id);
-        Row row = new Row(id, updates);
+        return this.update(this.key(id), updates);
+    }
+
+    // the key columns can't be changed, a row with a new key has to be inserted
+    public boolean update(Key key, Map<String, Object> updates) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return this.updateRow(key, updates);
+        } finally {
+            this.stats.getUpdateLatency().record(System.nanoTime() - start);
+        }
+    }
+
+    private boolean updateRow(Key key, Map<String, Object> updates) throws Exception {
+        byte[] id = key.getBytes();
+        Row row = new Row(0, updates);
         validateRow(row, true);
-        Node node = findLeafNode(this.root, id);
-        if (node instanceof InternalNode) {
-            throw new Exception("internal node returned by find");
+        if (!this.mightContain(id)) {
+            return false;
         }
-        LeafNode leafNode = (LeafNode) node;
-        int idx = -1;
-        for (int i = 0; i < node.getKeys().size(); i++) {
-            if (node.getKeys().get(i) == id) {
-                idx = i;
+        long lsn;
+        Row oldRow;
+        List<SecondaryIndex> changed = new ArrayList<>();
+        List<Change> entries = new ArrayList<>();
+        LatchStack latches = this.changeLatches();
+        this.treeLock.readLock().lock();
+        try {
+            LeafNode leafNode = latchLeaf(latches, id, true);
+            int idx = leafNode.findKey(id);
+            if (idx < 0) {
+                return false;
+            }
+            oldRow = this.view(leafNode, idx, this.newRowView()).toRow();
+            Row newRow = new Row(oldRow.getId(), new HashMap<>(oldRow.getData()));
+            newRow.getData().putAll(updates);
+            if (!Arrays.equals(this.keyCodec.encode(newRow), id)) {
+                throw new IllegalArgumentException("key columns can't be updated: " + key);
             }
+            LeafNode newLeafNode = this.replaceRecord(latches, leafNode, idx, this.encodeRecord(newRow));
+            if (this.wal == null && newLeafNode == null) {
+                // without the log updates are written through right away
+                this.bufferPool.flush(leafNode.getNodeNo());
+            }
+            // the full row is logged so redo doesn't depend on the page
+            lsn = this.log(WriteAheadLog.UPDATE, id, newRow);
+            // entries of the new values now, those of the old ones once the update is committed
+            for (SecondaryIndex index : this.indexes) {
+                if (index.changed(oldRow, newRow)) {
+                    entries.add(index.add(newRow));
+                    changed.add(index);
+                }
+            }
+            if (newLeafNode != null) {
+                updateParent(latches, leafNode, newLeafNode, newLeafNode.getKey(0));
+            }
+        } finally {
+            latches.releaseAll();
+            this.treeLock.readLock().unlock();
         }
-        if (idx == -1) {
-            return false;
-        } else {
-            Row oldRow = leafNode.getValues().get(idx);
-            oldRow.getData().putAll(updates);
-            this.writeNode(node);
-            return true;
+        for (Change entry : entries) {
+            entry.finish();
+        }
+        this.commit(lsn);
+        for (SecondaryIndex index : changed) {
+            this.removeEntry(index, oldRow);
+        }
+        this.flushIfNeeded();
+        return true;
+    }
+
+    /*
+        removes the entry of the index for the row as it was, once the change to the row is
+        committed: a crash in between leaves an entry the index passes over, never a row without
+        its entry. The leaf of the row stays latched meanwhile, a row that got the old value back
+        since found the entry still there when it was inserted and keeps it
+     */
+    private void removeEntry(SecondaryIndex index, Row oldRow) throws Exception {
+        byte[] id = this.keyCodec.encode(oldRow);
+        Change change = null;
+        LatchStack latches = new LatchStack(this.bufferPool);
+        this.treeLock.readLock().lock();
+        try {
+            LeafNode leafNode = latchLeaf(latches, id, false);
+            int idx = leafNode.findKey(id);
+            Row row = idx < 0 ? null : this.view(leafNode, idx, this.newRowView()).toRow(index.getColumn());
+            if (row == null || index.changed(oldRow, row)) {
+                change = index.remove(oldRow);
+            }
+        } finally {
+            latches.releaseAll();
+            this.treeLock.readLock().unlock();
+        }
+        if (change != null) {
+            change.finish();
         }
     }
 
     public boolean delete(int id) throws Exception {
-        Node node = findLeafNode(this.root, id);
-        if (node instanceof InternalNode) {
-            throw new Exception("internal node returned by find");
+        return this.delete(this.key(id));
+    }
+
+    public boolean delete(Key key) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return this.delete(key.getBytes());
+        } finally {
+            this.stats.getDeleteLatency().record(System.nanoTime() - start);
         }
-        int keyIndex = node.getKeys().indexOf(id);
-        if (keyIndex == -1) {
+    }
+
+    private boolean delete(byte[] id) throws Exception {
+        if (!this.mightContain(id)) {
             return false;
         }
+        Row[] removed = new Row[1];
+        Change change = this.deleteLatched(id, removed);
+        if (change == null) {
+            return false;
+        }
+        change.finish();
+        // the entries go once the delete is committed, see removeEntry
+        if (removed[0] != null) {
+            for (SecondaryIndex index : this.indexes) {
+                this.removeEntry(index, removed[0]);
+            }
+        }
+        return true;
+    }
+
+    /*
+        removes the row while its leaf is latched, null when there is none. The row as it was
+        goes to removed when there are indexes to take it out of
+     */
+    private Change deleteLatched(byte[] id, Row[] removed) throws Exception {
+        long lsn;
+        boolean underflow;
+        LatchStack latches = this.changeLatches();
+        this.treeLock.readLock().lock();
+        try {
+            LeafNode leafNode = latchLeaf(latches, id, true);
+            int keyIndex = leafNode.findKey(id);
+            if (keyIndex < 0) {
+                return null;
+            }
+            RowView view = this.view(leafNode, keyIndex, this.newRowView());
+            List<Integer> overflow = this.overflowPages(view);
+            removed[0] = this.indexes.isEmpty() ? null : view.toRow();
+            leafNode.remove(keyIndex);
+            this.markDirty(leafNode);
+            this.freeOverflow(latches, overflow);
+            lsn = this.log(WriteAheadLog.DELETE, id, null);
+            underflow = this.underflows(leafNode) && leafNode.getNodeNo() != this.metadata.getRootNodeNumber();
+        } finally {
+            latches.releaseAll();
+            this.treeLock.readLock().unlock();
+        }
+        return new Change(this, lsn, underflow ? id : null);
+    }
+
+    // removes an entry from the table of an index, called under the latch of the row it was for
+    Change deleteEntry(Key key) throws Exception {
+        Change change = this.deleteLatched(key.getBytes(), new Row[1]);
+        return change != null ? change : new Change(this, -1, null);
+    }
+
+    // leaves are measured by the bytes of their entries, internal nodes by their keys
+    private boolean underflows(Node node) {
+        if (node.isLeafNode()) {
+            return ((LeafNode) node).getUsedBytes() < this.minLeafNodeBytes;
+        }
+        return node.getKeyCount() < this.minInternalNodeKeys;
+    }
+
+    // whether the sibling stays full enough without the entry next to the node that is short
+    private boolean canLend(Node sibling, boolean fromLeft) {
+        if (!sibling.isLeafNode()) {
+            return sibling.getKeyCount() > this.minInternalNodeKeys;
+        }
+        LeafNode leafNode = (LeafNode) sibling;
+        int idx = fromLeft ? leafNode.getKeyCount() - 1 : 0;
+        return leafNode.getKeyCount() > 1
+                && leafNode.getUsedBytes() - leafNode.getEntrySize(leafNode.getRecordLength(idx)) >= this.minLeafNodeBytes;
+    }
+
+    /*
+        fixes the nodes on the path to the key that fell below half full, bottom up: a node
+        borrows from a sibling under the same parent when it can spare an entry, otherwise the
+        right one of the two is merged into the left one and freed, which may leave the parent
+        short in turn. Leaves count bytes rather than entries, two leaves whose records don't
+        fit in one page are left as they are. A root left with a single child is replaced by it.
+        Entries move to the left here, which a concurrent writer or cursor going right could
+        miss, so this runs under the exclusive tree lock. Optimistic readers still run: every
+        node is changed under its write latch and freed pages stay write latched for good
+     */
+    private void rebalance(byte[] key) throws Exception {
+        this.treeLock.writeLock().lock();
+        LatchStack latches = this.changeLatches();
+        try {
+            // no split is half way done now, every node is linked from its parent
+            List<InternalNode> parents = new ArrayList<>();
+            List<Integer> slots = new ArrayList<>();
+            Node node = latches.latch(this.metadata.getRootNodeNumber(), false);
+            while (!node.isLeafNode()) {
+                InternalNode internalNode = (InternalNode) node;
+                int slot = internalNode.findChild(key);
+                parents.add(internalNode);
+                slots.add(slot);
+                node = latches.latch(internalNode.getValue(slot), false);
+            }
+            for (int depth = parents.size() - 1; depth >= 0 && this.underflows(node); depth--) {
+                if (!this.fixUnderflow(latches, parents.get(depth), slots.get(depth), node)) {
+                    break;
+                }
+                node = parents.get(depth);
+            }
+            if (!parents.isEmpty() && parents.get(0).getKeyCount() == 0) {
+                InternalNode root = parents.get(0);
+                latches.upgrade(root);
+                latches.beforeRootChange(root.getNodeNo());
+                this.metadata.setRootNodeNumber(root.getValue(0));
+                this.freePage(latches, root);
+            }
+        } finally {
+            latches.releaseAll();
+            this.treeLock.writeLock().unlock();
+        }
+    }
 
+    // returns true when the node was merged, the parent lost an entry then
+    private boolean fixUnderflow(LatchStack latches, InternalNode parent, int slot, Node node) throws Exception {
+        if (parent.getKeyCount() == 0) {
+            // no sibling under the same parent
+            return false;
+        }
+        boolean fromLeft = slot > 0;
+        Node sibling = latches.latch(parent.getValue(fromLeft ? slot - 1 : slot + 1), false);
+        Node left = fromLeft ? sibling : node;
+        Node right = fromLeft ? node : sibling;
+        // separator between the two in the parent
+        int sep = fromLeft ? slot - 1 : slot;
+        if (node.isLeafNode() && (this.pinnedByOthers(left) || this.pinnedByOthers(right))) {
+            // a cursor stands on it, leave it to a later delete
+            return false;
+        }
+        boolean borrow = this.canLend(sibling, fromLeft);
+        if (!borrow && node.isLeafNode()
+                && ((LeafNode) left).getUsedBytes() + ((LeafNode) right).getUsedBytes() > ((LeafNode) left).getCapacity()) {
+            // big records, the sibling can't spare one and the two don't fit in one page
+            return false;
+        }
+        latches.upgrade(parent);
+        latches.upgrade(left);
+        latches.upgrade(right);
+        if (borrow) {
+            byte[] separator = node.isLeafNode()
+                    ? this.borrowLeaf((LeafNode) left, (LeafNode) right, fromLeft)
+                    : this.borrowInternal((InternalNode) left, (InternalNode) right, parent.getKey(sep), fromLeft);
+            parent.setKey(sep, separator);
+            left.setHighKey(separator);
+            this.markDirty(parent);
+            this.markDirty(left);
+            this.markDirty(right);
+            return false;
+        }
+        if (node.isLeafNode()) {
+            ((LeafNode) left).mergeFrom((LeafNode) right);
+        } else {
+            ((InternalNode) left).mergeFrom(parent.getKey(sep), (InternalNode) right);
+        }
+        left.setNext(right.getNext());
+        left.setHighKey(right.getHighKey());
+        parent.remove(sep);
+        this.markDirty(parent);
+        this.markDirty(left);
+        this.freePage(latches, right);
         return true;
     }
-}
\ No newline at end of file
+
+    /*
+        moves entries across, towards the node that is short, until it no longer is or the
+        sibling can't spare another one, and returns the new separator
+     */
+    private byte[] borrowLeaf(LeafNode left, LeafNode right, boolean fromLeft) {
+        do {
+            if (fromLeft) {
+                int last = left.getKeyCount() - 1;
+                right.insert(0, left.getKey(last), left.getRecord(last));
+                left.remove(last);
+            } else {
+                left.insert(left.getKeyCount(), right.getKey(0), right.getRecord(0));
+                right.remove(0);
+            }
+        } while (this.underflows(fromLeft ? right : left) && this.canLend(fromLeft ? left : right, fromLeft));
+        return right.getKey(0);
+    }
+
+    // internal entries rotate through the parent: its separator comes down, the sibling's goes up
+    private byte[] borrowInternal(InternalNode left, InternalNode right, byte[] separator, boolean fromLeft) {
+        if (fromLeft) {
+            int last = left.getKeyCount() - 1;
+            right.prepend(separator, left.getValue(last + 1));
+            byte[] up = left.getKey(last);
+            left.remove(last);
+            return up;
+        }
+        left.insert(left.getKeyCount(), separator, right.getValue(0));
+        byte[] up = right.getKey(0);
+        right.removeFirst();
+        return up;
+    }
+
+    private boolean pinnedByOthers(Node node) {
+        // the latch stack holds one pin
+        return this.bufferPool.getPinCount(node.getNodeNo()) > 1;
+    }
+
+    // the node is latched exclusively, it stays that way so readers still holding it start over
+    private void freePage(LatchStack latches, Node node) throws Exception {
+        this.freedPages++;
+        latches.discard(node);
+        ZoneMap zones = this.zones;
+        if (zones != null) {
+            zones.remove(node.getNodeNo());
+        }
+        this.releasePage(node.getNodeNo());
+        this.saveMetadata();
+    }
+}
@@ -0,0 +1,172 @@
+package storage;
+
+public class TableConfig {
+    private long cacheSize = 1024 * 1024;
+    private StorageMode storageMode = StorageMode.FILE;
+    private boolean walEnabled = false;
+    // background checkpoint (a flush of the dirty pages without the log) every interval,
+    // or earlier once this many pages are dirty
+    private long checkpointIntervalMillis = 5000;
+    private int checkpointDirtyPages = 64;
+    // without the log a flush asked for by a writer stops once this few pages are dirty
+    private int flushLowWatermark = 16;
+    // writers wait for the background flush while this many pages are dirty
+    private int maxDirtyPages = 256;
+    // bits per key of the Bloom filter over the keys, 0 for none
+    private int bloomFilterBitsPerKey = 0;
+    // keys the filter is sized for at first, it is rebuilt twice as big once they are passed
+    private long bloomFilterKeys = 1 << 16;
+    // registers the stats of the table with the platform MBean server
+    private boolean jmxEnabled = true;
+    // keeps the smallest and largest value of every fixed size column of each leaf, filtered
+    // scans skip the leaves none of whose rows can match
+    private boolean zoneMapsEnabled = false;
+    // pages loaded into the cache on open: the internal nodes and the pages that were hot before
+    private WarmUpMode warmUpMode = WarmUpMode.OFF;
+    // how often the list of hot pages is saved, it is saved on close as well
+    private long hotPagesIntervalMillis = 60000;
+    // bytes of page images kept in memory for open snapshots, past it they go to a spill file
+    private long snapshotMemory = 64L * 1024 * 1024;
+    // columns the rows are ordered by, together they must be unique
+    private String[] keyColumns = {"id"};
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    public void setStorageMode(StorageMode storageMode) {
+        this.storageMode = storageMode;
+    }
+
+    public boolean isWalEnabled() {
+        return walEnabled;
+    }
+
+    public void setWalEnabled(boolean walEnabled) {
+        this.walEnabled = walEnabled;
+    }
+
+    public long getCheckpointIntervalMillis() {
+        return checkpointIntervalMillis;
+    }
+
+    public void setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    public int getCheckpointDirtyPages() {
+        return checkpointDirtyPages;
+    }
+
+    public void setCheckpointDirtyPages(int checkpointDirtyPages) {
+        this.checkpointDirtyPages = checkpointDirtyPages;
+    }
+
+    public int getFlushLowWatermark() {
+        return flushLowWatermark;
+    }
+
+    public void setFlushLowWatermark(int flushLowWatermark) {
+        this.flushLowWatermark = flushLowWatermark;
+    }
+
+    public int getMaxDirtyPages() {
+        return maxDirtyPages;
+    }
+
+    public void setMaxDirtyPages(int maxDirtyPages) {
+        this.maxDirtyPages = maxDirtyPages;
+    }
+
+    public int getBloomFilterBitsPerKey() {
+        return bloomFilterBitsPerKey;
+    }
+
+    public void setBloomFilterBitsPerKey(int bloomFilterBitsPerKey) {
+        this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+    }
+
+    public long getBloomFilterKeys() {
+        return bloomFilterKeys;
+    }
+
+    public void setBloomFilterKeys(long bloomFilterKeys) {
+        this.bloomFilterKeys = bloomFilterKeys;
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    public void setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    public boolean isZoneMapsEnabled() {
+        return zoneMapsEnabled;
+    }
+
+    public void setZoneMapsEnabled(boolean zoneMapsEnabled) {
+        this.zoneMapsEnabled = zoneMapsEnabled;
+    }
+
+    public WarmUpMode getWarmUpMode() {
+        return warmUpMode;
+    }
+
+    public void setWarmUpMode(WarmUpMode warmUpMode) {
+        this.warmUpMode = warmUpMode;
+    }
+
+    public long getHotPagesIntervalMillis() {
+        return hotPagesIntervalMillis;
+    }
+
+    public void setHotPagesIntervalMillis(long hotPagesIntervalMillis) {
+        this.hotPagesIntervalMillis = hotPagesIntervalMillis;
+    }
+
+    public long getSnapshotMemory() {
+        return snapshotMemory;
+    }
+
+    public void setSnapshotMemory(long snapshotMemory) {
+        this.snapshotMemory = snapshotMemory;
+    }
+
+    public String[] getKeyColumns() {
+        return keyColumns;
+    }
+
+    public void setKeyColumns(String... keyColumns) {
+        this.keyColumns = keyColumns;
+    }
+
+    TableConfig copy() {
+        TableConfig copy = new TableConfig();
+        copy.setCacheSize(this.cacheSize);
+        copy.setStorageMode(this.storageMode);
+        copy.setWalEnabled(this.walEnabled);
+        copy.setCheckpointIntervalMillis(this.checkpointIntervalMillis);
+        copy.setCheckpointDirtyPages(this.checkpointDirtyPages);
+        copy.setFlushLowWatermark(this.flushLowWatermark);
+        copy.setMaxDirtyPages(this.maxDirtyPages);
+        copy.setBloomFilterBitsPerKey(this.bloomFilterBitsPerKey);
+        copy.setBloomFilterKeys(this.bloomFilterKeys);
+        copy.setJmxEnabled(this.jmxEnabled);
+        copy.setZoneMapsEnabled(this.zoneMapsEnabled);
+        copy.setWarmUpMode(this.warmUpMode);
+        copy.setHotPagesIntervalMillis(this.hotPagesIntervalMillis);
+        copy.setSnapshotMemory(this.snapshotMemory);
+        copy.setKeyColumns(this.keyColumns.clone());
+        return copy;
+    }
+}
@@ -0,0 +1,127 @@
+package storage;
+
+import models.Filter;
+import models.Row;
+
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/*
+    Spliterator over the keys in [from, to) of a table, the last one of a table includes to.
+    It splits at the separators of the internal nodes: the middle separator within its range
+    of the node on its level that covers the range, and a level further down once that node
+    has none left. The parts are the key ranges of disjoint subtrees, down to a few leaves,
+    and each part scans the leaves of its range with a cursor of its own.
+    Its size is estimated from the pages of the table, every page taken for a leaf holding half
+    of what fits, and halved with every split like the range mostly is.
+    Cursors still open when the stream is closed are released then.
+ */
+class TableSpliterator implements Spliterator<Row> {
+    // parts of fewer leaves are scanned as they are, a task of their own costs more than it saves
+    private static final int MIN_SPLIT_LEAVES = 8;
+
+    private final Table table;
+    private byte[] from;
+    private final byte[] to;
+    private final boolean toInclusive;
+    private final String[] columns;
+    private final List<Filter> filters;
+    // level the next split is looked for on, 0 once only the leaves are left
+    private int level;
+    // estimated leaves of the range, and the rows of a leaf
+    private long leaves;
+    private final int leafRows;
+    // cursors of this spliterator and all parts split from it
+    private final Set<RangeScan> open;
+    private RangeScan scan;
+
+    TableSpliterator(Table table, byte[] from, byte[] to, boolean toInclusive, int level, long leaves, int leafRows, List<Filter> filters, String[] columns, Set<RangeScan> open) {
+        this.table = table;
+        this.from = from;
+        this.to = to;
+        this.toInclusive = toInclusive;
+        this.level = level;
+        this.leaves = leaves;
+        this.leafRows = leafRows;
+        this.columns = columns;
+        this.filters = filters;
+        this.open = open;
+    }
+
+    @Override
+    public Spliterator<Row> trySplit() {
+        if (this.scan != null || this.leaves < 2 * MIN_SPLIT_LEAVES) {
+            return null;
+        }
+        try {
+            while (this.level > 0) {
+                byte[] key = this.table.splitKey(this.from, this.to, this.level);
+                if (key != null) {
+                    TableSpliterator prefix = new TableSpliterator(this.table, this.from, key, false, this.level,
+                            this.leaves / 2, this.leafRows, this.filters, this.columns, this.open);
+                    this.from = key;
+                    this.leaves -= prefix.leaves;
+                    return prefix;
+                }
+                this.level--;
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("failed to split table scan", e);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Row> action) {
+        try {
+            if (this.scan == null) {
+                this.scan = new RangeScan(this.table, this.from, this.to, this.toInclusive, this.filters, 0, this.table.getReadAhead(), this.columns);
+                this.open.add(this.scan);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("failed to start table scan", e);
+        }
+        if (!this.scan.hasNext()) {
+            // the cursor closed itself at the end
+            this.open.remove(this.scan);
+            return false;
+        }
+        action.accept(this.scan.next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Row> action) {
+        try {
+            while (this.tryAdvance(action)) {
+                // each call hands one row to the action
+            }
+        } finally {
+            if (this.scan != null) {
+                this.scan.close();
+                this.open.remove(this.scan);
+            }
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        return this.leaves * this.leafRows;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.NONNULL;
+    }
+
+    void close() {
+        for (RangeScan scan : this.open) {
+            scan.close();
+        }
+        this.open.clear();
+    }
+}
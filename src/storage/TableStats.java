@@ -0,0 +1,224 @@
+package storage;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/*
+    Counters and latencies of one table, from when it was opened or last reset. Page I/O is
+    counted by the store, cache hits and misses by the buffer pool, the rest by the table.
+ */
+public class TableStats implements TableStatsMXBean {
+    private final BufferPool bufferPool;
+    private final IntSupplier treeHeight;
+    private final VersionStore versions;
+    private final LongAdder pageReads = new LongAdder();
+    private final LongAdder pageWrites = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder leafSplits = new LongAdder();
+    private final LongAdder internalSplits = new LongAdder();
+    private final LongAdder flushedPages = new LongAdder();
+    private final LongAdder skippedLeaves = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+    private final LatencyHistogram insertLatency = new LatencyHistogram();
+    private final LatencyHistogram searchLatency = new LatencyHistogram();
+    private final LatencyHistogram updateLatency = new LatencyHistogram();
+    private final LatencyHistogram deleteLatency = new LatencyHistogram();
+    // pages loaded by the warm-up on open and how long it took, set once it is done
+    private volatile int warmUpPages;
+    private volatile long warmUpNanos;
+    // why the warm-up stopped before it was done, null unless it failed
+    private volatile Exception warmUpFailure;
+    // the pool counts from its start, a reset only moves these
+    private volatile long hitsBase;
+    private volatile long missesBase;
+
+    TableStats(BufferPool bufferPool, IntSupplier treeHeight, VersionStore versions) {
+        this.bufferPool = bufferPool;
+        this.treeHeight = treeHeight;
+        this.versions = versions;
+    }
+
+    void pageRead(int bytes) {
+        this.pageReads.increment();
+        this.bytesRead.add(bytes);
+    }
+
+    void pagesWritten(int pages, long bytes) {
+        this.pageWrites.add(pages);
+        this.bytesWritten.add(bytes);
+    }
+
+    void split(boolean leaf) {
+        (leaf ? this.leafSplits : this.internalSplits).increment();
+    }
+
+    void skipped(int leaves) {
+        this.skippedLeaves.add(leaves);
+    }
+
+    void warmedUp(int pages, long nanos) {
+        this.warmUpPages = pages;
+        this.warmUpNanos = nanos;
+    }
+
+    void flushFailed() {
+        this.flushFailures.increment();
+    }
+
+    void warmUpFailed(Exception e) {
+        this.warmUpFailure = e;
+    }
+
+    void flushed(int pages, long nanos) {
+        this.flushedPages.add(pages);
+        this.flushLatency.record(nanos);
+    }
+
+    public long getPageReads() {
+        return pageReads.sum();
+    }
+
+    public long getPageWrites() {
+        return pageWrites.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getCacheHits() {
+        return this.bufferPool.getHits() - this.hitsBase;
+    }
+
+    public long getCacheMisses() {
+        return this.bufferPool.getMisses() - this.missesBase;
+    }
+
+    public double getCacheHitRatio() {
+        long hits = this.getCacheHits();
+        long total = hits + this.getCacheMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public int getCachedPages() {
+        return this.bufferPool.size();
+    }
+
+    public int getCacheCapacity() {
+        return this.bufferPool.getCapacity();
+    }
+
+    public int getDirtyPages() {
+        return this.bufferPool.getDirtyCount();
+    }
+
+    public long getLeafSplits() {
+        return leafSplits.sum();
+    }
+
+    public long getInternalSplits() {
+        return internalSplits.sum();
+    }
+
+    public int getTreeHeight() {
+        return this.treeHeight.getAsInt();
+    }
+
+    public long getFlushedPages() {
+        return flushedPages.sum();
+    }
+
+    // rounds of the flusher that failed to write the table back
+    public long getFlushFailures() {
+        return flushFailures.sum();
+    }
+
+    // leaves filtered scans passed over by their zone map, without reading them
+    public long getSkippedLeaves() {
+        return skippedLeaves.sum();
+    }
+
+    public int getOpenSnapshots() {
+        return versions.getOpenCount();
+    }
+
+    // earlier images of pages kept for the open snapshots
+    public int getSnapshotImages() {
+        return versions.getImageCount();
+    }
+
+    public long getSnapshotImageBytes() {
+        return versions.getImageBytes();
+    }
+
+    // bytes of the images that passed the snapshot memory and went to the spill file
+    public long getSnapshotSpilledBytes() {
+        return versions.getSpilledBytes();
+    }
+
+    // not reset, it happens once per open
+    public int getWarmUpPages() {
+        return warmUpPages;
+    }
+
+    public long getWarmUpMillis() {
+        return warmUpNanos / 1_000_000;
+    }
+
+    public Exception getWarmUpFailure() {
+        return warmUpFailure;
+    }
+
+    public String getWarmUpError() {
+        Exception failure = this.warmUpFailure;
+        return failure == null ? null : failure.toString();
+    }
+
+    // one entry per write back or checkpoint that wrote any page
+    public LatencyHistogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    public LatencyHistogram getInsertLatency() {
+        return insertLatency;
+    }
+
+    public LatencyHistogram getSearchLatency() {
+        return searchLatency;
+    }
+
+    public LatencyHistogram getUpdateLatency() {
+        return updateLatency;
+    }
+
+    public LatencyHistogram getDeleteLatency() {
+        return deleteLatency;
+    }
+
+    public void reset() {
+        for (LongAdder counter : new LongAdder[]{pageReads, pageWrites, bytesRead, bytesWritten, leafSplits, internalSplits, flushedPages, skippedLeaves}) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : new LatencyHistogram[]{flushLatency, insertLatency, searchLatency, updateLatency, deleteLatency}) {
+            histogram.reset();
+        }
+        this.hitsBase = this.bufferPool.getHits();
+        this.missesBase = this.bufferPool.getMisses();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pages read=%d written=%d, bytes read=%d written=%d, cache hits=%d misses=%d (%.1f%%), " +
+                        "splits leaf=%d internal=%d, height=%d, snapshots=%d (%d images, %d bytes, %d spilled), warm-up=%d pages in %dms\n  insert %s\n  search %s\n  update %s\n  delete %s\n  flush  %s",
+                this.getPageReads(), this.getPageWrites(), this.getBytesRead(), this.getBytesWritten(),
+                this.getCacheHits(), this.getCacheMisses(), this.getCacheHitRatio() * 100,
+                this.getLeafSplits(), this.getInternalSplits(), this.getTreeHeight(), this.getOpenSnapshots(), this.getSnapshotImages(), this.getSnapshotImageBytes(), this.getSnapshotSpilledBytes(), this.getWarmUpPages(), this.getWarmUpMillis(),
+                this.insertLatency, this.searchLatency, this.updateLatency, this.deleteLatency, this.flushLatency);
+    }
+}
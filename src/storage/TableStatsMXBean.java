@@ -0,0 +1,35 @@
+package storage;
+
+// what a table registers with JMX, as db.storage:type=Table,name=<table>
+public interface TableStatsMXBean {
+    long getPageReads();
+    long getPageWrites();
+    long getBytesRead();
+    long getBytesWritten();
+    long getCacheHits();
+    long getCacheMisses();
+    double getCacheHitRatio();
+    int getCachedPages();
+    int getCacheCapacity();
+    int getDirtyPages();
+    long getLeafSplits();
+    long getInternalSplits();
+    int getTreeHeight();
+    long getFlushedPages();
+    long getFlushFailures();
+    long getSkippedLeaves();
+    int getOpenSnapshots();
+    int getSnapshotImages();
+    long getSnapshotImageBytes();
+    long getSnapshotSpilledBytes();
+    int getWarmUpPages();
+    long getWarmUpMillis();
+    // null unless the warm-up failed
+    String getWarmUpError();
+    LatencyHistogram getFlushLatency();
+    LatencyHistogram getInsertLatency();
+    LatencyHistogram getSearchLatency();
+    LatencyHistogram getUpdateLatency();
+    LatencyHistogram getDeleteLatency();
+    void reset();
+}
@@ -0,0 +1,317 @@
+package storage;
+
+import interfaces.Node;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Earlier images of pages for the open snapshots. Every snapshot gets the next epoch. Every
+    change to the tree runs in the generation it started in, tagged with the epoch of the newest
+    snapshot then. The first change of a generation to latch a page exclusively stores the page
+    as it still is, tagged with that epoch, provided a snapshot that old is open; later changes
+    of the same generation store nothing. The page as a snapshot saw it is then the oldest image
+    tagged with its epoch or a later one, or the page itself when there is none. The root of the
+    tree is kept the same way, as page 0.
+    A snapshot starts a new generation and waits for the changes of the ones before it to finish,
+    it sees those whole. Changes that start later are not held up.
+    Images no open snapshot resolves to are dropped whenever a snapshot is closed. Past the memory
+    budget images go to a spill file (<table>.snap) instead, read back from there when needed.
+    The file starts over once no image in it is left, it is deleted on close.
+ */
+class VersionStore {
+    private static final class Version {
+        private final long epoch;
+        // null once the image went to the spill file
+        private final byte[] image;
+        private final long offset;
+        private final int length;
+
+        private Version(long epoch, byte[] image) {
+            this.epoch = epoch;
+            this.image = image;
+            this.offset = -1;
+            this.length = image.length;
+        }
+
+        private Version(long epoch, long offset, int length) {
+            this.epoch = epoch;
+            this.image = null;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    interface PageEncoder {
+        byte[] encode(Node node) throws Exception;
+    }
+
+    private static final class Generation {
+        private final long epoch;
+        private final LongAdder running = new LongAdder();
+
+        private Generation(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    /*
+        one change to the tree, told of every page it is about to change. It has to be ended once
+        its latches are let go of, snapshots taken meanwhile wait for it
+     */
+    final class Writer implements LatchStack.ChangeListener {
+        private final Generation generation;
+        private final PageEncoder encoder;
+        private boolean ended;
+
+        private Writer(Generation generation, PageEncoder encoder) {
+            this.generation = generation;
+            this.encoder = encoder;
+        }
+
+        @Override
+        public void beforeChange(Node node) throws Exception {
+            long epoch = this.generation.epoch;
+            if (needsImage(node.getNodeNo(), epoch)) {
+                keep(node.getNodeNo(), this.encoder.encode(node), epoch);
+            }
+        }
+
+        @Override
+        public void beforeRootChange(int root) throws Exception {
+            long epoch = this.generation.epoch;
+            if (needsImage(0, epoch)) {
+                keep(0, ByteBuffer.allocate(Integer.BYTES).putInt(root).array(), epoch);
+            }
+        }
+
+        @Override
+        public void released() {
+            if (this.ended) {
+                return;
+            }
+            this.ended = true;
+            this.generation.running.decrement();
+            if (this.generation != current) {
+                // a snapshot may be waiting for it
+                synchronized (VersionStore.this) {
+                    VersionStore.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    private final long memoryBudget;
+    private final Path spillPath;
+    // images of each page, oldest first. A list is replaced as a whole, never changed
+    private final Map<Integer, List<Version>> versions = new ConcurrentHashMap<>();
+    // open snapshots by epoch, with how many were taken at it
+    private final TreeMap<Long, Integer> open = new TreeMap<>();
+    // snapshots are opened one at a time, each waits for the generations before its own
+    private final Object opening = new Object();
+    private volatile Generation current = new Generation(0);
+    private long lastEpoch;
+    // epoch of the oldest open snapshot, 0 when there is none
+    private volatile long oldest;
+    private long imageBytes;
+    // null until the first image is spilled
+    private volatile FileChannel spill;
+    private long spillEnd;
+    private long spilledBytes;
+
+    VersionStore(long memoryBudget, Path spillPath) {
+        this.memoryBudget = memoryBudget;
+        this.spillPath = spillPath;
+    }
+
+    // starts a change, counted in the generation running now
+    Writer begin(PageEncoder encoder) {
+        while (true) {
+            Generation generation = this.current;
+            generation.running.increment();
+            if (generation == this.current) {
+                return new Writer(generation, encoder);
+            }
+            // a snapshot started a new one meanwhile and may have found this one done already
+            generation.running.decrement();
+        }
+    }
+
+    // returns the epoch of the new snapshot once the changes started before it are done
+    long open() throws InterruptedException {
+        synchronized (this.opening) {
+            Generation previous;
+            long epoch;
+            synchronized (this) {
+                epoch = ++this.lastEpoch;
+                this.open.merge(epoch, 1, Integer::sum);
+                this.oldest = this.open.firstKey();
+                previous = this.current;
+                this.current = new Generation(epoch);
+            }
+            boolean done = false;
+            try {
+                synchronized (this) {
+                    while (previous.running.sum() != 0) {
+                        // told by the changes of the generation as they end, the timeout is a fallback
+                        this.wait(1);
+                    }
+                }
+                done = true;
+            } finally {
+                if (!done) {
+                    this.close(epoch);
+                }
+            }
+            return epoch;
+        }
+    }
+
+    synchronized void close(long epoch) {
+        if (this.open.merge(epoch, -1, Integer::sum) == 0) {
+            this.open.remove(epoch);
+        }
+        this.oldest = this.open.isEmpty() ? 0 : this.open.firstKey();
+        this.prune();
+    }
+
+    // true when the page has to be kept before a change of the generation of the epoch changes it
+    private boolean needsImage(int no, long epoch) {
+        long oldest = this.oldest;
+        if (oldest == 0 || oldest > epoch) {
+            return false;
+        }
+        List<Version> list = this.versions.get(no);
+        return list == null || list.get(list.size() - 1).epoch < epoch;
+    }
+
+    // called with the page latched exclusively, or no longer reachable, so one at a time per page
+    private synchronized void keep(int no, byte[] image, long epoch) throws IOException {
+        Version version;
+        if (this.imageBytes + image.length <= this.memoryBudget) {
+            version = new Version(epoch, image);
+            this.imageBytes += image.length;
+        } else {
+            if (this.spilledBytes == 0 && this.spillEnd > 0) {
+                // every image in the file was dropped, it starts over
+                this.spill.truncate(0);
+                this.spillEnd = 0;
+            }
+            version = new Version(epoch, this.spillEnd, image.length);
+            this.spillChannel().write(ByteBuffer.wrap(image), this.spillEnd);
+            this.spillEnd += image.length;
+            this.spilledBytes += image.length;
+        }
+        this.versions.compute(no, (page, list) -> {
+            List<Version> copy = list == null ? new ArrayList<>() : new ArrayList<>(list);
+            copy.add(version);
+            return copy;
+        });
+    }
+
+    // the page as the snapshot of the epoch saw it, null when it is the page as it is now
+    byte[] find(int no, long epoch) throws IOException {
+        List<Version> list = this.versions.get(no);
+        if (list != null) {
+            for (Version version : list) {
+                if (version.epoch >= epoch) {
+                    return version.image != null ? version.image : this.readSpilled(version);
+                }
+            }
+        }
+        return null;
+    }
+
+    // the spill file is only emptied once no image points into it, so it is read without the lock
+    private byte[] readSpilled(Version version) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(version.length);
+        FileChannel channel = this.spill;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, version.offset + buffer.position()) < 0) {
+                throw new IOException("snapshot spill file is short: " + this.spillPath);
+            }
+        }
+        return buffer.array();
+    }
+
+    private FileChannel spillChannel() throws IOException {
+        if (this.spill == null) {
+            this.spill = FileChannel.open(this.spillPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        return this.spill;
+    }
+
+    synchronized int getOpenCount() {
+        int count = 0;
+        for (int n : this.open.values()) {
+            count += n;
+        }
+        return count;
+    }
+
+    int getImageCount() {
+        int count = 0;
+        for (List<Version> list : this.versions.values()) {
+            count += list.size();
+        }
+        return count;
+    }
+
+    synchronized long getImageBytes() {
+        return this.imageBytes;
+    }
+
+    synchronized long getSpilledBytes() {
+        return this.spilledBytes;
+    }
+
+    // called once the table is closed, with no change running
+    synchronized void shutdown() throws IOException {
+        this.versions.clear();
+        this.imageBytes = 0;
+        this.spilledBytes = 0;
+        if (this.spill != null) {
+            this.spill.close();
+            this.spill = null;
+        }
+    }
+
+    // keeps the image each open snapshot resolves to, runs under the monitor so no snapshot opens meanwhile
+    private void prune() {
+        for (Map.Entry<Integer, List<Version>> entry : this.versions.entrySet()) {
+            this.versions.computeIfPresent(entry.getKey(), (page, list) -> {
+                List<Version> kept = new ArrayList<>();
+                for (long epoch : this.open.keySet()) {
+                    for (Version version : list) {
+                        if (version.epoch >= epoch) {
+                            if (!kept.contains(version)) {
+                                kept.add(version);
+                            }
+                            break;
+                        }
+                    }
+                }
+                for (Version version : list) {
+                    if (!kept.contains(version)) {
+                        if (version.image != null) {
+                            this.imageBytes -= version.length;
+                        } else {
+                            this.spilledBytes -= version.length;
+                        }
+                    }
+                }
+                return kept.isEmpty() ? null : kept;
+            });
+        }
+    }
+}
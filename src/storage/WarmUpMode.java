@@ -0,0 +1,10 @@
+package storage;
+
+public enum WarmUpMode {
+    // the cache starts empty and no list of hot pages is kept
+    OFF,
+    // open returns right away, a background thread loads the pages
+    BACKGROUND,
+    // open returns once the pages are loaded
+    BLOCKING
+}
@@ -0,0 +1,270 @@
+package storage;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*
+    Append only log of the changes made to a table.
+
+    file:   [magic 4][base lsn 8][record]...
+    record: [body length 4][type 1][page 4][body][crc 4]
+
+    The page number is only set for page images, row changes carry the row or its encoded key in the body.
+
+    The lsn of a record is base lsn + its offset after the header, so lsns keep
+    growing across truncations. Records are buffered in memory and become durable
+    on commit: the first committer writes out everything buffered so far with a
+    single force(), commits arriving meanwhile wait and are covered by the next one.
+ */
+public final class WriteAheadLog {
+    public static final byte INSERT = 1;
+    public static final byte UPDATE = 2;
+    public static final byte DELETE = 3;
+    // page image written by a checkpoint, body is [snapshot lsn 8][page]
+    public static final byte PAGE = 4;
+    // all page images of the checkpoint are logged, body is [snapshot lsn 8]
+    public static final byte CHECKPOINT = 5;
+
+    private static final int MAGIC = 0x57414C31;
+    private static final int FILE_HEADER_SIZE = 12;
+    private static final int RECORD_OVERHEAD = 13;
+
+    public static class LogRecord {
+        private final long lsn;
+        private final byte type;
+        private final int page;
+        private final ByteBuffer body;
+
+        private LogRecord(long lsn, byte type, int page, ByteBuffer body) {
+            this.lsn = lsn;
+            this.type = type;
+            this.page = page;
+            this.body = body;
+        }
+
+        public long getLsn() {
+            return lsn;
+        }
+
+        public byte getType() {
+            return type;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public ByteBuffer getBody() {
+            return body.duplicate();
+        }
+    }
+
+    private final Path path;
+    private FileChannel channel;
+    private long baseLsn;
+    // lsn the next record gets
+    private long nextLsn;
+    // everything below it is on disk and forced
+    private long durableLsn;
+    private ByteBuffer pending;
+    private boolean flushing;
+    private long commits;
+    private long forces;
+
+    public WriteAheadLog(String path) throws Exception {
+        this.path = Path.of(path);
+        boolean exists = Files.exists(this.path) && Files.size(this.path) >= FILE_HEADER_SIZE;
+        this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.pending = ByteBuffer.allocate(64 * 1024);
+        if (exists) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new Exception("not a write ahead log: " + path);
+            }
+            this.baseLsn = header.getLong();
+        } else {
+            this.baseLsn = 0;
+            writeHeader(channel, 0);
+        }
+        // drop a torn tail left by a crash so new records follow the last valid one
+        long end = this.baseLsn;
+        for (LogRecord record : this.readAll()) {
+            end = record.lsn + RECORD_OVERHEAD + record.body.remaining();
+        }
+        this.nextLsn = end;
+        this.durableLsn = end;
+        channel.truncate(position(end));
+        channel.position(position(end));
+    }
+
+    private static void writeHeader(FileChannel channel, long baseLsn) throws Exception {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putLong(baseLsn);
+        header.flip();
+        channel.write(header, 0);
+    }
+
+    private long position(long lsn) {
+        return FILE_HEADER_SIZE + (lsn - baseLsn);
+    }
+
+    // buffers a record and returns the lsn just past it, pass that to commit
+    public synchronized long append(byte type, int page, byte[] body) {
+        int length = RECORD_OVERHEAD + body.length;
+        if (pending.remaining() < length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + length));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        CRC32 crc = new CRC32();
+        int start = pending.position();
+        pending.putInt(body.length);
+        pending.put(type);
+        pending.putInt(page);
+        pending.put(body);
+        crc.update(pending.array(), start + 4, 5 + body.length);
+        pending.putInt((int) crc.getValue());
+        nextLsn += length;
+        return nextLsn;
+    }
+
+    // blocks until every record below lsn is durable
+    public void commit(long lsn) throws Exception {
+        ByteBuffer batch;
+        long batchEnd;
+        synchronized (this) {
+            commits++;
+            while (durableLsn < lsn && flushing) {
+                wait();
+            }
+            if (durableLsn >= lsn) {
+                return;
+            }
+            // become the leader and take everything buffered so far
+            flushing = true;
+            pending.flip();
+            batch = pending;
+            batchEnd = nextLsn;
+            pending = ByteBuffer.allocate(batch.capacity());
+        }
+        boolean done = false;
+        try {
+            while (batch.hasRemaining()) {
+                channel.write(batch);
+            }
+            channel.force(false);
+            done = true;
+        } finally {
+            synchronized (this) {
+                flushing = false;
+                if (done) {
+                    durableLsn = batchEnd;
+                    forces++;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    public synchronized long getNextLsn() {
+        return nextLsn;
+    }
+
+    public synchronized long getDurableLsn() {
+        return durableLsn;
+    }
+
+    // number of commit calls and of forces they needed, the ratio is the group size
+    public synchronized long getCommitCount() {
+        return commits;
+    }
+
+    public synchronized long getForceCount() {
+        return forces;
+    }
+
+    // reads every valid record on disk, stops at the first torn or corrupt one
+    public synchronized List<LogRecord> readAll() throws Exception {
+        List<LogRecord> records = new ArrayList<>();
+        long size = channel.size();
+        long offset = FILE_HEADER_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(9);
+        while (offset + RECORD_OVERHEAD <= size) {
+            header.clear();
+            channel.read(header, offset);
+            header.flip();
+            int length = header.getInt();
+            if (length < 0 || offset + RECORD_OVERHEAD + length > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + length);
+            channel.read(record, offset);
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 4, 5 + length);
+            if (record.getInt(RECORD_OVERHEAD - 4 + length) != (int) crc.getValue()) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.wrap(record.array(), 9, length).slice();
+            long lsn = baseLsn + (offset - FILE_HEADER_SIZE);
+            records.add(new LogRecord(lsn, record.get(4), record.getInt(5), body));
+            offset += RECORD_OVERHEAD + length;
+        }
+        return records;
+    }
+
+    /*
+        drops the records below lsn. The remaining tail is copied to a new file
+        which atomically replaces the log, lsns of the kept records don't change
+     */
+    public synchronized void truncate(long lsn) throws Exception {
+        while (flushing) {
+            wait();
+        }
+        if (lsn <= baseLsn) {
+            return;
+        }
+        // write out anything buffered so the copy has the whole tail
+        pending.flip();
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        pending.clear();
+        channel.force(false);
+        durableLsn = nextLsn;
+
+        Path tmp = Path.of(path + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(out, lsn);
+            long from = position(lsn);
+            long count = channel.size() - from;
+            long copied = 0;
+            while (copied < count) {
+                copied += channel.transferTo(from + copied, count - copied, out.position(FILE_HEADER_SIZE + copied));
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        baseLsn = lsn;
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    public synchronized void close() throws Exception {
+        while (flushing) {
+            wait();
+        }
+        channel.close();
+    }
+}
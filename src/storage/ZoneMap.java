@@ -0,0 +1,228 @@
+package storage;
+
+import models.Column;
+import models.Filter;
+import models.RowView;
+import tree.LeafNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/*
+    Summary of every leaf kept in memory next to the tree: the smallest and largest value of
+    each fixed size column, along with the right link and high key of the leaf. Scans with
+    filters pass over leaves whose summary rules out every row, without reading them.
+    Values are kept as longs ordered like the values: integers and dates as they are stored,
+    booleans as 0 and 1, floating point numbers with their bits rearranged.
+    A summary is replaced as a whole every time its leaf is marked dirty, while the leaf is
+    latched exclusively, and dropped when its page is freed. Readers take whichever summary is
+    there without a lock: leaves only lose rows to merges, which don't run during scans, so a
+    stale summary still covers every row the leaf had.
+ */
+class ZoneMap {
+    private static final int MAGIC = 0x5a4f4e45;
+
+    static final class Zone {
+        private final int next;
+        private final byte[] highKey;
+        private final int rows;
+        private final long[] min;
+        private final long[] max;
+
+        private Zone(int next, byte[] highKey, int rows, long[] min, long[] max) {
+            this.next = next;
+            this.highKey = highKey;
+            this.rows = rows;
+            this.min = min;
+            this.max = max;
+        }
+
+        int getNext() {
+            return next;
+        }
+
+        byte[] getHighKey() {
+            return highKey;
+        }
+    }
+
+    private final List<Column<?>> columns;
+    private final int[] offsets;
+    // indexes of the columns summarized, strings are left out
+    private final int[] tracked;
+    private final Map<Integer, Zone> zones;
+
+    ZoneMap(List<Column<?>> columns, int[] offsets) {
+        this.columns = columns;
+        this.offsets = offsets;
+        List<Integer> tracked = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            if (!columns.get(i).isVariableLength()) {
+                tracked.add(i);
+            }
+        }
+        this.tracked = tracked.stream().mapToInt(Integer::intValue).toArray();
+        this.zones = new ConcurrentHashMap<>();
+    }
+
+    // called with the leaf latched exclusively, after it changed
+    void update(LeafNode leaf) {
+        RowView view = new RowView(this.columns, this.offsets);
+        long[] min = new long[this.tracked.length];
+        long[] max = new long[this.tracked.length];
+        for (int i = 0; i < leaf.getKeyCount(); i++) {
+            leaf.wrap(i, view);
+            for (int j = 0; j < this.tracked.length; j++) {
+                long value = this.read(view, this.tracked[j]);
+                if (i == 0 || value < min[j]) {
+                    min[j] = value;
+                }
+                if (i == 0 || value > max[j]) {
+                    max[j] = value;
+                }
+            }
+        }
+        this.zones.put(leaf.getNodeNo(), new Zone(leaf.getNext(), leaf.getHighKey().clone(), leaf.getKeyCount(), min, max));
+    }
+
+    void remove(int page) {
+        this.zones.remove(page);
+    }
+
+    Zone get(int page) {
+        return this.zones.get(page);
+    }
+
+    int size() {
+        return this.zones.size();
+    }
+
+    private long read(RowView view, int column) {
+        Class<?> type = this.columns.get(column).getType();
+        if (type == Integer.class) {
+            return view.getInt(column);
+        } else if (type == Long.class || type == ZonedDateTime.class) {
+            return view.getLong(column);
+        } else if (type == Double.class) {
+            return sortable(view.getDouble(column));
+        } else if (type == Boolean.class) {
+            return view.getBoolean(column) ? 1 : 0;
+        }
+        return toLong(view.get(column));
+    }
+
+    private static long toLong(Object value) {
+        return switch (value) {
+            case Double d -> sortable(d);
+            case Float f -> sortable(f);
+            case Number n -> n.longValue();
+            case Boolean b -> b ? 1 : 0;
+            case ZonedDateTime t -> t.toEpochSecond();
+            default -> throw new IllegalArgumentException("no summary for values of type " + value.getClass().getSimpleName());
+        };
+    }
+
+    // flips the bits of negative numbers so the longs compare like the doubles
+    private static long sortable(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /*
+        false for a leaf none of whose rows can pass all the filters, filters on columns that
+        are not summarized never rule a leaf out
+     */
+    Predicate<Zone> bind(List<Filter> filters) {
+        Predicate<Zone> all = zone -> zone.rows > 0;
+        for (Filter filter : filters) {
+            int j = this.trackedIndex(filter.getColumn());
+            if (j == -1 || filter.getOp() == Filter.Op.PREFIX) {
+                continue;
+            }
+            long value = toLong(filter.getValue());
+            Predicate<Zone> test = switch (filter.getOp()) {
+                case EQ -> zone -> zone.min[j] <= value && value <= zone.max[j];
+                case LT -> zone -> zone.min[j] < value;
+                case GT -> zone -> zone.max[j] > value;
+                case BETWEEN -> {
+                    long to = toLong(filter.getTo());
+                    yield zone -> zone.max[j] >= value && zone.min[j] <= to;
+                }
+                default -> zone -> true;
+            };
+            all = all.and(test);
+        }
+        return all;
+    }
+
+    private int trackedIndex(String column) {
+        for (int j = 0; j < this.tracked.length; j++) {
+            if (this.columns.get(this.tracked[j]).getName().equals(column)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    void write(Path path) throws Exception {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(this.tracked.length);
+            out.writeInt(this.zones.size());
+            for (Map.Entry<Integer, Zone> entry : this.zones.entrySet()) {
+                Zone zone = entry.getValue();
+                out.writeInt(entry.getKey());
+                out.writeInt(zone.next);
+                out.writeInt(zone.rows);
+                out.writeShort(zone.highKey.length);
+                out.write(zone.highKey);
+                for (int j = 0; j < this.tracked.length; j++) {
+                    out.writeLong(zone.min[j]);
+                    out.writeLong(zone.max[j]);
+                }
+            }
+        }
+    }
+
+    // false when the file is not a complete map for these columns, nothing is read then
+    boolean read(Path path) {
+        Map<Integer, Zone> zones = new ConcurrentHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != this.tracked.length) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int page = in.readInt();
+                int next = in.readInt();
+                int rows = in.readInt();
+                byte[] highKey = new byte[in.readShort()];
+                in.readFully(highKey);
+                long[] min = new long[this.tracked.length];
+                long[] max = new long[this.tracked.length];
+                for (int j = 0; j < this.tracked.length; j++) {
+                    min[j] = in.readLong();
+                    max[j] = in.readLong();
+                }
+                zones.put(page, new Zone(next, highKey, rows, min, max));
+            }
+            if (in.read() != -1) {
+                return false;
+            }
+        } catch (Exception e) {
+            return false;
+        }
+        this.zones.putAll(zones);
+        return true;
+    }
+}
@@ -5,26 +5,38 @@ import models.Column;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 
 public class InternalNode implements Node {
     private final int maxKeys;
     private final int pageSize;
+    private final int keySize;
     private int nodeNo;
     private Boolean isLeafNode;
-    private int parent;
-    private List<Integer> keys;
-    private List<Integer> values;
-
-    public InternalNode(int pageNo, int pageSize, int maxRows) {
+    private int level;
+    // right sibling on the same level and the separator between the two (B-link)
+    private int next;
+    private byte[] highKey;
+    private final StampedLock latch;
+    private int keyCount;
+    // encoded keys back to back, one extra slot so a full node can take the key that triggers its split
+    private final byte[] keys;
+    // child page numbers, always keyCount + 1 of them
+    private final int[] values;
+
+    public InternalNode(int pageNo, int pageSize, int maxRows, int keySize) {
         this.nodeNo = pageNo;
         this.pageSize = pageSize;
-        this.keys = new ArrayList<>();
-        this.values = new ArrayList<>();
+        this.keySize = keySize;
+        this.keys = new byte[(maxRows + 1) * keySize];
+        this.highKey = new byte[keySize];
+        this.values = new int[maxRows + 2];
         this.isLeafNode = false;
         this.maxKeys = maxRows;
-        this.parent = -1;
+        this.next = -1;
+        this.latch = new StampedLock();
     }
 
     public boolean isLeafNode() {
@@ -35,32 +47,146 @@ public class InternalNode implements Node {
         isLeafNode = leafNode;
     }
 
-    public int getParent() {
-        return parent;
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public int getNext() {
+        return next;
+    }
+
+    public void setNext(int next) {
+        this.next = next;
+    }
+
+    public byte[] getHighKey() {
+        return highKey;
+    }
+
+    public void setHighKey(byte[] highKey) {
+        this.highKey = highKey;
+    }
+
+    public StampedLock getLatch() {
+        return latch;
+    }
+
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    public byte[] getKey(int index) {
+        return Arrays.copyOfRange(keys, index * keySize, (index + 1) * keySize);
+    }
+
+    public int compareKey(int index, byte[] key) {
+        return Arrays.compareUnsigned(keys, index * keySize, (index + 1) * keySize, key, 0, keySize);
+    }
+
+    public int findKey(byte[] key) {
+        int low = 0;
+        int high = keyCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareKey(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    public int getValueCount() {
+        return keyCount + 1;
+    }
+
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    public void setValue(int index, int value) {
+        values[index] = value;
+    }
+
+    public void setKey(int index, byte[] key) {
+        System.arraycopy(key, 0, keys, index * keySize, keySize);
     }
 
-    public void setParent(int parent) {
-        this.parent = parent;
+    // index of the child to descend into, keys equal to a separator go right
+    public int findChild(byte[] key) {
+        int idx = findKey(key);
+        return idx >= 0 ? idx + 1 : -idx - 1;
     }
 
-    public List<Integer> getKeys() {
-        return keys;
+    // initializes a new root with a single separator
+    public void init(int left, byte[] key, int right) {
+        System.arraycopy(key, 0, keys, 0, keySize);
+        values[0] = left;
+        values[1] = right;
+        keyCount = 1;
     }
 
-    public void setKeys(List<Integer> keys) {
-        this.keys = keys;
+    // inserts the key at index and its right child just after it
+    public void insert(int index, byte[] key, int value) {
+        System.arraycopy(keys, index * keySize, keys, (index + 1) * keySize, (keyCount - index) * keySize);
+        System.arraycopy(values, index + 1, values, index + 2, keyCount - index);
+        System.arraycopy(key, 0, keys, index * keySize, keySize);
+        values[index + 1] = value;
+        keyCount++;
     }
 
-    public List<Integer> getValues() {
-        return values;
+    public void remove(int index) {
+        System.arraycopy(keys, (index + 1) * keySize, keys, index * keySize, (keyCount - index - 1) * keySize);
+        System.arraycopy(values, index + 2, values, index + 1, keyCount - index - 1);
+        keyCount--;
     }
 
-    public void setValues(List<Integer> values) {
-        this.values = values;
+    // inserts the key in front with the child left of it, used when borrowing from the left sibling
+    public void prepend(byte[] key, int child) {
+        System.arraycopy(keys, 0, keys, keySize, keyCount * keySize);
+        System.arraycopy(values, 0, values, 1, keyCount + 1);
+        System.arraycopy(key, 0, keys, 0, keySize);
+        values[0] = child;
+        keyCount++;
+    }
+
+    // drops the first key and the child left of it
+    public void removeFirst() {
+        System.arraycopy(keys, keySize, keys, 0, (keyCount - 1) * keySize);
+        System.arraycopy(values, 1, values, 0, keyCount);
+        keyCount--;
+    }
+
+    // appends the separator from the parent and the keys and children of the right sibling
+    public void mergeFrom(byte[] separator, InternalNode right) {
+        System.arraycopy(separator, 0, keys, keyCount * keySize, keySize);
+        System.arraycopy(right.keys, 0, keys, (keyCount + 1) * keySize, right.keyCount * keySize);
+        System.arraycopy(right.values, 0, values, keyCount + 1, right.keyCount + 1);
+        keyCount += right.keyCount + 1;
+    }
+
+    /*
+        moves the keys after mid and their children to the (empty) right sibling,
+        the key at mid is dropped here and pushed up to the parent by the caller
+     */
+    public void moveTo(InternalNode right, int mid) {
+        int count = keyCount - mid - 1;
+        System.arraycopy(keys, (mid + 1) * keySize, right.keys, 0, count * keySize);
+        System.arraycopy(values, mid + 1, right.values, 0, count + 1);
+        right.keyCount = count;
+        keyCount = mid;
     }
 
     public boolean hasSpace() {
-        return keys.size() < this.maxKeys;
+        return keyCount < this.maxKeys;
     }
 
     @Override
@@ -76,53 +202,41 @@ public class InternalNode implements Node {
         return pageSize;
     }
 
-    private byte[] getByteArray(Integer value, int size) {
-        ByteBuffer buffer = ByteBuffer.allocate(size);
-        return buffer.putInt(value).array();
-    }
-
     public byte[] pack(List<Column<?>> columns) throws IOException {
         ByteBuffer buffer = ByteBuffer.allocate(pageSize);
         buffer.putInt(this.nodeNo); // 4 bytes node number
-        buffer.putInt(this.parent); // 4 bytes parent node number
-        buffer.putInt(this.keys.size()); // 4 bytes no of keys
+        buffer.putInt(this.level); // 4 bytes level
+        buffer.putInt(this.keyCount); // 4 bytes no of keys
         buffer.put((byte) ((boolean) this.isLeafNode ? 1 : 0));  // 1 byte is lead node
+        buffer.putInt(this.next); // 4 bytes right sibling
+        buffer.put(this.highKey); // key size bytes upper bound of the keys
 
         // add all the keys
-        for (Integer key : this.keys) {
-            int size = Integer.BYTES;
-            byte[] data = getByteArray(key, size);
-            buffer.put(data);
-        }
+        buffer.put(this.keys, 0, this.keyCount * keySize);
 
         // add all the values
-        for (Integer value : this.values) {
-            int size = Integer.BYTES;
-            byte[] data = getByteArray(value, size);
-            buffer.put(data);
+        for (int i = 0; i < this.keyCount + 1; i++) {
+            buffer.putInt(this.values[i]);
         }
         return buffer.array();
     }
 
-    public void unpack(List<Column<?>> columns, byte[] data) {
-        ByteBuffer buffer = ByteBuffer.wrap(data);
+    public void unpack(List<Column<?>> columns, ByteBuffer buffer) {
         this.nodeNo = buffer.getInt(); // 4 bytes node number
-        this.parent = buffer.getInt(); // 4 bytes parent node number
-        int keyCount = buffer.getInt(); // 4 bytes for number of keys
+        this.level = buffer.getInt(); // 4 bytes level
+        this.keyCount = buffer.getInt(); // 4 bytes for number of keys
         this.isLeafNode = buffer.get() != 0; // 1 bytes is leaf node
-        keys.clear();
-        values.clear();
+        this.next = buffer.getInt(); // 4 bytes right sibling
+        byte[] highKey = new byte[keySize];
+        buffer.get(highKey); // key size bytes upper bound of the keys
+        this.highKey = highKey;
 
         // all the keys
-        for (int i = 0; i < keyCount; i++) {
-            Integer key = buffer.getInt();
-            keys.add(key);
-        }
+        buffer.get(keys, 0, keyCount * keySize);
 
         // all the values
         for (int i = 0; i < keyCount + 1; i++) {
-            Integer value = buffer.getInt();
-            values.add(value);
+            values[i] = buffer.getInt();
         }
     }
 }
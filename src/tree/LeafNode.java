@@ -2,37 +2,60 @@ package tree;
 
 import interfaces.Node;
 import models.Column;
-import models.Row;
+import models.RowView;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 
+/*
+    Slotted page of variable length records:
+
+        [header][high key][keys][slots]...free...[records]
+
+    Keys are fixed width and kept in order, slot i holds the offset and length of the record
+    of key i. Records are packed from the end of the page towards the slots. The records of a
+    node read from disk stay in its page until the node is modified, then they are copied out.
+ */
 public class LeafNode implements Node {
+    // followed by the high key
+    private static final int HEADER_SIZE = 17;
+    // offset and length of a record, 2 bytes each
+    public static final int SLOT_SIZE = 4;
+    // entries that fit when every record has the smallest size, bounds the arrays
     private final int maxKeys;
     private final int pageSize;
+    private final int keySize;
     private int nodeNo;
     private int next;
+    private byte[] highKey;
+    private final StampedLock latch;
 
     private Boolean isLeafNode;
-    private int parent;
-    private List<Integer> keys;
-    private List<Row> values;
+    private int keyCount;
+    // encoded keys back to back, one extra slot so a full node can take the key that triggers its split
+    private final byte[] keys;
+    // records of a modified node, null while they are read from the page
+    private final byte[][] records;
+    // page the node was read from, dropped once the node is modified. It is never written to,
+    // so readers sharing the node read records out of it in place
+    private volatile ByteBuffer page;
+    // bytes the entries take on a page: key, slot and record each
+    private int usedBytes;
 
-    public LeafNode(int nodeNo, int pageSize, int maxRows) {
+    public LeafNode(int nodeNo, int pageSize, int maxRows, int keySize) {
         this.nodeNo = nodeNo;
         this.pageSize = pageSize;
-        this.keys = new ArrayList<>();
-        this.values = new ArrayList<>();
+        this.keySize = keySize;
+        this.keys = new byte[(maxRows + 1) * keySize];
+        this.highKey = new byte[keySize];
+        this.records = new byte[maxRows + 1][];
         this.isLeafNode = true;
         this.maxKeys = maxRows;
         this.next = -1;
-        this.parent = -1;
+        this.latch = new StampedLock();
     }
 
     public boolean isLeafNode() {
@@ -43,24 +66,70 @@ public class LeafNode implements Node {
         isLeafNode = leafNode;
     }
 
-    public int getParent() {
-        return parent;
+    public int getLevel() {
+        return 0;
+    }
+
+    public void setLevel(int level) {
+        if (level != 0) {
+            throw new IllegalArgumentException("leaf nodes are at level 0");
+        }
+    }
+
+    public int getKeyCount() {
+        return keyCount;
     }
 
-    public void setParent(int parent) {
-        this.parent = parent;
+    public byte[] getKey(int index) {
+        return Arrays.copyOfRange(keys, index * keySize, (index + 1) * keySize);
     }
 
-    public List<Integer> getKeys() {
-        return keys;
+    public int compareKey(int index, byte[] key) {
+        return Arrays.compareUnsigned(keys, index * keySize, (index + 1) * keySize, key, 0, keySize);
     }
 
-    public void setKeys(List<Integer> keys) {
-        this.keys = keys;
+    public int findKey(byte[] key) {
+        int low = 0;
+        int high = keyCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareKey(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
     }
 
+    // room for one more entry, whatever the size of its record, see fits
     public boolean hasSpace() {
-        return keys.size() < this.maxKeys;
+        return fits(0);
+    }
+
+    public boolean fits(int recordLength) {
+        return keyCount < maxKeys && usedBytes + getEntrySize(recordLength) <= getCapacity();
+    }
+
+    // whether the record of the entry can be swapped for one of the given length in place
+    public boolean canReplace(int index, int recordLength) {
+        return usedBytes - getRecordLength(index) + recordLength <= getCapacity();
+    }
+
+    // bytes of the page left for entries
+    public int getCapacity() {
+        return pageSize - HEADER_SIZE - keySize;
+    }
+
+    public int getUsedBytes() {
+        return usedBytes;
+    }
+
+    public int getEntrySize(int recordLength) {
+        return keySize + SLOT_SIZE + recordLength;
     }
 
     @Override
@@ -76,12 +145,112 @@ public class LeafNode implements Node {
         return pageSize;
     }
 
-    public List<Row> getValues() {
-        return values;
+    private int slotOffset(int index) {
+        return HEADER_SIZE + keySize * (keyCount + 1) + index * SLOT_SIZE;
+    }
+
+    public int getRecordLength(int index) {
+        ByteBuffer page = this.page;
+        if (page == null) {
+            return records[index].length;
+        }
+        return page.getShort(slotOffset(index) + 2) & 0xffff;
+    }
+
+    // the record of the entry, it is shared and must not be changed
+    public byte[] getRecord(int index) {
+        ByteBuffer page = this.page;
+        if (page == null) {
+            return records[index];
+        }
+        byte[] record = new byte[page.getShort(slotOffset(index) + 2) & 0xffff];
+        page.get(page.getShort(slotOffset(index)) & 0xffff, record);
+        return record;
+    }
+
+    // points the view at the record of the entry
+    public RowView wrap(int index, RowView view) {
+        ByteBuffer page = this.page;
+        if (page == null) {
+            return view.wrap(ByteBuffer.wrap(records[index]), 0);
+        }
+        return view.wrap(page, page.getShort(slotOffset(index)) & 0xffff);
     }
 
-    public void setValues(List<Row> values) {
-        this.values = values;
+    // copies the records out of the page before the entries change
+    private void materialize() {
+        ByteBuffer page = this.page;
+        if (page == null) {
+            return;
+        }
+        for (int i = 0; i < keyCount; i++) {
+            records[i] = getRecord(i);
+        }
+        this.page = null;
+    }
+
+    public void insert(int index, byte[] key, byte[] record) {
+        materialize();
+        System.arraycopy(keys, index * keySize, keys, (index + 1) * keySize, (keyCount - index) * keySize);
+        System.arraycopy(records, index, records, index + 1, keyCount - index);
+        System.arraycopy(key, 0, keys, index * keySize, keySize);
+        records[index] = record;
+        keyCount++;
+        usedBytes += getEntrySize(record.length);
+    }
+
+    public void setRecord(int index, byte[] record) {
+        materialize();
+        usedBytes += record.length - records[index].length;
+        records[index] = record;
+    }
+
+    public void remove(int index) {
+        materialize();
+        usedBytes -= getEntrySize(records[index].length);
+        System.arraycopy(keys, (index + 1) * keySize, keys, index * keySize, (keyCount - index - 1) * keySize);
+        System.arraycopy(records, index + 1, records, index, keyCount - index - 1);
+        keyCount--;
+        records[keyCount] = null;
+    }
+
+    // entries from here on go to the right node of a split, which halves the bytes rather than the entries
+    public int splitIndex() {
+        int bytes = 0;
+        for (int i = 0; i < keyCount - 1; i++) {
+            bytes += getEntrySize(getRecordLength(i));
+            if (bytes >= usedBytes / 2) {
+                return i + 1;
+            }
+        }
+        return keyCount - 1;
+    }
+
+    // moves the entries from index onwards to the (empty) right sibling
+    public void moveTo(LeafNode right, int index) {
+        materialize();
+        int count = keyCount - index;
+        int moved = 0;
+        for (int i = index; i < keyCount; i++) {
+            moved += getEntrySize(records[i].length);
+        }
+        System.arraycopy(keys, index * keySize, right.keys, 0, count * keySize);
+        System.arraycopy(records, index, right.records, 0, count);
+        right.keyCount = count;
+        right.usedBytes = moved;
+        Arrays.fill(records, index, keyCount, null);
+        keyCount = index;
+        usedBytes -= moved;
+    }
+
+    // appends the entries of the right sibling, which is freed afterwards
+    public void mergeFrom(LeafNode right) {
+        materialize();
+        right.materialize();
+        System.arraycopy(right.keys, 0, keys, keyCount * keySize, right.keyCount * keySize);
+        System.arraycopy(right.records, 0, records, keyCount, right.keyCount);
+        keyCount += right.keyCount;
+        usedBytes += right.usedBytes;
     }
 
     public int getNext() {
@@ -92,126 +261,70 @@ public class LeafNode implements Node {
         this.next = next;
     }
 
-    private byte[] getByteArray(Object value, int size) {
-        ByteBuffer buffer = ByteBuffer.allocate(size);
-        switch (value) {
-            case Integer i -> buffer.putInt(i);
-            case Long l -> buffer.putLong(l);
-            case Short i -> buffer.putShort(i);
-            case Byte b -> buffer.put(b);
-            case Double v -> buffer.putDouble(v);
-            case Float v -> buffer.putFloat(v);
-            case String s -> {
-                byte[] stringBytes = s.getBytes();
-                if (stringBytes.length >= size) {
-                    buffer.put(stringBytes, 0, size); // Truncate or fit exactly
-                } else {
-                    buffer.put(stringBytes);
-                    buffer.position(size);
-                }
-            }
-            case Boolean b -> buffer.put((byte) ((boolean) value ? 1 : 0));
-            case ZonedDateTime zonedDateTime -> {
-                long timestamp = zonedDateTime.toEpochSecond();
-                buffer.putLong(timestamp);
-            }
-            case null, default ->
-                    throw new IllegalArgumentException("Unsupported number type or size: " + value.getClass() + " with size " + size);
-        }
+    public byte[] getHighKey() {
+        return highKey;
+    }
 
-        // Adjust the buffer size if necessary
-        if (buffer.position() < size) {
-            byte[] padding = new byte[size - buffer.position()];
-            buffer.put(padding);
-        }
-        return buffer.array();
+    public void setHighKey(byte[] highKey) {
+        this.highKey = highKey;
     }
 
+    public StampedLock getLatch() {
+        return latch;
+    }
+
+    // records are opaque here, the columns are not needed
     public byte[] pack(List<Column<?>> columns) throws IOException {
         ByteBuffer buffer = ByteBuffer.allocate(pageSize);
         buffer.putInt(nodeNo); // 4byte node number
-        buffer.putInt(parent); // 4byte parent node number
-        buffer.putInt(this.keys.size()); // 4byte number of keys
+        buffer.putInt(0); // 4byte level
+        buffer.putInt(this.keyCount); // 4byte number of keys
         buffer.put((byte) ((boolean) this.isLeafNode ? 1 : 0)); // 1byte
         buffer.putInt(next); // pointer to next leaf 4 byte
-
+        buffer.put(highKey); // upper bound of the keys, key size bytes
 
         // add all the keys
-        for (Integer key : this.keys) {
-            int size = Integer.BYTES;
-            byte[] data = getByteArray(key, size);
-            buffer.put(data);
-        }
+        buffer.put(this.keys, 0, this.keyCount * keySize);
 
-        // add all the values
-        for (Row row : this.values) {
-            for (Column<?> col : columns) {
-                String colName = col.getName();
-                int size = col.getSize();
-                Object value = row.get(colName);
-                byte[] data = getByteArray(value, size);
-                buffer.put(data);
+        // slots after the keys, records from the end of the page
+        int slot = buffer.position();
+        int end = pageSize;
+        ByteBuffer page = this.page;
+        for (int i = 0; i < this.keyCount; i++) {
+            int length = getRecordLength(i);
+            end -= length;
+            if (page != null) {
+                // untouched record, copy it as is
+                buffer.put(end, page, page.getShort(slotOffset(i)) & 0xffff, length);
+            } else {
+                buffer.put(end, this.records[i]);
             }
+            buffer.putShort(slot, (short) end);
+            buffer.putShort(slot + 2, (short) length);
+            slot += SLOT_SIZE;
         }
         return buffer.array();
     }
 
-    private Object getObject(ByteBuffer buffer, Class<?> colType, int size) {
-        if (colType == Integer.class) {
-            return buffer.getInt();
-        } else if (colType == Long.class) {
-            return buffer.getLong();
-        } else if (colType == Short.class) {
-            return buffer.getShort();
-        } else if (colType == Byte.class) {
-            return buffer.get();
-        } else if (colType == Double.class) {
-            return buffer.getDouble();
-        } else if (colType == Float.class) {
-            return buffer.getFloat();
-        } else if (colType == String.class) {
-            byte[] stringBytes = new byte[size];
-            buffer.get(stringBytes);
-            return new String(stringBytes, StandardCharsets.UTF_8).trim();
-        } else if (colType == Boolean.class) {
-            return buffer.get() != 0;
-        } else if (colType == ZonedDateTime.class) {
-            long timestamp = buffer.getLong();
-            return ZonedDateTime.ofInstant(Instant.ofEpochSecond(timestamp), ZoneId.of("UTC"));
-        } else {
-            throw new IllegalArgumentException("Unsupported data type: " + colType);
-        }
-    }
-
-    public void unpack(List<Column<?>> columns, byte[] data) {
-        ByteBuffer buffer = ByteBuffer.wrap(data);
+    public void unpack(List<Column<?>> columns, ByteBuffer buffer) {
         this.nodeNo = buffer.getInt(); // node number 4byte
-        this.parent = buffer.getInt(); // parent node number 4byte
-        int keyCount = buffer.getInt(); // number of keys 4byte
+        buffer.getInt(); // level 4byte, always 0
+        this.keyCount = buffer.getInt(); // number of keys 4byte
         this.isLeafNode = buffer.get() != 0; // is leaf node 1 byte
         this.next = buffer.getInt(); // next leaf node number 4 byte
-        keys.clear();
-        values.clear();
+        byte[] highKey = new byte[keySize];
+        buffer.get(highKey); // upper bound of the keys, key size bytes
+        this.highKey = highKey;
 
         // all the keys
-        for (int i = 0; i < keyCount; i++) {
-            Integer key = buffer.getInt();
-            keys.add(key);
-        }
+        buffer.get(keys, 0, keyCount * keySize);
 
-        // all the values
+        // records are read from the page in place
+        Arrays.fill(records, null);
+        this.page = buffer;
+        this.usedBytes = 0;
         for (int i = 0; i < keyCount; i++) {
-            Row row = new Row();
-            row.setId(keys.get(i));
-            for (Column<?> col : columns) {
-                String colName = col.getName();
-                Class<?> colType = col.getType();
-                int size = col.getSize();
-                Object value = getObject(buffer, colType, size);
-                row.put(colName, value);
-            }
-            values.add(row);
+            this.usedBytes += getEntrySize(getRecordLength(i));
         }
     }
 }
-
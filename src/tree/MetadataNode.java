@@ -1,39 +1,44 @@
 package tree;
 
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+/*
+    page 0: [total pages 4][root 4][free count 4][free page 4]...[free list trunk 4]
+    Pages freed by merges are handed out again before the file is extended. The list holds
+    as many pages as fit in the metadata page. Once it is full the table moves part of it to
+    a freed page, a trunk, and the last trunk is kept at the end of the page; each trunk
+    points to the one before, see Table.releasePage. 0 when there is none.
+ */
 public class MetadataNode {
+    private static final int HEADER_SIZE = 12;
     private int totalPages;
     private int rootNodeNumber;
-    private final String table;
+    private final int[] freePages;
+    private int freeCount;
+    private int freeListTrunk;
     private final int pageSize;
-    private RandomAccessFile raf;
 
-    public MetadataNode(int pageSize, String table) throws Exception {
+    public MetadataNode(int pageSize) {
         this.pageSize = pageSize;
-        this.table = table;
         rootNodeNumber = 0;
+        // the last 4 bytes hold the trunk
+        this.freePages = new int[(pageSize - HEADER_SIZE - Integer.BYTES) / Integer.BYTES];
     }
 
-    private void initializeFilePointer() throws Exception {
-        String path = String.format("%s.bin", this.table);
-        this.raf = new RandomAccessFile(path, "rw");
-    }
-
-    public int getRootNodeNumber() {
+    public synchronized int getRootNodeNumber() {
         return rootNodeNumber;
     }
 
-    public void setRootNodeNumber(int root) {
+    public synchronized void setRootNodeNumber(int root) {
         this.rootNodeNumber = root;
     }
 
-    public int getTotalPages() {
+    public synchronized int getTotalPages() {
         return totalPages;
     }
 
-    public void setTotalPages(int totalPages) {
+    public synchronized void setTotalPages(int totalPages) {
         this.totalPages = totalPages;
     }
 
@@ -42,10 +47,15 @@ public class MetadataNode {
         return buffer.putInt(value).array();
     }
 
-    public byte[] pack() throws Exception {
+    public synchronized byte[] pack() throws Exception {
         ByteBuffer buffer = ByteBuffer.allocate(pageSize);
         buffer.putInt(this.totalPages);
         buffer.putInt(this.rootNodeNumber);
+        buffer.putInt(this.freeCount);
+        for (int i = 0; i < this.freeCount; i++) {
+            buffer.putInt(this.freePages[i]);
+        }
+        buffer.putInt(pageSize - Integer.BYTES, this.freeListTrunk);
         byte[] data = buffer.array();
         if (data.length > pageSize) {
             throw new Exception("[metadata] buffer size greater than allocated page");
@@ -53,21 +63,64 @@ public class MetadataNode {
         return buffer.array();
     }
 
-    public void unpack(byte[] data) {
-        ByteBuffer buffer = ByteBuffer.wrap(data);
+    public synchronized void unpack(ByteBuffer buffer) {
         this.totalPages = buffer.getInt();
         this.rootNodeNumber = buffer.getInt();
+        int count = buffer.getInt();
+        this.freeCount = Math.min(count, this.freePages.length);
+        for (int i = 0; i < this.freeCount; i++) {
+            this.freePages[i] = buffer.getInt();
+        }
+        // a page written before the trunk was kept may have its list full up to the last 4 bytes,
+        // the last page of it is not reused then
+        this.freeListTrunk = count > this.freePages.length ? 0 : buffer.getInt(pageSize - Integer.BYTES);
     }
 
-    public synchronized int getNextPage() throws Exception {
-        if (this.raf == null) {
-            this.initializeFilePointer();
+    // allocates a page without persisting the metadata, the caller saves it later
+    public synchronized int reservePage() {
+        if (this.freeCount > 0) {
+            return this.freePages[--this.freeCount];
         }
         this.totalPages += 1;
-        raf.seek(0);
-        raf.write(pack());
         return this.totalPages;
     }
+
+    // puts the page on the free list without persisting the metadata, false when the list is full
+    public synchronized boolean freePage(int no) {
+        if (this.freeCount == this.freePages.length) {
+            return false;
+        }
+        this.freePages[this.freeCount++] = no;
+        return true;
+    }
+
+    // takes up to count pages off the list, to go to a trunk
+    public synchronized int[] takeFreePages(int count) {
+        int taken = Math.min(count, this.freeCount);
+        this.freeCount -= taken;
+        return Arrays.copyOfRange(this.freePages, this.freeCount, this.freeCount + taken);
+    }
+
+    // puts the pages of a trunk back on the list, they have to fit
+    public synchronized void addFreePages(int[] pages) {
+        if (this.freeCount + pages.length > this.freePages.length) {
+            throw new IllegalStateException("free list holds at most " + this.freePages.length + " pages");
+        }
+        System.arraycopy(pages, 0, this.freePages, this.freeCount, pages.length);
+        this.freeCount += pages.length;
+    }
+
+    public synchronized int getFreeListTrunk() {
+        return this.freeListTrunk;
+    }
+
+    public synchronized void setFreeListTrunk(int trunk) {
+        this.freeListTrunk = trunk;
+    }
+
+    public synchronized int getFreePageCount() {
+        return this.freeCount;
+    }
 }
 
 
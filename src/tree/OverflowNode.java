@@ -0,0 +1,163 @@
+package tree;
+
+import interfaces.Node;
+import models.Column;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+    One page of a value too big to stay in its leaf, the pages of a value are chained
+    through next. The header has the same shape as a tree node so the page type is
+    found at the same place:
+
+        [page no 4][level 4][data length 4][page type 1][next 4][data]
+
+    Pages of a value are written once and freed with the row, they are never changed.
+    They sit outside the tree, the key methods of a node don't apply to them.
+ */
+public class OverflowNode implements Node {
+    private static final int HEADER_SIZE = 17;
+    // stored where tree nodes keep their leaf flag
+    public static final byte PAGE_TYPE = 2;
+    private final int pageSize;
+    private int nodeNo;
+    private int next;
+    private byte[] data;
+    private final StampedLock latch;
+
+    public OverflowNode(int nodeNo, int pageSize) {
+        this.nodeNo = nodeNo;
+        this.pageSize = pageSize;
+        this.next = -1;
+        this.data = new byte[0];
+        this.latch = new StampedLock();
+    }
+
+    // bytes of a value one page holds
+    public static int getCapacity(int pageSize) {
+        return pageSize - HEADER_SIZE;
+    }
+
+    // pages needed for a value of the given length
+    public static int getPageCount(int length, int pageSize) {
+        int capacity = getCapacity(pageSize);
+        return Math.max(1, (length + capacity - 1) / capacity);
+    }
+
+    // splits the value over the given pages, each one linked to the next
+    public static OverflowNode[] chain(byte[] value, int[] pages, int pageSize) {
+        int capacity = getCapacity(pageSize);
+        OverflowNode[] nodes = new OverflowNode[pages.length];
+        for (int i = 0; i < pages.length; i++) {
+            nodes[i] = new OverflowNode(pages[i], pageSize);
+            nodes[i].setData(Arrays.copyOfRange(value, Math.min(value.length, i * capacity), Math.min(value.length, (i + 1) * capacity)));
+            nodes[i].setNext(i + 1 < pages.length ? pages[i + 1] : -1);
+        }
+        return nodes;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        if (data.length > getCapacity(pageSize)) {
+            throw new IllegalArgumentException("overflow page holds at most " + getCapacity(pageSize) + " bytes");
+        }
+        this.data = data;
+    }
+
+    public boolean hasSpace() {
+        return false;
+    }
+
+    @Override
+    public int getNodeNo() {
+        return nodeNo;
+    }
+
+    public void setNodeNo(int nodeNo) {
+        this.nodeNo = nodeNo;
+    }
+
+    // below the leaves, a descent that strays here stops at once
+    public int getLevel() {
+        return -1;
+    }
+
+    public void setLevel(int level) {
+        throw new UnsupportedOperationException("overflow pages have no level");
+    }
+
+    public int getNext() {
+        return next;
+    }
+
+    public void setNext(int next) {
+        this.next = next;
+    }
+
+    public byte[] getHighKey() {
+        throw new UnsupportedOperationException("overflow pages have no keys");
+    }
+
+    public void setHighKey(byte[] highKey) {
+        throw new UnsupportedOperationException("overflow pages have no keys");
+    }
+
+    public int getKeyCount() {
+        return 0;
+    }
+
+    public byte[] getKey(int index) {
+        throw new UnsupportedOperationException("overflow pages have no keys");
+    }
+
+    public int compareKey(int index, byte[] key) {
+        throw new UnsupportedOperationException("overflow pages have no keys");
+    }
+
+    public int findKey(byte[] key) {
+        throw new UnsupportedOperationException("overflow pages have no keys");
+    }
+
+    public boolean isLeafNode() {
+        return false;
+    }
+
+    public void setIsLeafNode(boolean value) {
+        throw new UnsupportedOperationException("overflow pages are not tree nodes");
+    }
+
+    public StampedLock getLatch() {
+        return latch;
+    }
+
+    public byte[] pack(List<Column<?>> columns) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(pageSize);
+        buffer.putInt(nodeNo); // 4byte page number
+        buffer.putInt(0); // 4byte level, unused
+        buffer.putInt(data.length); // 4byte length of the data
+        buffer.put(PAGE_TYPE); // 1byte
+        buffer.putInt(next); // next page of the value 4 byte
+        buffer.put(data);
+        return buffer.array();
+    }
+
+    public void unpack(List<Column<?>> columns, ByteBuffer buffer) {
+        this.nodeNo = buffer.getInt(); // page number 4byte
+        buffer.getInt(); // level 4byte, unused
+        int length = buffer.getInt(); // length of the data 4byte
+        buffer.get(); // page type 1byte
+        this.next = buffer.getInt(); // next page of the value 4byte
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalStateException("corrupt overflow page " + nodeNo);
+        }
+        this.data = new byte[length];
+        buffer.get(this.data);
+    }
+}